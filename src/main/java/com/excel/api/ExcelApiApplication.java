@@ -2,6 +2,7 @@ package com.excel.api;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Excel API服务启动类
@@ -17,6 +18,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
     "org.redisson.spring.starter.RedissonAutoConfiguration",
     "org.redisson.spring.starter.RedissonAutoConfigurationV2"
 })
+@EnableScheduling
 public class ExcelApiApplication {
 
     public static void main(String[] args) {
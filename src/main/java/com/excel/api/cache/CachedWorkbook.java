@@ -0,0 +1,182 @@
+package com.excel.api.cache;
+
+import com.excel.api.version.CellPatch;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 缓存中的工作簿条目
+ * 工作簿和公式计算器均非线程安全，使用方需通过 {@link #lock()} / {@link #unlock()} 独占访问
+ */
+@Getter
+public class CachedWorkbook {
+    
+    private final String fileName;
+    private final XSSFWorkbook workbook;
+    private final FormulaEvaluator evaluator;
+    
+    /**
+     * 当前内容对应的文件版本号
+     */
+    private volatile long version;
+    
+    /**
+     * 最近一次加载或保存后磁盘文件的修改时间和大小，用于发现外部修改
+     */
+    private volatile long fileLastModified;
+    private volatile long fileLength;
+    
+    /**
+     * 估算的堆内存占用（字节）
+     */
+    private volatile long estimatedBytes;
+    
+    /**
+     * 写后延迟保存模式下，已修改但尚未保存到磁盘的单元格数，大于0时条目不会被淘汰
+     */
+    private volatile int dirtyCells;
+    private volatile long dirtySince;
+    
+    /**
+     * 尚未保存的修改（按写入顺序），原地修改中途失败时据此在磁盘文件上重建内存中的内容
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<CellPatch> pendingPatches = new ArrayList<>();
+    
+    @Getter(AccessLevel.NONE)
+    private final ReentrantLock accessLock = new ReentrantLock();
+    
+    /**
+     * 公式依赖图，首次使用时构建
+     */
+    @Getter(AccessLevel.NONE)
+    private FormulaDependencyGraph dependencyGraph;
+    
+    public CachedWorkbook(String fileName, XSSFWorkbook workbook, long version,
+                          long fileLastModified, long fileLength, long estimatedBytes) {
+        this.fileName = fileName;
+        this.workbook = workbook;
+        this.evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+        this.version = version;
+        this.fileLastModified = fileLastModified;
+        this.fileLength = fileLength;
+        this.estimatedBytes = estimatedBytes;
+    }
+    
+    /**
+     * 独占访问工作簿
+     */
+    public void lock() {
+        accessLock.lock();
+    }
+    
+    /**
+     * 尝试独占访问工作簿，不等待
+     */
+    public boolean tryLock() {
+        return accessLock.tryLock();
+    }
+    
+    public void unlock() {
+        accessLock.unlock();
+    }
+    
+    /**
+     * 记录尚未保存的修改，调用方需持有 {@link #lock()}
+     */
+    public void markDirty(CellPatch patch) {
+        if (dirtyCells == 0) {
+            dirtySince = System.currentTimeMillis();
+        }
+        dirtyCells += Math.max(patch.getCells().size(), 1);
+        pendingPatches.add(patch);
+    }
+    
+    /**
+     * 修改已保存到磁盘，调用方需持有 {@link #lock()}
+     */
+    public void markClean() {
+        dirtyCells = 0;
+        dirtySince = 0;
+        pendingPatches.clear();
+    }
+    
+    /**
+     * 尚未保存的修改，调用方需持有 {@link #lock()}
+     */
+    public List<CellPatch> getPendingPatches() {
+        return new ArrayList<>(pendingPatches);
+    }
+    
+    /**
+     * 接管另一个条目尚未保存的修改（该条目的内容已在本条目上重建）
+     */
+    void takeDirtyState(CachedWorkbook previous) {
+        dirtyCells = previous.dirtyCells;
+        dirtySince = previous.dirtySince;
+        pendingPatches.addAll(previous.pendingPatches);
+    }
+    
+    public boolean isDirty() {
+        return dirtyCells > 0;
+    }
+    
+    /**
+     * 磁盘文件是否与加载时一致
+     */
+    public boolean matchesFile(long lastModified, long length) {
+        return fileLastModified == lastModified && fileLength == length;
+    }
+    
+    /**
+     * 获取公式依赖图，首次调用时扫描全部公式构建
+     */
+    public synchronized FormulaDependencyGraph getDependencyGraph() {
+        if (dependencyGraph == null) {
+            dependencyGraph = FormulaDependencyGraph.build(workbook);
+        }
+        return dependencyGraph;
+    }
+    
+    /**
+     * 工作簿被原地修改后，通知公式计算器哪些单元格发生了变化
+     * 计算器只丢弃依赖这些单元格的缓存结果；新建了sheet或行时计算器内部的表结构缓存失效，只能整体清空
+     */
+    public synchronized void notifyCellsChanged(Collection<Cell> cells, boolean structureChanged, boolean formulaChanged) {
+        if (structureChanged) {
+            evaluator.clearAllCachedResultValues();
+        } else {
+            for (Cell cell : cells) {
+                if (cell.getCellType() == CellType.FORMULA) {
+                    evaluator.notifySetFormula(cell);
+                } else {
+                    evaluator.notifyUpdateCell(cell);
+                }
+            }
+        }
+        
+        // 公式变化后引用关系也变了，下次使用时重建依赖图
+        if (formulaChanged) {
+            dependencyGraph = null;
+        }
+    }
+    
+    /**
+     * 修改已保存到磁盘后，推进到新版本
+     */
+    synchronized void advance(long newVersion, long lastModified, long length, long newEstimatedBytes) {
+        this.version = newVersion;
+        this.fileLastModified = lastModified;
+        this.fileLength = length;
+        this.estimatedBytes = newEstimatedBytes;
+    }
+}
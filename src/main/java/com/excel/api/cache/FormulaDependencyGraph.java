@@ -0,0 +1,243 @@
+package com.excel.api.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.formula.EvaluationName;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.*;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.util.*;
+
+/**
+ * 公式依赖图
+ * 记录每个单元格被哪些公式单元格引用，用于计算写入后受影响的下游单元格。
+ * 单元格以 sheet/row/col 编码成的long作为键，见 {@link #cellKey(int, int, int)}
+ */
+@Slf4j
+public class FormulaDependencyGraph {
+
+    /**
+     * 易变函数：结果不只取决于单元格引用，不能缓存
+     */
+    private static final Set<String> VOLATILE_FUNCTIONS = Set.of(
+            "NOW", "TODAY", "RAND", "RANDBETWEEN", "INDIRECT", "OFFSET", "CELL", "INFO");
+
+    /**
+     * 名称定义的最大展开深度，防止循环引用
+     */
+    private static final int MAX_NAME_DEPTH = 16;
+
+    /**
+     * 单元格 -> 直接引用它的公式单元格
+     */
+    private final Map<Long, List<Long>> pointDependents = new HashMap<>();
+
+    /**
+     * sheet -> 区域引用列表
+     */
+    private final Map<Integer, List<AreaDependency>> areaDependents = new HashMap<>();
+
+    /**
+     * 结果不可缓存的公式单元格（含易变函数、外部引用或无法解析，以及依赖它们的单元格）
+     */
+    private final Set<Long> volatileCells = new HashSet<>();
+
+    private int formulaCount = 0;
+
+    private FormulaDependencyGraph() {
+    }
+
+    /**
+     * 扫描工作簿中的全部公式构建依赖图
+     */
+    public static FormulaDependencyGraph build(XSSFWorkbook workbook) {
+        long start = System.nanoTime();
+        FormulaDependencyGraph graph = new FormulaDependencyGraph();
+        XSSFEvaluationWorkbook evaluationWorkbook = XSSFEvaluationWorkbook.create(workbook);
+        Set<Long> volatileSeeds = new HashSet<>();
+
+        for (int sheetIdx = 0; sheetIdx < workbook.getNumberOfSheets(); sheetIdx++) {
+            Sheet sheet = workbook.getSheetAt(sheetIdx);
+            for (Row row : sheet) {
+                for (Cell cell : row) {
+                    if (cell.getCellType() != CellType.FORMULA) {
+                        continue;
+                    }
+                    long key = cellKey(sheetIdx, cell.getRowIndex(), cell.getColumnIndex());
+                    graph.formulaCount++;
+                    try {
+                        Ptg[] ptgs = FormulaParser.parse(cell.getCellFormula(), evaluationWorkbook,
+                                FormulaType.CELL, sheetIdx, cell.getRowIndex());
+                        if (!graph.addPrecedents(key, sheetIdx, ptgs, evaluationWorkbook, 0)) {
+                            volatileSeeds.add(key);
+                        }
+                    } catch (Exception e) {
+                        log.debug("公式解析失败，按易变处理: {}!{} - {}",
+                                sheet.getSheetName(), cell.getAddress(), e.getMessage());
+                        volatileSeeds.add(key);
+                    }
+                }
+            }
+        }
+
+        graph.volatileCells.addAll(graph.dependentsOf(volatileSeeds));
+
+        log.debug("构建公式依赖图完成: 公式数: {}, 易变单元格数: {}, 耗时: {}ms",
+                graph.formulaCount, graph.volatileCells.size(), (System.nanoTime() - start) / 1_000_000);
+        return graph;
+    }
+
+    /**
+     * 编码单元格键：sheet占高位，行20位，列14位
+     */
+    public static long cellKey(int sheetIndex, int row, int col) {
+        return ((long) sheetIndex << 34) | ((long) row << 14) | col;
+    }
+
+    public static int sheetOf(long key) {
+        return (int) (key >>> 34);
+    }
+
+    public static int rowOf(long key) {
+        return (int) ((key >>> 14) & 0xFFFFF);
+    }
+
+    public static int colOf(long key) {
+        return (int) (key & 0x3FFF);
+    }
+
+    /**
+     * 计算给定单元格及其全部传递下游单元格
+     */
+    public Set<Long> dependentsOf(Collection<Long> changed) {
+        Set<Long> visited = new HashSet<>(changed);
+        Deque<Long> queue = new ArrayDeque<>(changed);
+
+        while (!queue.isEmpty()) {
+            long key = queue.poll();
+
+            List<Long> direct = pointDependents.get(key);
+            if (direct != null) {
+                for (Long dependent : direct) {
+                    if (visited.add(dependent)) {
+                        queue.add(dependent);
+                    }
+                }
+            }
+
+            List<AreaDependency> areas = areaDependents.get(sheetOf(key));
+            if (areas != null) {
+                int row = rowOf(key);
+                int col = colOf(key);
+                for (AreaDependency area : areas) {
+                    if (area.contains(row, col) && visited.add(area.dependent)) {
+                        queue.add(area.dependent);
+                    }
+                }
+            }
+        }
+
+        return visited;
+    }
+
+    /**
+     * 该单元格的计算结果是否可以缓存
+     */
+    public boolean isCacheable(long key) {
+        return !volatileCells.contains(key);
+    }
+
+    public int getFormulaCount() {
+        return formulaCount;
+    }
+
+    /**
+     * 登记公式的引用关系
+     * @return 引用是否可以完整静态解析（false表示应按易变处理）
+     */
+    private boolean addPrecedents(long dependent, int sheetIdx, Ptg[] ptgs,
+                                  XSSFEvaluationWorkbook evaluationWorkbook, int depth) {
+        boolean resolvable = true;
+
+        for (Ptg ptg : ptgs) {
+            if (ptg instanceof Pxg3D) {
+                Pxg3D pxg = (Pxg3D) ptg;
+                if (pxg.getExternalWorkbookNumber() > 0) {
+                    resolvable = false;
+                    continue;
+                }
+                int first = evaluationWorkbook.getSheetIndex(pxg.getSheetName());
+                int last = pxg.getLastSheetName() != null
+                        ? evaluationWorkbook.getSheetIndex(pxg.getLastSheetName())
+                        : first;
+                if (first < 0 || last < 0) {
+                    // 引用了尚不存在的sheet，新建sheet后结果会变化
+                    resolvable = false;
+                    continue;
+                }
+                for (int target = Math.min(first, last); target <= Math.max(first, last); target++) {
+                    addReference(dependent, target, ptg);
+                }
+            } else if (ptg instanceof RefPtgBase || ptg instanceof AreaPtgBase) {
+                addReference(dependent, sheetIdx, ptg);
+            } else if (ptg instanceof NamePtg) {
+                EvaluationName name = evaluationWorkbook.getName((NamePtg) ptg);
+                if (name == null || !name.hasFormula() || depth >= MAX_NAME_DEPTH) {
+                    resolvable = false;
+                    continue;
+                }
+                resolvable &= addPrecedents(dependent, sheetIdx, name.getNameDefinition(),
+                        evaluationWorkbook, depth + 1);
+            } else if (ptg instanceof NameXPxg) {
+                resolvable = false;
+            } else if (ptg instanceof AbstractFunctionPtg) {
+                if (VOLATILE_FUNCTIONS.contains(((AbstractFunctionPtg) ptg).getName())) {
+                    resolvable = false;
+                }
+            }
+        }
+
+        return resolvable;
+    }
+
+    private void addReference(long dependent, int targetSheet, Ptg ptg) {
+        if (ptg instanceof RefPtgBase) {
+            RefPtgBase ref = (RefPtgBase) ptg;
+            pointDependents.computeIfAbsent(cellKey(targetSheet, ref.getRow(), ref.getColumn()),
+                    k -> new ArrayList<>(2)).add(dependent);
+        } else if (ptg instanceof AreaPtgBase) {
+            AreaPtgBase area = (AreaPtgBase) ptg;
+            areaDependents.computeIfAbsent(targetSheet, k -> new ArrayList<>()).add(new AreaDependency(
+                    area.getFirstRow(), area.getLastRow(), area.getFirstColumn(), area.getLastColumn(), dependent));
+        }
+    }
+
+    /**
+     * 区域引用
+     */
+    private static final class AreaDependency {
+        private final int firstRow;
+        private final int lastRow;
+        private final int firstCol;
+        private final int lastCol;
+        private final long dependent;
+
+        private AreaDependency(int firstRow, int lastRow, int firstCol, int lastCol, long dependent) {
+            this.firstRow = Math.min(firstRow, lastRow);
+            this.lastRow = Math.max(firstRow, lastRow);
+            this.firstCol = Math.min(firstCol, lastCol);
+            this.lastCol = Math.max(firstCol, lastCol);
+            this.dependent = dependent;
+        }
+
+        private boolean contains(int row, int col) {
+            return row >= firstRow && row <= lastRow && col >= firstCol && col <= lastCol;
+        }
+    }
+}
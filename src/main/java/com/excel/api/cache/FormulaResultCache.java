@@ -0,0 +1,117 @@
+package com.excel.api.cache;
+
+import com.excel.api.config.ExcelConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 公式计算结果缓存
+ * 按 (文件, 单元格, 文件版本) 缓存公式结果，跨请求、跨工作簿重新加载保留。
+ * 写入时只清除被写单元格的下游结果，其余结果随版本号前移
+ */
+@Slf4j
+@Component
+public class FormulaResultCache {
+
+    private final ExcelConfig excelConfig;
+
+    private final ConcurrentHashMap<String, FileResults> files = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidatedCells = new LongAdder();
+    private final LongAdder fullInvalidations = new LongAdder();
+
+    public FormulaResultCache(ExcelConfig excelConfig, WorkbookCache workbookCache) {
+        this.excelConfig = excelConfig;
+        // 工作簿被淘汰说明文件已冷，结果一并释放
+        workbookCache.addEvictionListener(this::remove);
+    }
+
+    /**
+     * 获取缓存的结果，版本不一致时视为未命中
+     */
+    public CellValue get(String fileName, long version, long cellKey) {
+        FileResults results = files.get(fileName);
+        CellValue value = (results != null && results.version == version) ? results.values.get(cellKey) : null;
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 缓存计算结果
+     * 在compute内检查版本并写入，与 {@link #onWrite} 互斥，旧版本的结果不会留在新版本下
+     */
+    public void put(String fileName, long version, long cellKey, CellValue value) {
+        files.compute(fileName, (k, existing) -> {
+            FileResults results = existing != null && existing.version >= version ? existing : new FileResults(version);
+            if (results.version == version
+                    && results.values.size() < excelConfig.getCalculation().getFormulaCacheMaxCells()) {
+                results.values.put(cellKey, value);
+            }
+            return results;
+        });
+    }
+
+    /**
+     * 文件写入后调用
+     * @param newVersion 写入后的版本号
+     * @param affected 受影响的单元格（含下游），为null时清除该文件全部结果
+     */
+    public void onWrite(String fileName, long newVersion, Set<Long> affected) {
+        files.computeIfPresent(fileName, (k, results) -> {
+            if (affected == null) {
+                fullInvalidations.increment();
+                return null;
+            }
+            affected.forEach(results.values::remove);
+            invalidatedCells.add(affected.size());
+            results.version = newVersion;
+            return results;
+        });
+    }
+
+    /**
+     * 移除文件的全部结果
+     */
+    public void remove(String fileName) {
+        files.remove(fileName);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("files", files.size());
+        stats.put("cells", files.values().stream().mapToInt(r -> r.values.size()).sum());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("invalidatedCells", invalidatedCells.sum());
+        stats.put("fullInvalidations", fullInvalidations.sum());
+        return stats;
+    }
+
+    /**
+     * 单个文件的结果集
+     */
+    private static final class FileResults {
+        private volatile long version;
+        private final ConcurrentHashMap<Long, CellValue> values = new ConcurrentHashMap<>();
+
+        private FileResults(long version) {
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.excel.api.cache;
+
+import com.excel.api.config.ExcelConfig;
+import com.excel.api.metrics.Phase;
+import com.excel.api.metrics.RequestMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 工作簿缓存
+ * 按文件名缓存已解析的工作簿，按条目数和估算内存两个维度做LRU淘汰，
+ * 写入、上传、删除时通过 {@link #invalidate(String)} 失效并递增文件版本号。
+ * 有未保存修改的条目（写后延迟保存模式）不参与淘汰
+ */
+@Slf4j
+@Component
+public class WorkbookCache {
+
+    /**
+     * xlsx解压并构建DOM后的内存占用通常是文件大小的数十倍，这里取一个保守的估算系数
+     */
+    private static final long HEAP_EXPANSION_FACTOR = 20;
+
+    private final ExcelConfig excelConfig;
+    private final RequestMetrics requestMetrics;
+
+    /**
+     * 访问顺序的LinkedHashMap实现LRU，所有访问都在this上同步
+     */
+    private final LinkedHashMap<String, CachedWorkbook> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalEstimatedBytes = 0;
+
+    /**
+     * 正在加载的文件，避免并发未命中时重复解析
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<CachedWorkbook>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 文件版本号，每次失效递增
+     */
+    private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /**
+     * 淘汰监听器，参数为被淘汰的文件名
+     */
+    private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+
+    public WorkbookCache(ExcelConfig excelConfig, RequestMetrics requestMetrics) {
+        this.excelConfig = excelConfig;
+        this.requestMetrics = requestMetrics;
+    }
+
+    /**
+     * 是否启用缓存（excel.calculation.cache-enabled）
+     */
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(excelConfig.getCalculation().getCacheEnabled());
+    }
+
+    /**
+     * 获取文件当前版本号
+     */
+    public long getVersion(String fileName) {
+        AtomicLong version = versions.get(fileName);
+        return version != null ? version.get() : 0L;
+    }
+
+    /**
+     * 获取缓存的工作簿，未命中或磁盘文件已变化时重新加载
+     * 调用方需持有该文件的读锁或写锁
+     */
+    public CachedWorkbook get(String fileName, File excelFile) throws IOException {
+        long lastModified = excelFile.lastModified();
+        long length = excelFile.length();
+        long version = getVersion(fileName);
+
+        synchronized (this) {
+            CachedWorkbook cached = entries.get(fileName);
+            if (cached != null) {
+                if (cached.getVersion() == version && cached.matchesFile(lastModified, length)) {
+                    hits.increment();
+                    return cached;
+                }
+                // 版本或磁盘文件已变化
+                removeEntry(fileName);
+            }
+        }
+
+        misses.increment();
+
+        CompletableFuture<CachedWorkbook> future = new CompletableFuture<>();
+        CompletableFuture<CachedWorkbook> existing = loading.putIfAbsent(fileName, future);
+        if (existing != null) {
+            return await(existing, fileName);
+        }
+
+        try {
+            CachedWorkbook loaded = load(fileName, excelFile, version);
+            put(loaded);
+            future.complete(loaded);
+            return loaded;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(fileName, future);
+        }
+    }
+
+    /**
+     * 获取已缓存且与磁盘文件一致的工作簿，不触发加载，未命中时返回null且不计入未命中
+     * 用于不加锁的乐观读取，调用方需自行校验读取期间没有写入
+     */
+    public CachedWorkbook getIfPresent(String fileName, File excelFile) {
+        long lastModified = excelFile.lastModified();
+        long length = excelFile.length();
+        long version = getVersion(fileName);
+
+        synchronized (this) {
+            CachedWorkbook cached = entries.get(fileName);
+            if (cached != null && cached.getVersion() == version && cached.matchesFile(lastModified, length)) {
+                hits.increment();
+                return cached;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 查看已缓存的工作簿，不触发加载
+     */
+    public synchronized CachedWorkbook peek(String fileName) {
+        CachedWorkbook cached = entries.get(fileName);
+        return cached != null && cached.getVersion() == getVersion(fileName) ? cached : null;
+    }
+
+    /**
+     * 注册淘汰监听器
+     */
+    public void addEvictionListener(Consumer<String> listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * 失效缓存并递增版本号
+     * @return 失效后的新版本号
+     */
+    public long invalidate(String fileName) {
+        long version = versions.computeIfAbsent(fileName, k -> new AtomicLong()).incrementAndGet();
+        synchronized (this) {
+            CachedWorkbook removed = removeEntry(fileName);
+            if (removed != null) {
+                invalidations.increment();
+                if (removed.isDirty()) {
+                    log.warn("工作簿缓存失效，丢弃未保存的修改: {}, 单元格数: {}", fileName, removed.getDirtyCells());
+                } else {
+                    log.debug("工作簿缓存失效: {}", fileName);
+                }
+            }
+        }
+        return version;
+    }
+
+    /**
+     * 常驻工作簿被原地修改并保存后调用，递增版本号但保留缓存条目
+     * @return 新版本号
+     */
+    public synchronized long commit(CachedWorkbook cached, File excelFile) {
+        String fileName = cached.getFileName();
+        long version = versions.computeIfAbsent(fileName, k -> new AtomicLong()).incrementAndGet();
+        long length = excelFile.length();
+
+        boolean resident = entries.get(fileName) == cached;
+        if (resident) {
+            totalEstimatedBytes -= cached.getEstimatedBytes();
+        }
+        cached.advance(version, excelFile.lastModified(), length, length * HEAP_EXPANSION_FACTOR);
+        if (resident) {
+            totalEstimatedBytes += cached.getEstimatedBytes();
+            evictIfNecessary(fileName);
+        }
+        return version;
+    }
+
+    /**
+     * 用在磁盘文件上重建的工作簿替换常驻条目，原条目尚未保存的修改状态一并转移，递增版本号
+     * 用于原地修改中途失败、而条目中还有已确认但未保存的修改、不能直接丢弃的情况
+     * @param workbook 磁盘文件加载后重放了 previous 中全部未保存修改的工作簿
+     * @return 新条目
+     */
+    public CachedWorkbook replace(CachedWorkbook previous, XSSFWorkbook workbook, File excelFile) {
+        String fileName = previous.getFileName();
+        long version = versions.computeIfAbsent(fileName, k -> new AtomicLong()).incrementAndGet();
+        long length = excelFile.length();
+        CachedWorkbook rebuilt = new CachedWorkbook(fileName, workbook, version, excelFile.lastModified(), length,
+                length * HEAP_EXPANSION_FACTOR);
+        rebuilt.takeDirtyState(previous);
+        put(rebuilt);
+        invalidations.increment();
+        log.warn("常驻工作簿已在磁盘文件上重建: {}, 未保存单元格数: {}", fileName, rebuilt.getDirtyCells());
+        return rebuilt;
+    }
+
+    /**
+     * 常驻工作簿的延迟修改保存到磁盘后调用，更新文件时间戳和大小，版本号不变
+     */
+    public synchronized void persisted(CachedWorkbook cached, File excelFile) {
+        long length = excelFile.length();
+        boolean resident = entries.get(cached.getFileName()) == cached;
+        if (resident) {
+            totalEstimatedBytes -= cached.getEstimatedBytes();
+        }
+        cached.advance(cached.getVersion(), excelFile.lastModified(), length, length * HEAP_EXPANSION_FACTOR);
+        if (resident) {
+            totalEstimatedBytes += cached.getEstimatedBytes();
+        }
+    }
+    
+    /**
+     * 有未保存修改的条目
+     */
+    public synchronized List<CachedWorkbook> dirtyEntries() {
+        List<CachedWorkbook> dirty = new ArrayList<>();
+        for (CachedWorkbook cached : entries.values()) {
+            if (cached.isDirty()) {
+                dirty.add(cached);
+            }
+        }
+        return dirty;
+    }
+    
+    /**
+     * 文件被删除时调用，同时清理版本号
+     */
+    public void remove(String fileName) {
+        invalidate(fileName);
+        versions.remove(fileName);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalEstimatedBytes = 0;
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long loadCount = loads.sum();
+        synchronized (this) {
+            stats.put("enabled", isEnabled());
+            stats.put("entries", entries.size());
+            stats.put("estimatedBytes", totalEstimatedBytes);
+            stats.put("dirtyEntries", entries.values().stream().filter(CachedWorkbook::isDirty).count());
+        }
+        stats.put("maxEntries", excelConfig.getCalculation().getCacheMaxEntries());
+        stats.put("maxBytes", maxBytes());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("loads", loadCount);
+        stats.put("avgLoadMillis", loadCount > 0 ? totalLoadNanos.sum() / loadCount / 1_000_000.0 : 0.0);
+        stats.put("maxLoadMillis", maxLoadNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    private CachedWorkbook load(String fileName, File excelFile, long version) throws IOException {
+        long lastModified = excelFile.lastModified();
+        long length = excelFile.length();
+        long start = System.nanoTime();
+
+        XSSFWorkbook workbook;
+        try (FileInputStream fis = new FileInputStream(excelFile)) {
+            workbook = new XSSFWorkbook(fis);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        loads.increment();
+        totalLoadNanos.add(elapsed);
+        maxLoadNanos.accumulateAndGet(elapsed, Math::max);
+        requestMetrics.addPhase(Phase.PARSE, elapsed);
+        log.debug("加载工作簿到缓存: {}, 版本: {}, 耗时: {}ms", fileName, version, elapsed / 1_000_000);
+
+        return new CachedWorkbook(fileName, workbook, version, lastModified, length,
+                length * HEAP_EXPANSION_FACTOR);
+    }
+
+    private CachedWorkbook await(CompletableFuture<CachedWorkbook> future, String fileName) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待工作簿加载被中断: " + fileName, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("加载工作簿失败: " + fileName, cause);
+        }
+    }
+
+    private synchronized void put(CachedWorkbook cached) {
+        // 加载期间文件已被失效，不再放入缓存
+        if (cached.getVersion() != getVersion(cached.getFileName())) {
+            return;
+        }
+
+        removeEntry(cached.getFileName());
+        entries.put(cached.getFileName(), cached);
+        totalEstimatedBytes += cached.getEstimatedBytes();
+        evictIfNecessary(cached.getFileName());
+    }
+
+    private void evictIfNecessary(String keep) {
+        int maxEntries = excelConfig.getCalculation().getCacheMaxEntries();
+        long maxBytes = maxBytes();
+
+        Iterator<Map.Entry<String, CachedWorkbook>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalEstimatedBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, CachedWorkbook> eldest = it.next();
+            // 刚放入的条目即使单独超限也保留，否则本次请求的解析就白费了；未保存的修改只存在于内存中，也不能淘汰
+            if (eldest.getKey().equals(keep) || eldest.getValue().isDirty()) {
+                continue;
+            }
+            it.remove();
+            totalEstimatedBytes -= eldest.getValue().getEstimatedBytes();
+            evictions.increment();
+            evictionListeners.forEach(listener -> listener.accept(eldest.getKey()));
+            log.debug("淘汰缓存工作簿: {}", eldest.getKey());
+        }
+    }
+
+    private CachedWorkbook removeEntry(String fileName) {
+        CachedWorkbook removed = entries.remove(fileName);
+        if (removed != null) {
+            totalEstimatedBytes -= removed.getEstimatedBytes();
+        }
+        return removed;
+    }
+
+    private long maxBytes() {
+        return excelConfig.getCalculation().getCacheMaxSizeMb() * 1024L * 1024L;
+    }
+}
@@ -0,0 +1,50 @@
+package com.excel.api.cache;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * 一次独占借用的工作簿实例（缓存中的主实例或池中的副本），用完后需关闭以归还
+ */
+@Getter
+public class WorkbookLease implements AutoCloseable {
+    
+    /**
+     * 借用来源的缓存条目
+     */
+    private final CachedWorkbook source;
+    
+    private final XSSFWorkbook workbook;
+    private final FormulaEvaluator evaluator;
+    
+    /**
+     * 借出时工作簿内容对应的文件版本，借用期间不变
+     * 副本可能落后于主实例的当前版本，按版本缓存结果时应使用此版本而不是 source.getVersion()
+     */
+    private final long version;
+    
+    /**
+     * 是否为池中的副本
+     */
+    private final boolean pooled;
+    
+    @Getter(AccessLevel.NONE)
+    private final Runnable onClose;
+    
+    WorkbookLease(CachedWorkbook source, XSSFWorkbook workbook, FormulaEvaluator evaluator, long version,
+                  boolean pooled, Runnable onClose) {
+        this.source = source;
+        this.workbook = workbook;
+        this.evaluator = evaluator;
+        this.version = version;
+        this.pooled = pooled;
+        this.onClose = onClose;
+    }
+    
+    @Override
+    public void close() {
+        onClose.run();
+    }
+}
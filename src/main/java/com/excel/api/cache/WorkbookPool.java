@@ -0,0 +1,292 @@
+package com.excel.api.cache;
+
+import com.excel.api.config.ExcelConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 工作簿实例池
+ * POI工作簿非线程安全，同一文件的并发读取/试算只能串行使用缓存中的主实例。
+ * 主实例忙时从池中借用副本，每个副本带有自己的公式计算器，副本数量上限为 excel.calculation.max-concurrent-reads。
+ * 副本由主实例序列化出的内存模板生成，无需读盘；文件版本变化后旧副本在归还时丢弃，空闲副本定期回收
+ */
+@Slf4j
+@Component
+public class WorkbookPool {
+
+    private final ExcelConfig excelConfig;
+
+    private final ConcurrentHashMap<String, FilePool> pools = new ConcurrentHashMap<>();
+
+    private final LongAdder primaryLeases = new LongAdder();
+    private final LongAdder pooledLeases = new LongAdder();
+    private final LongAdder clonesCreated = new LongAdder();
+    private final LongAdder clonesDiscarded = new LongAdder();
+    private final LongAdder waitTimeouts = new LongAdder();
+
+    public WorkbookPool(ExcelConfig excelConfig, WorkbookCache workbookCache) {
+        this.excelConfig = excelConfig;
+        workbookCache.addEvictionListener(this::remove);
+    }
+
+    /**
+     * 独占借用一个与主实例内容一致的工作簿
+     * 主实例空闲时直接使用主实例，否则从池中借用或新建副本；池已满且等待超时时退回等待主实例
+     */
+    public WorkbookLease acquire(CachedWorkbook primary) throws IOException {
+        if (primary.tryLock()) {
+            return leasePrimary(primary);
+        }
+        if (maxInstances() <= 1) {
+            primary.lock();
+            return leasePrimary(primary);
+        }
+
+        FilePool pool = pools.computeIfAbsent(primary.getFileName(), FilePool::new);
+        PooledWorkbook pooled = pool.borrow(primary, excelConfig.getLock().getWaitTime());
+        if (pooled == null) {
+            waitTimeouts.increment();
+            primary.lock();
+            return leasePrimary(primary);
+        }
+
+        pooledLeases.increment();
+        return new WorkbookLease(primary, pooled.workbook, pooled.evaluator, pooled.version, true,
+                () -> pool.release(pooled));
+    }
+
+    /**
+     * 移除文件的全部副本
+     */
+    public void remove(String fileName) {
+        FilePool pool = pools.remove(fileName);
+        if (pool != null) {
+            pool.clear();
+        }
+    }
+
+    /**
+     * 回收长时间空闲的副本
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void shrink() {
+        long idleTimeout = TimeUnit.SECONDS.toMillis(excelConfig.getCalculation().getPoolIdleTimeoutSeconds());
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<String, FilePool>> it = pools.entrySet().iterator();
+        while (it.hasNext()) {
+            FilePool pool = it.next().getValue();
+            synchronized (pool) {
+                pool.shrink(now - idleTimeout);
+                if (pool.total == 0) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int total = 0;
+        int idle = 0;
+        for (FilePool pool : pools.values()) {
+            synchronized (pool) {
+                total += pool.total;
+                idle += pool.idle.size();
+            }
+        }
+        stats.put("maxInstancesPerFile", maxInstances());
+        stats.put("files", pools.size());
+        stats.put("clones", total);
+        stats.put("idleClones", idle);
+        stats.put("primaryLeases", primaryLeases.sum());
+        stats.put("pooledLeases", pooledLeases.sum());
+        stats.put("clonesCreated", clonesCreated.sum());
+        stats.put("clonesDiscarded", clonesDiscarded.sum());
+        stats.put("waitTimeouts", waitTimeouts.sum());
+        return stats;
+    }
+
+    /**
+     * 调用方已持有主实例，持有期间写者无法修改，版本与内容一致
+     */
+    private WorkbookLease leasePrimary(CachedWorkbook primary) {
+        primaryLeases.increment();
+        return new WorkbookLease(primary, primary.getWorkbook(), primary.getEvaluator(), primary.getVersion(), false,
+                primary::unlock);
+    }
+
+    /**
+     * 每个文件的实例上限（含主实例）
+     */
+    private int maxInstances() {
+        return excelConfig.getCalculation().getMaxConcurrentReads();
+    }
+
+    /**
+     * 单个文件的副本池
+     */
+    private final class FilePool {
+        private final String fileName;
+        private final ArrayDeque<PooledWorkbook> idle = new ArrayDeque<>();
+
+        /**
+         * 当前版本的副本总数（空闲+借出）
+         */
+        private int total = 0;
+        private long version = -1;
+        private byte[] template;
+
+        private FilePool(String fileName) {
+            this.fileName = fileName;
+        }
+
+        private PooledWorkbook borrow(CachedWorkbook primary, long waitMillis) throws IOException {
+            long deadline = System.currentTimeMillis() + waitMillis;
+            byte[] cloneFrom;
+            long cloneVersion;
+
+            synchronized (this) {
+                while (true) {
+                    if (version != primary.getVersion()) {
+                        reset(primary.getVersion());
+                    }
+
+                    PooledWorkbook pooled = idle.pollFirst();
+                    if (pooled != null) {
+                        return pooled;
+                    }
+
+                    // 主实例占一个名额
+                    if (total < maxInstances() - 1) {
+                        total++;
+                        cloneFrom = template;
+                        cloneVersion = version;
+                        break;
+                    }
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                }
+            }
+
+            // 解析副本较慢，在池锁外进行
+            try {
+                if (cloneFrom == null) {
+                    cloneFrom = snapshot(primary);
+                    synchronized (this) {
+                        if (version == cloneVersion) {
+                            template = cloneFrom;
+                        }
+                    }
+                }
+                XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(cloneFrom));
+                clonesCreated.increment();
+                log.debug("创建工作簿副本: {}, 版本: {}", fileName, cloneVersion);
+                return new PooledWorkbook(workbook, cloneVersion);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    if (version == cloneVersion) {
+                        total--;
+                        notifyAll();
+                    }
+                }
+                throw e;
+            }
+        }
+
+        private synchronized void release(PooledWorkbook pooled) {
+            if (pooled.version == version) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.addFirst(pooled);
+            } else {
+                // 版本已变化，计数已在reset时清零
+                clonesDiscarded.increment();
+            }
+            notifyAll();
+        }
+
+        /**
+         * 文件版本变化，丢弃全部旧副本和模板
+         */
+        private void reset(long newVersion) {
+            clonesDiscarded.add(idle.size());
+            idle.clear();
+            total = 0;
+            template = null;
+            version = newVersion;
+        }
+
+        private void shrink(long idleBefore) {
+            // 最近归还的在队首，从队尾回收
+            while (!idle.isEmpty() && idle.peekLast().lastUsed < idleBefore) {
+                idle.pollLast();
+                total--;
+                clonesDiscarded.increment();
+            }
+            if (idle.isEmpty() && total == 0) {
+                template = null;
+            }
+        }
+
+        private synchronized void clear() {
+            reset(-1);
+            notifyAll();
+        }
+    }
+
+    /**
+     * 将主实例序列化为副本模板
+     */
+    private static byte[] snapshot(CachedWorkbook primary) throws IOException {
+        primary.lock();
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream((int) Math.min(primary.getFileLength() * 2, Integer.MAX_VALUE - 8));
+            primary.getWorkbook().write(bos);
+            return bos.toByteArray();
+        } finally {
+            primary.unlock();
+        }
+    }
+
+    /**
+     * 池中的工作簿副本
+     */
+    private static final class PooledWorkbook {
+        private final XSSFWorkbook workbook;
+        private final FormulaEvaluator evaluator;
+        private final long version;
+        private long lastUsed;
+
+        private PooledWorkbook(XSSFWorkbook workbook, long version) {
+            this.workbook = workbook;
+            this.evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+            this.version = version;
+        }
+    }
+}
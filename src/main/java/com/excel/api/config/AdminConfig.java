@@ -17,6 +17,7 @@ public class AdminConfig {
     
     private List<AdminUser> users = new ArrayList<>();
     private TokenConfig tokens = new TokenConfig();
+    private RequestLogConfig requestLogs = new RequestLogConfig();
     
     @Data
     public static class AdminUser {
@@ -29,6 +30,18 @@ public class AdminConfig {
     public static class TokenConfig {
         private Integer defaultExpiryDays = 30;
         private Integer maxTokensPerUser = 10;
+        private Long usageFlushIntervalMs = 5000L;
+        private Long refreshIntervalMs = 60000L;
+    }
+    
+    @Data
+    public static class RequestLogConfig {
+        private Integer bufferSize = 8192;
+        private Integer batchSize = 200;
+        private Long flushIntervalMs = 100L;
+        private Boolean blockWhenFull = false;
+        private Long statsRollupIntervalMs = 60000L;
+        private Integer statsWindowMinutes = 60;
     }
 }
 
@@ -1,8 +1,13 @@
 package com.excel.api.config;
 
+import com.excel.api.journal.WriteAheadJournal;
+import com.excel.api.service.ExcelService;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.util.DefaultTempFileCreationStrategy;
+import org.apache.poi.util.TempFile;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.CommandLineRunner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
@@ -12,31 +17,84 @@ import java.nio.file.Paths;
 
 /**
  * 目录初始化器
- * 在应用启动时自动创建必需的目录
+ * 在应用启动时自动创建必需的目录，并重放预写日志。
+ * 作为SmartLifecycle在Web服务器开始接受请求之前执行，避免新写入被之后重放的旧补丁覆盖
  */
 @Slf4j
 @Component
-public class DirectoryInitializer implements CommandLineRunner {
+public class DirectoryInitializer implements SmartLifecycle {
     
     @Autowired
     private ExcelConfig excelConfig;
     
+    @Autowired
+    private WriteAheadJournal journal;
+    
+    @Autowired
+    private ExcelService excelService;
+    
+    @Value("${logging.file.name:./logs/excel-api.log}")
+    private String logFile;
+    
+    private volatile boolean running = false;
+    
     @Override
-    public void run(String... args) throws Exception {
+    public void start() {
         log.info("开始初始化应用目录...");
         
         // 创建 Excel 文件存储目录
         createDirectory(excelConfig.getStorage().getPath(), "Excel文件存储");
+        cleanSaveTempFiles(excelConfig.getStorage().getStorageDir());
         
-        // 创建临时文件目录
+        // 创建临时文件目录，POI的临时文件（如流式写入的行缓冲）也放在这里
         createDirectory(excelConfig.getStorage().getTempPath(), "临时文件");
+        TempFile.setTempFileCreationStrategy(
+                new DefaultTempFileCreationStrategy(excelConfig.getStorage().getTempDir()));
         
         // 创建日志目录
-        createDirectory("./logs", "日志");
+        File logDir = new File(logFile).getAbsoluteFile().getParentFile();
+        createDirectory(logDir.getPath(), "日志");
+        
+        // 重放预写日志中崩溃前未保存的修改
+        journal.recover(excelService::recoverFromJournal);
         
+        running = true;
         log.info("应用目录初始化完成");
     }
     
+    @Override
+    public void stop() {
+        running = false;
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * 早于Web服务器的阶段启动
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+    
+    /**
+     * 清理保存过程中崩溃遗留的临时文件，原文件未被替换，仍是完整的旧版本
+     */
+    private void cleanSaveTempFiles(File storageDir) {
+        File[] leftovers = storageDir.listFiles((dir, name) -> name.endsWith(ExcelService.SAVE_TEMP_SUFFIX));
+        if (leftovers == null) {
+            return;
+        }
+        for (File leftover : leftovers) {
+            if (leftover.delete()) {
+                log.warn("清理未完成保存的临时文件: {}", leftover.getName());
+            }
+        }
+    }
+    
     /**
      * 创建目录
      * @param dirPath 目录路径
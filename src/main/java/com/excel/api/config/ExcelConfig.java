@@ -17,6 +17,7 @@ public class ExcelConfig {
     private Storage storage = new Storage();
     private Lock lock = new Lock();
     private Calculation calculation = new Calculation();
+    private Metrics metrics = new Metrics();
     
     @Data
     public static class Storage {
@@ -24,6 +25,15 @@ public class ExcelConfig {
         private String tempPath = "./excel-temp";
         private Boolean versionControl = true;
         private Integer maxVersions = 10;
+        private String versionMode = "snapshot";
+        private Integer snapshotInterval = 20;
+        private Integer streamingRowWindow = 100;
+        private Boolean compressTempFiles = true;
+        private Boolean writeBehind = false;
+        private Long writeBehindIntervalMs = 1000L;
+        private Integer writeBehindMaxDirtyCells = 10000;
+        private Boolean journal = false;
+        private Integer journalSegmentMb = 64;
         
         public File getStorageDir() {
             // 返回绝对路径，避免相对路径在Tomcat环境下的问题
@@ -47,15 +57,29 @@ public class ExcelConfig {
     @Data
     public static class Lock {
         private String type = "local";
-        private Long timeout = 30000L;
-        private Long waitTime = 10000L;
+        private Long timeout = 10000L;
+        private Long waitTime = 3000L;
+        private Boolean fair = false;
+        private Integer stripes = 0;
+        private Long readLeaseLingerMs = 200L;
+        private Boolean watchdog = true;
     }
     
     @Data
     public static class Calculation {
         private Boolean cacheEnabled = true;
+        private Integer cacheMaxEntries = 32;
+        private Long cacheMaxSizeMb = 512L;
+        private Integer formulaCacheMaxCells = 100000;
         private Integer maxConcurrentReads = 50;
+        private Integer poolIdleTimeoutSeconds = 300;
+        private Integer batchParallelism = 0;
         private Integer maxConcurrentWrites = 1;
+        private Boolean optimisticReads = true;
+    }
+    
+    @Data
+    public static class Metrics {
+        private Integer maxKeys = 200;
     }
 }
-
@@ -4,10 +4,13 @@ import com.excel.api.config.AdminConfig;
 import com.excel.api.config.ExcelConfig;
 import com.excel.api.model.ApiToken;
 import com.excel.api.model.RequestLog;
+import com.excel.api.service.ExcelService;
 import com.excel.api.service.RequestLogService;
+import com.excel.api.service.RequestStatsService;
 import com.excel.api.service.TokenService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -19,8 +22,10 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -40,9 +45,15 @@ public class AdminController {
     @Autowired
     private RequestLogService requestLogService;
     
+    @Autowired
+    private RequestStatsService requestStatsService;
+    
     @Autowired
     private AdminConfig adminConfig;
     
+    @Autowired
+    private ExcelService excelService;
+    
     /**
      * 登录页面
      */
@@ -65,7 +76,7 @@ public class AdminController {
         
         model.addAttribute("tokenCount", tokens.size());
         model.addAttribute("activeTokenCount", tokens.stream().filter(ApiToken::isActive).count());
-        model.addAttribute("totalRequests", requestLogService.getAllLogs().size());
+        model.addAttribute("totalRequests", requestStatsService.getTotals().get("totalRequests"));
         model.addAttribute("recentLogs", recentLogs);
         
         return "dashboard";
@@ -165,8 +176,8 @@ public class AdminController {
                 }
             }
             
-            // 保存文件（使用绝对路径）
-            file.transferTo(targetFile.getAbsoluteFile());
+            // 保存文件（使用绝对路径，持有写锁原子替换已有文件）
+            excelService.replaceFile(filename, targetFile.getAbsoluteFile(), file);
             
             // 验证文件是否成功保存
             if (targetFile.exists()) {
@@ -194,8 +205,7 @@ public class AdminController {
     public String deleteFile(@RequestParam("filename") String filename,
                             RedirectAttributes redirectAttributes) {
         try {
-            File file = new File(excelConfig.getStorage().getStorageDir(), filename);
-            if (file.exists() && file.delete()) {
+            if (excelService.deleteFile(filename)) {
                 redirectAttributes.addFlashAttribute("success", "文件删除成功: " + filename);
                 log.info("删除文件: {}", filename);
             } else {
@@ -306,6 +316,17 @@ public class AdminController {
         return "logs";
     }
     
+    /**
+     * 时间范围内的请求统计（JSON），from、to为空表示不限
+     */
+    @GetMapping("/logs/stats")
+    @ResponseBody
+    public Map<String, Object> logStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return requestStatsService.getRange(from, to);
+    }
+    
     /**
      * 清空日志
      */
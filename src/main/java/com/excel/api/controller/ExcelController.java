@@ -1,14 +1,22 @@
 package com.excel.api.controller;
 
 import com.excel.api.config.ExcelConfig;
+import com.excel.api.metrics.RequestMetrics;
+import com.excel.api.model.ExcelBatchCalculateRequest;
+import com.excel.api.model.ExcelBatchResponse;
 import com.excel.api.model.ExcelOperationRequest;
+import com.excel.api.model.ExcelRangeReadRequest;
+import com.excel.api.model.ExcelRangeResponse;
+import com.excel.api.model.ExcelRangeWriteRequest;
 import com.excel.api.model.ExcelReadRequest;
 import com.excel.api.model.ExcelResponse;
+import com.excel.api.model.ExcelVersionResponse;
 import com.excel.api.model.ExcelWriteRequest;
 import com.excel.api.service.ExcelService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,6 +27,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * Excel API控制器
@@ -35,6 +44,9 @@ public class ExcelController {
     @Autowired
     private ExcelConfig excelConfig;
     
+    @Autowired
+    private RequestMetrics requestMetrics;
+    
     /**
      * 写入Excel
      */
@@ -62,6 +74,26 @@ public class ExcelController {
                 .build());
     }
     
+    /**
+     * 写入Excel区域
+     */
+    @PostMapping("/write/range")
+    @Operation(summary = "写入Excel区域", 
+               description = "从起始单元格开始写入二维数组（values，按行）或带类型的列数组（columns，按列）")
+    public ResponseEntity<ExcelResponse> writeRange(
+            @Valid @RequestBody ExcelRangeWriteRequest request) {
+        
+        log.info("接收区域写入请求: 文件={}, Sheet={}, 起始单元格={}", 
+                request.getFileName(), request.getSheetName(), request.getAnchor());
+        
+        excelService.writeRange(request);
+        
+        return ResponseEntity.ok(ExcelResponse.builder()
+                .success(true)
+                .message("写入成功")
+                .build());
+    }
+    
     /**
      * 读取Excel
      */
@@ -87,6 +119,23 @@ public class ExcelController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 读取Excel区域
+     */
+    @PostMapping("/read/range")
+    @Operation(summary = "读取Excel区域", 
+               description = "按区域（A1:T1000、整列A:C或命名区域）读取，返回按行排列的二维数组和每列的值类型")
+    public ResponseEntity<ExcelRangeResponse> readRange(
+            @Valid @RequestBody ExcelRangeReadRequest request) {
+        
+        log.info("接收区域读取请求: 文件={}, Sheet={}, 区域={}", 
+                request.getFileName(), request.getSheetName(), request.getRange());
+        
+        ExcelRangeResponse response = excelService.readRange(request);
+        
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * 同时执行写入和读取操作
      */
@@ -113,6 +162,83 @@ public class ExcelController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 试算（不保存输入）
+     */
+    @PostMapping("/calculate")
+    @Operation(summary = "试算", 
+               description = "将writeRequest中的值作为临时输入，返回readRequest中单元格的计算结果；输入不会写入文件，多个试算请求可并行执行")
+    public ResponseEntity<ExcelResponse> calculate(
+            @Valid @RequestBody ExcelOperationRequest request) {
+        
+        if (request.getReadRequest() == null) {
+            return ResponseEntity.badRequest().body(ExcelResponse.builder()
+                    .success(false)
+                    .message("readRequest不能为空")
+                    .build());
+        }
+        
+        log.info("接收试算请求: 文件={}", request.getFileName());
+        
+        // 自动将外层的fileName传递给内部的writeRequest和readRequest
+        if (request.getWriteRequest() != null && request.getWriteRequest().getFileName() == null) {
+            request.getWriteRequest().setFileName(request.getFileName());
+        }
+        if (request.getReadRequest().getFileName() == null) {
+            request.getReadRequest().setFileName(request.getFileName());
+        }
+        
+        ExcelResponse response = excelService.calculate(
+                request.getWriteRequest(), 
+                request.getReadRequest()
+        );
+        
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 批量试算
+     */
+    @PostMapping("/calculate/batch")
+    @Operation(summary = "批量试算", 
+               description = "同一文件的多组输入一次提交，各场景并行计算，结果按请求顺序返回；输入不会写入文件")
+    public ResponseEntity<ExcelBatchResponse> calculateBatch(
+            @Valid @RequestBody ExcelBatchCalculateRequest request) {
+        
+        log.info("接收批量试算请求: 文件={}, 场景数={}", request.getFileName(), request.getScenarios().size());
+        
+        ExcelBatchResponse response = excelService.calculateBatch(request);
+        
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 流式批量写入行
+     */
+    @PostMapping(value = "/bulk", consumes = {"application/x-ndjson", MediaType.TEXT_PLAIN_VALUE})
+    @Operation(summary = "流式批量写入", 
+               description = "请求体为NDJSON，每行一个JSON数组表示一行单元格值；mode=append追加到sheet末尾，mode=create新建文件")
+    public ResponseEntity<ExcelResponse> bulkWrite(
+            @Parameter(description = "Excel文件名") @RequestParam("fileName") String fileName,
+            @Parameter(description = "Sheet名称") @RequestParam(value = "sheetName", defaultValue = "Sheet1") String sheetName,
+            @Parameter(description = "append或create") @RequestParam(value = "mode", defaultValue = "append") String mode,
+            HttpServletRequest request) throws IOException {
+        
+        if (!"append".equalsIgnoreCase(mode) && !"create".equalsIgnoreCase(mode)) {
+            return ResponseEntity.badRequest().body(ExcelResponse.builder()
+                    .success(false)
+                    .message("mode只能是append或create")
+                    .build());
+        }
+        
+        log.info("接收流式写入请求: 文件={}, Sheet={}, 模式={}", fileName, sheetName, mode);
+        
+        ExcelResponse response = excelService.bulkWrite(
+                fileName, sheetName, "append".equalsIgnoreCase(mode), request.getInputStream());
+        
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * 上传Excel文件
      */
@@ -166,8 +292,8 @@ public class ExcelController {
                 }
             }
             
-            // 保存文件（使用绝对路径）
-            file.transferTo(targetFile.getAbsoluteFile());
+            // 保存文件（使用绝对路径，持有写锁原子替换已有文件）
+            excelService.replaceFile(targetFileName, targetFile.getAbsoluteFile(), file);
             
             log.info("文件上传成功: {} -> {}", targetFileName, targetFile.getAbsolutePath());
             
@@ -185,6 +311,85 @@ public class ExcelController {
         }
     }
     
+    /**
+     * 历史版本列表
+     */
+    @GetMapping("/versions")
+    @Operation(summary = "历史版本列表", description = "列出文件的历史版本，按时间从旧到新")
+    public ResponseEntity<ExcelVersionResponse> listVersions(
+            @Parameter(description = "文件名") @RequestParam String fileName) {
+        return ResponseEntity.ok(excelService.listVersions(fileName));
+    }
+    
+    /**
+     * 恢复历史版本
+     */
+    @PostMapping("/versions/restore")
+    @Operation(summary = "恢复历史版本", description = "将文件恢复为指定版本，恢复后的内容记录为一个新版本")
+    public ResponseEntity<ExcelResponse> restoreVersion(
+            @Parameter(description = "文件名") @RequestParam String fileName,
+            @Parameter(description = "版本号") @RequestParam String versionId) {
+        
+        log.info("接收恢复版本请求: 文件={}, 版本={}", fileName, versionId);
+        
+        return ResponseEntity.ok(excelService.restoreVersion(fileName, versionId));
+    }
+    
+    /**
+     * 比较历史版本
+     */
+    @GetMapping("/versions/diff")
+    @Operation(summary = "比较历史版本", description = "返回两个版本间内容不同的单元格")
+    public ResponseEntity<ExcelVersionResponse> diffVersions(
+            @Parameter(description = "文件名") @RequestParam String fileName,
+            @Parameter(description = "旧版本号") @RequestParam String from,
+            @Parameter(description = "新版本号") @RequestParam String to) {
+        return ResponseEntity.ok(excelService.diffVersions(fileName, from, to));
+    }
+    
+    /**
+     * 保存未落盘的修改
+     */
+    @PostMapping("/flush")
+    @Operation(summary = "保存到磁盘", description = "写后延迟保存模式下，立即保存文件在内存中未落盘的修改")
+    public ResponseEntity<ExcelResponse> flush(
+            @Parameter(description = "文件名") @RequestParam String fileName) {
+        boolean flushed = excelService.flush(fileName);
+        return ResponseEntity.ok(ExcelResponse.builder()
+                .success(true)
+                .message(flushed ? "保存成功" : "没有未保存的修改")
+                .build());
+    }
+    
+    /**
+     * 工作簿缓存统计
+     */
+    @GetMapping("/cache/stats")
+    @Operation(summary = "缓存统计", description = "查看工作簿缓存的命中、未命中、淘汰次数和加载耗时")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(excelService.getCacheStatistics());
+    }
+    
+    /**
+     * 请求耗时统计
+     */
+    @GetMapping("/metrics")
+    @Operation(summary = "耗时统计", description = "按接口、文件、Token的请求耗时分位数，以及各接口锁等待、解析、计算、写出、版本记录的阶段耗时")
+    public ResponseEntity<Map<String, Object>> metrics() {
+        return ResponseEntity.ok(requestMetrics.getStatistics());
+    }
+    
+    /**
+     * 请求耗时统计（Prometheus格式）
+     */
+    @GetMapping("/metrics/prometheus")
+    @Operation(summary = "耗时统计（Prometheus）", description = "Prometheus文本格式的耗时直方图，供抓取")
+    public ResponseEntity<String> prometheusMetrics() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(RequestMetrics.prometheusContentType()))
+                .body(requestMetrics.toPrometheus());
+    }
+    
     /**
      * 健康检查
      */
@@ -60,7 +60,13 @@ public class ExcelDownloadController {
             return ResponseEntity.notFound().build();
         }
         
-        InputStreamResource resource = new InputStreamResource(new FileInputStream(excelFile));
+        // 写后延迟保存模式下先落盘
+        excelService.flush(fileName);
+        
+        // 保存是原子替换，无需加锁：已打开的流始终读取完整的一个版本，长度也取自同一个文件
+        FileInputStream in = new FileInputStream(excelFile);
+        long contentLength = in.getChannel().size();
+        InputStreamResource resource = new InputStreamResource(in);
         
         String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8)
                 .replaceAll("\\+", "%20");
@@ -69,7 +75,7 @@ public class ExcelDownloadController {
                 .header(HttpHeaders.CONTENT_DISPOSITION, 
                         "attachment; filename=\"" + fileName + "\"; filename*=UTF-8''" + encodedFileName)
                 .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                .contentLength(excelFile.length())
+                .contentLength(contentLength)
                 .body(resource);
     }
     
@@ -84,7 +90,7 @@ public class ExcelDownloadController {
         
         log.info("模板生成请求: 模板={}, 输出={}", request.getTemplateFileName(), request.getOutputFileName());
         
-        // 1. 复制模板到输出文件
+        // 1. 确定输出文件名
         String outputFileName = request.getOutputFileName();
         if (outputFileName == null || outputFileName.isEmpty()) {
             // 自动生成输出文件名
@@ -100,20 +106,19 @@ public class ExcelDownloadController {
             throw new RuntimeException("模板文件不存在: " + request.getTemplateFileName());
         }
         
-        // 复制模板文件
-        java.nio.file.Files.copy(templateFile.toPath(), outputFile.toPath(), 
-                java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-        
-        // 2. 写入数据到新文件
+        // 2. 复制模板并写入数据到新文件（模板读锁、输出文件写锁一起获取）
         ExcelWriteRequest writeRequest = new ExcelWriteRequest();
         writeRequest.setFileName(outputFileName);
         writeRequest.setSheetName(request.getSheetName());
         writeRequest.setCells(request.getCells());
+        writeRequest.setFlush(true);
         
-        excelService.writeExcel(writeRequest);
+        excelService.copyAndWrite(request.getTemplateFileName(), writeRequest);
         
         // 3. 返回文件供下载
-        InputStreamResource resource = new InputStreamResource(new FileInputStream(outputFile));
+        FileInputStream in = new FileInputStream(outputFile);
+        long contentLength = in.getChannel().size();
+        InputStreamResource resource = new InputStreamResource(in);
         
         String encodedFileName = URLEncoder.encode(outputFileName, StandardCharsets.UTF_8)
                 .replaceAll("\\+", "%20");
@@ -129,7 +134,7 @@ public class ExcelDownloadController {
                 .header(HttpHeaders.CONTENT_DISPOSITION, 
                         "attachment; filename=\"" + outputFileName + "\"; filename*=UTF-8''" + encodedFileName)
                 .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                .contentLength(outputFile.length())
+                .contentLength(contentLength)
                 .body(resource);
     }
     
@@ -154,6 +159,7 @@ public class ExcelDownloadController {
         }
         
         // 复制到临时目录
+        excelService.flush(request.getTemplateFileName());
         java.nio.file.Files.copy(templateFile.toPath(), tempFile.toPath(), 
                 java.nio.file.StandardCopyOption.REPLACE_EXISTING);
         
@@ -162,6 +168,7 @@ public class ExcelDownloadController {
         writeRequest.setFileName("../excel-temp/" + tempFileName); // 使用临时目录
         writeRequest.setSheetName(request.getSheetName());
         writeRequest.setCells(request.getCells());
+        writeRequest.setFlush(true);
         
         try {
             excelService.writeExcel(writeRequest);
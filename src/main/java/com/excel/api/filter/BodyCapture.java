@@ -0,0 +1,88 @@
+package com.excel.api.filter;
+
+import java.nio.charset.Charset;
+
+/**
+ * 请求或响应体的前若干字节
+ * 数据照常流过，只复制前limit字节用于记录日志；缓冲区随线程复用，每个请求开始时重置
+ */
+final class BodyCapture {
+
+    private final byte[] buffer;
+    private int length;
+    private long total;
+    private boolean enabled;
+
+    BodyCapture(int limit) {
+        this.buffer = new byte[limit];
+    }
+
+    void reset(boolean enabled) {
+        this.length = 0;
+        this.total = 0;
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 不记录内容（二进制内容）
+     */
+    void disable() {
+        this.enabled = false;
+    }
+
+    void write(int b) {
+        total++;
+        if (enabled && length < buffer.length) {
+            buffer[length++] = (byte) b;
+        }
+    }
+
+    void write(byte[] b, int off, int len) {
+        total += len;
+        if (enabled && length < buffer.length) {
+            int copy = Math.min(len, buffer.length - length);
+            System.arraycopy(b, off, buffer, length, copy);
+            length += copy;
+        }
+    }
+
+    /**
+     * @return 截取的内容，未记录或为空时返回null
+     */
+    String text(Charset charset) {
+        if (!enabled || length == 0) {
+            return null;
+        }
+        return new String(buffer, 0, length, charset);
+    }
+
+    /**
+     * 内容是否超过缓冲区而被截断
+     */
+    boolean isTruncated() {
+        return total > length;
+    }
+
+    /**
+     * 判断内容类型是否为文本，二进制内容（文件上传、下载等）不记录
+     */
+    static boolean isTextual(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        // 去掉参数，只比较媒体类型（xlsx的类型中含有"openxml"，不能按子串判断）
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase();
+        return type.startsWith("text/")
+                || type.equals("application/json")
+                || type.equals("application/xml")
+                || type.endsWith("+json")
+                || type.endsWith("+xml")
+                || type.equals("application/x-www-form-urlencoded")
+                || type.equals("application/javascript");
+    }
+}
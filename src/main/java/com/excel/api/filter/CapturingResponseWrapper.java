@@ -0,0 +1,147 @@
+package com.excel.api.filter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 写出响应体时截取前若干字节，内容直接写给客户端不缓存
+ * 是否截取在第一次写出时按内容类型决定，二进制内容（如文件下载）不截取
+ */
+class CapturingResponseWrapper extends HttpServletResponseWrapper {
+
+    private final BodyCapture capture;
+    private boolean decided;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    CapturingResponseWrapper(HttpServletResponse response, BodyCapture capture) {
+        super(response);
+        this.capture = capture;
+        capture.reset(true);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new CapturingOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        flushWriter();
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        discardWriter();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        discardWriter();
+    }
+
+    /**
+     * 清空缓冲时一并丢弃字符输出：其中尚未写出的内容属于被清空的响应，不能在之后再写出
+     * 之后重新获取的字符输出按当前的字符集新建
+     */
+    private void discardWriter() {
+        writer = null;
+        decided = false;
+        capture.reset(true);
+    }
+
+    /**
+     * 把字符输出中尚未写出的内容写出
+     */
+    void flushWriter() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * 已写出部分的前若干字节（按UTF-8解码）
+     */
+    String getCapturedBody() {
+        flushWriter();
+        return capture.text(StandardCharsets.UTF_8);
+    }
+
+    boolean isCaptureTruncated() {
+        return capture.isTruncated();
+    }
+
+    private Charset charset() {
+        String encoding = getCharacterEncoding();
+        return encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+    }
+
+    private void decide() {
+        if (!decided) {
+            decided = true;
+            if (!BodyCapture.isTextual(getContentType())) {
+                capture.disable();
+            }
+        }
+    }
+
+    private class CapturingOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+
+        CapturingOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            decide();
+            delegate.write(b);
+            capture.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            decide();
+            delegate.write(b, off, len);
+            capture.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.excel.api.filter;
 
+import com.excel.api.metrics.RequestMetrics;
 import com.excel.api.model.RequestLog;
 import com.excel.api.service.RequestLogService;
 import com.excel.api.service.TokenService;
@@ -12,14 +13,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
-import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.servlet.HandlerMapping;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Token认证过滤器
+ * 请求和响应体直接流过，只截取前若干字节记录日志，二进制内容（上传、下载的文件）不截取；
+ * 请求耗时按接口、文件、Token记入 {@link RequestMetrics}
  */
 @Slf4j
 @Component
@@ -31,8 +34,27 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private RequestLogService requestLogService;
     
+    @Autowired
+    private RequestMetrics requestMetrics;
+    
     private final ObjectMapper objectMapper = new ObjectMapper();
     
+    /**
+     * 日志中请求体、响应体的最大字符数
+     */
+    private static final int MAX_LOGGED_CHARS = 1000;
+    
+    /**
+     * 截取的字节数，按UTF-8最多4字节一个字符足够解码出MAX_LOGGED_CHARS个字符
+     */
+    private static final int CAPTURE_BYTES = MAX_LOGGED_CHARS * 4;
+    
+    /**
+     * 截取缓冲区随线程复用（请求在同一线程内处理完毕并记录日志）
+     */
+    private final ThreadLocal<BodyCapture> requestCapture = ThreadLocal.withInitial(() -> new BodyCapture(CAPTURE_BYTES));
+    private final ThreadLocal<BodyCapture> responseCapture = ThreadLocal.withInitial(() -> new BodyCapture(CAPTURE_BYTES));
+    
     @Override
     protected void doFilterInternal(HttpServletRequest request, 
                                     HttpServletResponse response, 
@@ -46,11 +68,12 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
         
-        // 包装请求和响应以便读取内容
-        ContentCachingRequestWrapper wrappedRequest = new ContentCachingRequestWrapper(request);
-        ContentCachingResponseWrapper wrappedResponse = new ContentCachingResponseWrapper(response);
+        // 包装请求和响应以便截取内容
+        CapturingRequestWrapper wrappedRequest = new CapturingRequestWrapper(request, requestCapture.get());
+        CapturingResponseWrapper wrappedResponse = new CapturingResponseWrapper(response, responseCapture.get());
         
-        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        requestMetrics.begin();
         
         try {
             // 获取Token
@@ -58,14 +81,14 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
             
             if (token == null || token.isEmpty()) {
                 sendErrorResponse(wrappedResponse, 401, "缺少Token");
-                logRequest(wrappedRequest, wrappedResponse, null, startTime, "缺少Token");
+                logRequest(wrappedRequest, wrappedResponse, null, startNanos, "缺少Token");
                 return;
             }
             
             // 验证Token
             if (!tokenService.validateToken(token)) {
                 sendErrorResponse(wrappedResponse, 403, "无效或已过期的Token");
-                logRequest(wrappedRequest, wrappedResponse, token, startTime, "Token验证失败");
+                logRequest(wrappedRequest, wrappedResponse, token, startNanos, "Token验证失败");
                 return;
             }
             
@@ -73,14 +96,18 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
             filterChain.doFilter(wrappedRequest, wrappedResponse);
             
             // 记录成功的请求
-            logRequest(wrappedRequest, wrappedResponse, token, startTime, null);
+            logRequest(wrappedRequest, wrappedResponse, token, startNanos, null);
             
         } catch (Exception e) {
             log.error("Token验证过程出错", e);
-            sendErrorResponse(wrappedResponse, 500, "服务器内部错误");
-            logRequest(wrappedRequest, wrappedResponse, null, startTime, e.getMessage());
+            // 响应已开始发送时无法再改为错误响应
+            if (!wrappedResponse.isCommitted()) {
+                wrappedResponse.resetBuffer();
+                sendErrorResponse(wrappedResponse, 500, "服务器内部错误");
+            }
+            logRequest(wrappedRequest, wrappedResponse, null, startNanos, e.getMessage());
         } finally {
-            wrappedResponse.copyBodyToResponse();
+            wrappedResponse.flushWriter();
         }
     }
     
@@ -118,24 +145,26 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
     /**
      * 记录请求日志
      */
-    private void logRequest(ContentCachingRequestWrapper request,
-                           ContentCachingResponseWrapper response,
+    private void logRequest(CapturingRequestWrapper request,
+                           CapturingResponseWrapper response,
                            String token,
-                           long startTime,
+                           long startNanos,
                            String errorMessage) {
         
-        long duration = System.currentTimeMillis() - startTime;
+        long elapsed = System.nanoTime() - startNanos;
+        String tokenName = token != null ? getTokenName(token) : null;
+        requestMetrics.end(endpointOf(request), pathFileName(request), tokenName, elapsed);
         
-        String requestBody = getRequestBody(request);
-        String responseBody = getResponseBody(response);
+        String requestBody = truncate(request.getCapturedBody(), request.isCaptureTruncated());
+        String responseBody = truncate(response.getCapturedBody(), response.isCaptureTruncated());
         
         RequestLog requestLog = RequestLog.builder()
                 .method(request.getMethod())
                 .path(request.getRequestURI())
                 .token(token)
-                .tokenName(token != null ? getTokenName(token) : null)
+                .tokenName(tokenName)
                 .statusCode(response.getStatus())
-                .duration(duration)
+                .duration(TimeUnit.NANOSECONDS.toMillis(elapsed))
                 .requestBody(requestBody)
                 .responseBody(responseBody)
                 .errorMessage(errorMessage)
@@ -146,37 +175,33 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
     }
     
     /**
-     * 获取请求体
+     * 限制日志中内容的长度
      */
-    private String getRequestBody(ContentCachingRequestWrapper request) {
-        try {
-            byte[] content = request.getContentAsByteArray();
-            if (content.length > 0) {
-                String body = new String(content, StandardCharsets.UTF_8);
-                // 限制长度
-                return body.length() > 1000 ? body.substring(0, 1000) + "..." : body;
-            }
-        } catch (Exception e) {
-            log.warn("无法读取请求体", e);
+    private String truncate(String body, boolean truncated) {
+        if (body == null) {
+            return null;
         }
-        return null;
+        if (body.length() > MAX_LOGGED_CHARS) {
+            return body.substring(0, MAX_LOGGED_CHARS) + "...";
+        }
+        return truncated ? body + "..." : body;
     }
     
     /**
-     * 获取响应体
+     * 请求匹配到的接口路径模式，未进入控制器（如Token验证失败）时为null
      */
-    private String getResponseBody(ContentCachingResponseWrapper response) {
-        try {
-            byte[] content = response.getContentAsByteArray();
-            if (content.length > 0) {
-                String body = new String(content, StandardCharsets.UTF_8);
-                // 限制长度
-                return body.length() > 1000 ? body.substring(0, 1000) + "..." : body;
-            }
-        } catch (Exception e) {
-            log.warn("无法读取响应体", e);
-        }
-        return null;
+    private String endpointOf(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern instanceof String ? (String) pattern : null;
+    }
+    
+    /**
+     * 路径中的文件名（如下载接口），没有时为null
+     */
+    @SuppressWarnings("unchecked")
+    private String pathFileName(HttpServletRequest request) {
+        Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        return variables instanceof Map ? ((Map<String, String>) variables).get("fileName") : null;
     }
     
     /**
@@ -184,8 +209,8 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
      */
     private String getTokenName(String token) {
         try {
-            var apiToken = tokenService.getToken(token);
-            return apiToken != null ? apiToken.getName() : "Unknown";
+            String name = tokenService.getTokenName(token);
+            return name != null ? name : "Unknown";
         } catch (Exception e) {
             return "Unknown";
         }
@@ -0,0 +1,29 @@
+package com.excel.api.journal;
+
+import com.excel.api.version.CellPatch;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 日志中的一条记录（一行JSON）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalRecord {
+
+    public static final String PATCH = "PATCH";
+    public static final String CHECKPOINT = "CHECKPOINT";
+
+    private long seq;
+
+    /**
+     * PATCH：一次写入修改的单元格；CHECKPOINT：该文件之前的修改均已保存到xlsx，恢复时不再重放
+     */
+    private String type;
+
+    private String fileName;
+
+    private CellPatch patch;
+}
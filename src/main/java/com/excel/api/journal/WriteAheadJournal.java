@@ -0,0 +1,408 @@
+package com.excel.api.journal;
+
+import com.excel.api.config.ExcelConfig;
+import com.excel.api.version.CellPatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单元格修改的预写日志
+ * 写后延迟保存模式下，每次写入在返回前把修改的单元格（{@link CellPatch}）追加到全局日志并同步到磁盘，
+ * xlsx由后台延迟保存；保存后追加CHECKPOINT记录，之前该文件的记录在恢复时不再重放。
+ * 组提交：同步磁盘期间到达的追加由下一次同步一并完成，并发写入共享一次fsync。
+ * 日志按段存放在存储目录的 .journal/ 下，超过 excel.storage.journal-segment-mb 时切换新段，
+ * 最旧的段中所有文件都已保存后删除。创建后由 {@link #load()} 读取已有的段，
+ * 在开始接受请求前由 {@link #recover(RecoveryHandler)} 重放未保存的记录
+ */
+@Slf4j
+@Component
+public class WriteAheadJournal {
+
+    static final String JOURNAL_DIR = ".journal";
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * 恢复回调：将文件未保存的补丁按顺序应用并保存
+     */
+    @FunctionalInterface
+    public interface RecoveryHandler {
+        void recover(String fileName, List<CellPatch> patches) throws IOException;
+    }
+
+    private final ExcelConfig excelConfig;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 以下字段在this上同步
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private FileChannel channel;
+    private long nextSeq = 1;
+
+    /**
+     * 累计写入的字节数（只增不减），组提交以此作为同步位置
+     */
+    private long writtenBytes = 0;
+
+    /**
+     * 文件名 -> 最近一次CHECKPOINT的序号
+     */
+    private final Map<String, Long> checkpoints = new HashMap<>();
+
+    /**
+     * 加载时读到的各文件未保存的补丁，等待重放
+     */
+    private Map<String, List<CellPatch>> unrecovered = new LinkedHashMap<>();
+
+    /**
+     * 组提交状态，在syncLock上同步；持有syncLock时可以再获取this，反之不行
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private boolean syncing = false;
+    private long durableBytes = 0;
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+
+    public WriteAheadJournal(ExcelConfig excelConfig, ObjectMapper objectMapper) {
+        this.excelConfig = excelConfig;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 是否启用预写日志（excel.storage.journal）
+     */
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(excelConfig.getStorage().getJournal());
+    }
+
+    /**
+     * 追加一次写入的修改，返回时已同步到磁盘
+     * 调用方需持有该文件的写锁，保证同一文件的记录有序
+     */
+    public void append(String fileName, CellPatch patch) throws IOException {
+        awaitDurable(write(new JournalRecord(0, JournalRecord.PATCH, fileName, patch)));
+        appends.increment();
+    }
+
+    /**
+     * 文件已保存到xlsx（或已被替换、删除），之前的记录不再需要重放
+     * 调用方需持有该文件的写锁
+     */
+    public void checkpoint(String fileName) throws IOException {
+        long end;
+        synchronized (this) {
+            if (!hasPending(fileName)) {
+                return;
+            }
+            end = write(new JournalRecord(0, JournalRecord.CHECKPOINT, fileName, null));
+        }
+        awaitDurable(end);
+        deleteObsoleteSegments();
+    }
+
+    /**
+     * 读取已有的段，恢复序号和检查点，收集未保存的补丁
+     * 在任何追加之前完成，新记录的序号接在已有记录之后，不会重新打开已有的段
+     */
+    @PostConstruct
+    public synchronized void load() throws IOException {
+        File[] files = journalDir().listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            segments.addLast(readSegment(file.toPath(), unrecovered));
+        }
+    }
+
+    /**
+     * 重放 {@link #load()} 读到的各文件最近一次CHECKPOINT之后的补丁，需在接受写入之前调用
+     * 重放成功的文件由回调保存后调用 {@link #checkpoint(String)}；失败的文件记录保留，下次启动再试
+     */
+    public void recover(RecoveryHandler handler) {
+        Map<String, List<CellPatch>> pending;
+        synchronized (this) {
+            pending = unrecovered;
+            unrecovered = new LinkedHashMap<>();
+        }
+
+        for (Map.Entry<String, List<CellPatch>> entry : pending.entrySet()) {
+            try {
+                handler.recover(entry.getKey(), entry.getValue());
+                replayed.add(entry.getValue().size());
+                log.info("从预写日志恢复: {}, 补丁数: {}", entry.getKey(), entry.getValue().size());
+            } catch (IOException | RuntimeException e) {
+                log.error("从预写日志恢复失败: {}", entry.getKey(), e);
+            }
+        }
+        deleteObsoleteSegments();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long appendCount = appends.sum();
+        long syncCount = syncs.sum();
+        synchronized (this) {
+            stats.put("enabled", isEnabled());
+            stats.put("segments", segments.size());
+            stats.put("bytes", segments.stream().mapToLong(segment -> segment.bytes).sum());
+            stats.put("nextSeq", nextSeq);
+        }
+        stats.put("appends", appendCount);
+        stats.put("syncs", syncCount);
+        stats.put("appendsPerSync", syncCount > 0 ? (double) appendCount / syncCount : 0.0);
+        stats.put("replayedPatches", replayed.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * 写入一条记录（不等待同步）
+     * @return 写入后的日志总字节数，用于等待同步
+     */
+    private synchronized long write(JournalRecord record) throws IOException {
+        record.setSeq(nextSeq++);
+        byte[] json = objectMapper.writeValueAsBytes(record);
+        ByteBuffer buffer = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n');
+        buffer.flip();
+
+        Segment segment = activeSegment();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        segment.bytes += json.length + 1;
+        writtenBytes += json.length + 1;
+
+        if (JournalRecord.CHECKPOINT.equals(record.getType())) {
+            checkpoints.put(record.getFileName(), record.getSeq());
+        } else {
+            segment.lastSeqByFile.put(record.getFileName(), record.getSeq());
+        }
+        return writtenBytes;
+    }
+
+    /**
+     * 等待日志同步到指定位置；没有同步在进行时由当前线程执行fsync，覆盖此前所有已写入的记录
+     */
+    private void awaitDurable(long position) throws IOException {
+        syncLock.lock();
+        try {
+            while (durableBytes < position) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                FileChannel target;
+                long targetBytes;
+                synchronized (this) {
+                    target = channel;
+                    targetBytes = writtenBytes;
+                }
+
+                syncLock.unlock();
+                IOException failure = null;
+                try {
+                    target.force(false);
+                } catch (ClosedChannelException e) {
+                    // 已切换到新段，旧段在切换时已同步
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    if (failure == null) {
+                        durableBytes = Math.max(durableBytes, targetBytes);
+                        syncs.increment();
+                    }
+                    synced.signalAll();
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 调用方已在this上同步
+     */
+    private Segment activeSegment() throws IOException {
+        Segment active = segments.peekLast();
+        long maxBytes = excelConfig.getStorage().getJournalSegmentMb() * 1024L * 1024L;
+        if (channel != null && active != null && active.bytes < maxBytes) {
+            return active;
+        }
+
+        if (channel != null) {
+            // 切换前同步旧段，等待中的线程据此视为已同步
+            channel.force(false);
+            channel.close();
+        }
+        Files.createDirectories(journalDir().toPath());
+        Path path = journalDir().toPath().resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSeq, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Segment segment = new Segment(path);
+        segments.addLast(segment);
+        log.debug("预写日志切换新段: {}", path.getFileName());
+        return segment;
+    }
+
+    /**
+     * 调用方已在this上同步
+     */
+    private boolean hasPending(String fileName) {
+        long checkpoint = checkpoints.getOrDefault(fileName, 0L);
+        for (Segment segment : segments) {
+            Long last = segment.lastSeqByFile.get(fileName);
+            if (last != null && last > checkpoint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按顺序删除最旧的已失效段：段中所有文件的记录都已被之后的CHECKPOINT覆盖。
+     * 只从最旧的段开始删，保证被删除段中的CHECKPOINT所覆盖的记录也都已删除
+     */
+    private synchronized void deleteObsoleteSegments() {
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            boolean active = segments.size() == 1 && channel != null;
+            if (active || !oldest.isObsolete(checkpoints)) {
+                return;
+            }
+            segments.pollFirst();
+            try {
+                Files.deleteIfExists(oldest.path);
+                log.debug("删除已失效的预写日志段: {}", oldest.path.getFileName());
+            } catch (IOException e) {
+                log.warn("删除预写日志段失败: {} - {}", oldest.path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 读取一个已有段，收集各文件最近一次CHECKPOINT之后的补丁
+     * 段末尾不完整的记录（写入时崩溃）忽略；段中间损坏的记录跳过并继续读取之后的记录
+     * 调用方已在this上同步
+     */
+    private Segment readSegment(Path path, Map<String, List<CellPatch>> pending) throws IOException {
+        Segment segment = new Segment(path);
+        segment.bytes = Files.size(path);
+        // 段以创建时的序号命名，即使没有一条完整记录，也不能再用这个序号新建段
+        String name = path.getFileName().toString();
+        try {
+            long firstSeq = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            nextSeq = Math.max(nextSeq, firstSeq + 1);
+        } catch (NumberFormatException e) {
+            log.warn("预写日志段名称无法识别: {}", name);
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            int corruptLine = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (corruptLine > 0) {
+                    log.error("预写日志记录损坏，已跳过: {} 第{}行", name, corruptLine);
+                    corruptLine = 0;
+                }
+                JournalRecord record;
+                try {
+                    record = objectMapper.readValue(line, JournalRecord.class);
+                } catch (IOException e) {
+                    corruptLine = lineNumber;
+                    continue;
+                }
+                nextSeq = Math.max(nextSeq, record.getSeq() + 1);
+                if (JournalRecord.CHECKPOINT.equals(record.getType())) {
+                    checkpoints.put(record.getFileName(), record.getSeq());
+                    pending.remove(record.getFileName());
+                } else {
+                    segment.lastSeqByFile.put(record.getFileName(), record.getSeq());
+                    pending.computeIfAbsent(record.getFileName(), k -> new ArrayList<>()).add(record.getPatch());
+                }
+            }
+            if (corruptLine > 0) {
+                log.warn("预写日志段末尾记录不完整，忽略: {} 第{}行", name, corruptLine);
+            }
+        }
+        return segment;
+    }
+
+    private File journalDir() {
+        return new File(excelConfig.getStorage().getStorageDir(), JOURNAL_DIR);
+    }
+
+    /**
+     * 日志段
+     */
+    private static final class Segment {
+        private final Path path;
+        private long bytes;
+
+        /**
+         * 文件名 -> 段中该文件最后一条补丁的序号
+         */
+        private final Map<String, Long> lastSeqByFile = new HashMap<>();
+
+        private Segment(Path path) {
+            this.path = path;
+        }
+
+        private boolean isObsolete(Map<String, Long> checkpoints) {
+            for (Map.Entry<String, Long> entry : lastSeqByFile.entrySet()) {
+                if (checkpoints.getOrDefault(entry.getKey(), 0L) < entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
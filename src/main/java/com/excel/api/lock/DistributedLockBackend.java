@@ -0,0 +1,55 @@
+package com.excel.api.lock;
+
+import java.util.function.Consumer;
+
+/**
+ * 混合锁管理器使用的集群级锁操作
+ * 共享租约属于整个节点而非某个线程：由节点内第一个读者获取，最后离开的读者（可能是另一个线程）释放；
+ * 独占锁属于获取它的线程
+ */
+public interface DistributedLockBackend {
+    
+    /**
+     * 为本节点获取文件的共享（读）租约
+     * @param timeout 超时时间（毫秒）
+     * @return 是否成功获取
+     */
+    boolean tryAcquireShared(String fileName, long timeout) throws InterruptedException;
+    
+    /**
+     * 释放本节点的共享租约
+     */
+    void releaseShared(String fileName);
+    
+    /**
+     * 为当前线程获取文件的独占（写）锁
+     * @param timeout 超时时间（毫秒）
+     * @return 是否成功获取
+     */
+    boolean tryAcquireExclusive(String fileName, long timeout) throws InterruptedException;
+    
+    /**
+     * 释放当前线程持有的独占锁
+     */
+    void releaseExclusive(String fileName);
+    
+    /**
+     * 文件的防护令牌计数器加一并返回新值，获取独占锁后调用
+     */
+    long nextFencingToken(String fileName);
+    
+    /**
+     * 文件的防护令牌计数器当前值
+     */
+    long currentFencingToken(String fileName);
+    
+    /**
+     * 广播写意图，通知持有闲置租约的节点尽快释放
+     */
+    void publishWriteIntent(String fileName);
+    
+    /**
+     * 订阅其他节点（包括本节点）广播的写意图
+     */
+    void subscribeWriteIntents(Consumer<String> listener);
+}
@@ -1,5 +1,12 @@
 package com.excel.api.lock;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Excel文件锁管理器接口
  */
@@ -46,5 +53,74 @@ public interface ExcelLockManager {
      * @return 是否成功获取
      */
     boolean tryAcquireWriteLock(String fileName, long timeout);
+    
+    /**
+     * 同时获取多个文件的锁
+     * 按文件名顺序逐个获取，所有文件共用一个超时时间，任一文件未能获取时释放已获取的锁
+     * @param readFiles 加读锁的文件
+     * @param writeFiles 加写锁的文件，同时出现在读集合中的文件只加写锁
+     * @param timeout 超时时间（毫秒）
+     * @return 是否全部获取成功
+     */
+    default boolean tryAcquireLocks(Collection<String> readFiles, Collection<String> writeFiles, long timeout) {
+        Set<String> writes = new HashSet<>(writeFiles);
+        return MultiFileLocks.acquire(this,
+                MultiFileLocks.order(readFiles, writes, Comparator.naturalOrder()), writes, timeout);
+    }
+    
+    /**
+     * 释放 {@link #tryAcquireLocks(Collection, Collection, long)} 获取的锁，参数需与获取时一致
+     */
+    default void releaseLocks(Collection<String> readFiles, Collection<String> writeFiles) {
+        Set<String> writes = new HashSet<>(writeFiles);
+        MultiFileLocks.release(this, MultiFileLocks.order(readFiles, writes, Comparator.naturalOrder()), writes);
+    }
+    
+    /**
+     * 开始一次乐观读，不加锁
+     * 读取结束后需用 {@link #validate(String, long)} 确认期间没有写者，校验失败时改用读锁重新读取
+     * @param fileName 文件名
+     * @return 戳，当前有写者或不支持乐观读时返回0
+     */
+    default long tryOptimisticRead(String fileName) {
+        return 0L;
+    }
+    
+    /**
+     * 校验乐观读期间没有写者获取过写锁
+     * @param fileName 文件名
+     * @param stamp {@link #tryOptimisticRead(String)} 返回的戳
+     * @return 读取结果是否有效
+     */
+    default boolean validate(String fileName, long stamp) {
+        return false;
+    }
+    
+    /**
+     * 获取当前线程持有的写锁防护令牌
+     * 分布式锁的租约可能在持有期间过期并被其他节点接管，保存前需用 {@link #validateFencingToken(String, long)} 确认
+     * @param fileName 文件名
+     * @return 令牌，未持有写锁或锁不会被接管（本地锁）时返回0
+     */
+    default long getFencingToken(String fileName) {
+        return 0L;
+    }
+    
+    /**
+     * 校验令牌仍然有效：获取之后没有其他持有者获取过该文件的写锁
+     * @param fileName 文件名
+     * @param token {@link #getFencingToken(String)} 返回的令牌
+     * @return 是否仍然有效
+     */
+    default boolean validateFencingToken(String fileName, long token) {
+        return true;
+    }
+    
+    /**
+     * 获取统计信息（等待、持有时间等）
+     */
+    default Map<String, Object> getStatistics() {
+        return Collections.emptyMap();
+    }
 }
 
@@ -0,0 +1,82 @@
+package com.excel.api.lock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * 写锁防护令牌
+ * 线程（非重入地）获取写锁时从集群计数器取一个递增的令牌，保存前比对计数器：租约过期后锁被其他持有者接管时，
+ * 计数器已经前进，旧持有者的令牌失效，不再覆盖文件
+ */
+final class FencingTokens {
+
+    private final ToLongFunction<String> issue;
+    private final ToLongFunction<String> current;
+
+    /**
+     * 当前线程持有的令牌：文件名 -> {令牌, 重入次数}
+     */
+    private final ThreadLocal<Map<String, long[]>> held = ThreadLocal.withInitial(HashMap::new);
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param issue 计数器加一并返回新值
+     * @param current 读取计数器当前值
+     */
+    FencingTokens(ToLongFunction<String> issue, ToLongFunction<String> current) {
+        this.issue = issue;
+        this.current = current;
+    }
+
+    /**
+     * 当前线程已获取写锁
+     */
+    void acquired(String fileName) {
+        long[] entry = held.get().get(fileName);
+        if (entry != null) {
+            entry[1]++;
+            return;
+        }
+        held.get().put(fileName, new long[]{issue.applyAsLong(fileName), 1});
+        issued.increment();
+    }
+
+    /**
+     * 当前线程即将释放写锁
+     */
+    void released(String fileName) {
+        Map<String, long[]> tokens = held.get();
+        long[] entry = tokens.get(fileName);
+        if (entry != null && --entry[1] == 0) {
+            tokens.remove(fileName);
+        }
+    }
+
+    /**
+     * @return 当前线程持有的令牌，未持有写锁时返回0
+     */
+    long token(String fileName) {
+        long[] entry = held.get().get(fileName);
+        return entry != null ? entry[0] : 0L;
+    }
+
+    boolean validate(String fileName, long token) {
+        if (current.applyAsLong(fileName) == token) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    long getIssued() {
+        return issued.sum();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+}
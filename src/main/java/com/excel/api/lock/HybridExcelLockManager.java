@@ -0,0 +1,371 @@
+package com.excel.api.lock;
+
+import com.excel.api.config.ExcelConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 混合Excel文件锁管理器（集群模式，excel.lock.type=hybrid）
+ * 节点内先经过本地读写锁，集群层面每个文件只由节点持有一个共享读租约：第一个本地读者获取，最后一个离开后
+ * 再保留 excel.lock.read-lease-linger-ms 以合并紧接着的读取，读多写少时绝大多数读取不访问Redis。
+ * 写者先取本地写锁再取集群写锁，拿不到时广播写意图：其他节点立即释放闲置租约，仍有读者的租约不再接纳新读者，
+ * 最后一个读者离开后释放，写者不会被源源不断的读者饿死。写锁带防护令牌，保存前校验
+ */
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "excel.lock.type", havingValue = "hybrid")
+@ConditionalOnBean(DistributedLockBackend.class)
+public class HybridExcelLockManager implements ExcelLockManager {
+    
+    private final DistributedLockBackend backend;
+    private final ExcelConfig excelConfig;
+    private final LocalExcelLockManager local;
+    
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+    
+    private final FencingTokens fencing;
+    
+    private final LongAdder sharedAcquires = new LongAdder();
+    private final LongAdder sharedReleases = new LongAdder();
+    private final LongAdder leaseJoins = new LongAdder();
+    private final LongAdder intentsPublished = new LongAdder();
+    private final LongAdder intentsReceived = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    
+    public HybridExcelLockManager(DistributedLockBackend backend, ExcelConfig excelConfig) {
+        this.backend = backend;
+        this.excelConfig = excelConfig;
+        this.local = new LocalExcelLockManager(excelConfig);
+        this.fencing = new FencingTokens(backend::nextFencingToken, backend::currentFencingToken);
+        backend.subscribeWriteIntents(this::onWriteIntent);
+        log.info("使用混合锁管理器");
+    }
+    
+    /**
+     * 本节点对一个文件的共享租约，状态只在持有mutex时修改；移除后不再使用，需重新创建
+     */
+    private static final class Lease {
+        private final ReentrantLock mutex = new ReentrantLock();
+        private final Condition retired = mutex.newCondition();
+        private int readers;
+        private boolean held;
+        private boolean draining;
+        private boolean removed;
+        private long idleSince;
+    }
+    
+    @Override
+    public boolean acquireReadLock(String fileName) {
+        // 集群租约没有无限等待的操作，按等待时间重试
+        while (!tryAcquireReadLock(fileName, excelConfig.getLock().getWaitTime())) {
+            log.debug("继续等待读锁: {}", fileName);
+        }
+        return true;
+    }
+    
+    @Override
+    public void releaseReadLock(String fileName) {
+        try {
+            leaveLease(fileName);
+        } finally {
+            local.releaseReadLock(fileName);
+        }
+    }
+    
+    @Override
+    public boolean acquireWriteLock(String fileName) {
+        while (!tryAcquireWriteLock(fileName, excelConfig.getLock().getWaitTime())) {
+            log.debug("继续等待写锁: {}", fileName);
+        }
+        return true;
+    }
+    
+    @Override
+    public void releaseWriteLock(String fileName) {
+        try {
+            fencing.released(fileName);
+            backend.releaseExclusive(fileName);
+        } finally {
+            local.releaseWriteLock(fileName);
+        }
+    }
+    
+    @Override
+    public boolean tryAcquireReadLock(String fileName, long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (!local.tryAcquireReadLock(fileName, timeout)) {
+            return false;
+        }
+        
+        boolean joined = false;
+        try {
+            joined = joinLease(fileName, deadline);
+        } catch (InterruptedException e) {
+            log.error("获取读租约被中断: {}", fileName, e);
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!joined) {
+                local.releaseReadLock(fileName);
+            }
+        }
+        
+        if (!joined) {
+            timeouts.increment();
+            log.warn("获取读租约超时: {}", fileName);
+        }
+        return joined;
+    }
+    
+    @Override
+    public boolean tryAcquireWriteLock(String fileName, long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (!local.tryAcquireWriteLock(fileName, timeout)) {
+            return false;
+        }
+        
+        boolean acquired = false;
+        try {
+            // 本地读者已全部离开，闲置的租约会挡住自己的写锁
+            dropIdleLease(fileName);
+            acquired = backend.tryAcquireExclusive(fileName, 0);
+            if (!acquired) {
+                backend.publishWriteIntent(fileName);
+                intentsPublished.increment();
+                acquired = backend.tryAcquireExclusive(fileName, remainingMillis(deadline));
+            }
+            if (acquired) {
+                try {
+                    fencing.acquired(fileName);
+                } catch (RuntimeException e) {
+                    acquired = false;
+                    backend.releaseExclusive(fileName);
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("获取集群写锁被中断: {}", fileName, e);
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!acquired) {
+                local.releaseWriteLock(fileName);
+            }
+        }
+        
+        if (!acquired) {
+            timeouts.increment();
+            log.warn("获取集群写锁超时: {}", fileName);
+        }
+        return acquired;
+    }
+    
+    @Override
+    public boolean tryAcquireLocks(Collection<String> readFiles, Collection<String> writeFiles, long timeout) {
+        Set<String> writes = new HashSet<>(writeFiles);
+        return MultiFileLocks.acquire(this, local.lockOrder(readFiles, writes), writes, timeout);
+    }
+    
+    @Override
+    public void releaseLocks(Collection<String> readFiles, Collection<String> writeFiles) {
+        Set<String> writes = new HashSet<>(writeFiles);
+        MultiFileLocks.release(this, local.lockOrder(readFiles, writes), writes);
+    }
+    
+    /**
+     * 乐观读只跟踪本节点的写者，其他节点的修改由调用方比对文件时间戳和大小发现
+     */
+    @Override
+    public long tryOptimisticRead(String fileName) {
+        return local.tryOptimisticRead(fileName);
+    }
+    
+    @Override
+    public boolean validate(String fileName, long stamp) {
+        return local.validate(fileName, stamp);
+    }
+    
+    @Override
+    public long getFencingToken(String fileName) {
+        return fencing.token(fileName);
+    }
+    
+    @Override
+    public boolean validateFencingToken(String fileName, long token) {
+        return fencing.validate(fileName, token);
+    }
+    
+    /**
+     * 释放闲置超过保留时间的租约
+     */
+    @Scheduled(fixedDelayString = "${excel.lock.read-lease-linger-ms:200}")
+    public void releaseIdleLeases() {
+        long now = System.currentTimeMillis();
+        long linger = excelConfig.getLock().getReadLeaseLingerMs();
+        leases.forEach((fileName, lease) -> {
+            if (!lease.mutex.tryLock()) {
+                return;
+            }
+            try {
+                if (!lease.removed && lease.readers == 0 && now - lease.idleSince >= linger) {
+                    retire(fileName, lease);
+                }
+            } finally {
+                lease.mutex.unlock();
+            }
+        });
+    }
+    
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "hybrid");
+        stats.put("leases", leases.size());
+        stats.put("sharedAcquires", sharedAcquires.sum());
+        stats.put("sharedReleases", sharedReleases.sum());
+        stats.put("leaseJoins", leaseJoins.sum());
+        stats.put("intentsPublished", intentsPublished.sum());
+        stats.put("intentsReceived", intentsReceived.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("fencingTokensIssued", fencing.getIssued());
+        stats.put("fencingRejections", fencing.getRejected());
+        stats.put("local", local.getStatistics());
+        return stats;
+    }
+    
+    /**
+     * 加入本节点的租约，没有时向集群获取
+     */
+    private boolean joinLease(String fileName, long deadline) throws InterruptedException {
+        while (true) {
+            Lease lease = leases.computeIfAbsent(fileName, k -> new Lease());
+            if (!lease.mutex.tryLock(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+            try {
+                if (lease.removed) {
+                    continue;
+                }
+                if (lease.draining) {
+                    // 有节点等待写入，等当前租约释放后重新获取
+                    if (lease.retired.awaitNanos(deadline - System.nanoTime()) <= 0 && !lease.removed) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (lease.held) {
+                    lease.readers++;
+                    leaseJoins.increment();
+                    return true;
+                }
+                if (!backend.tryAcquireShared(fileName, remainingMillis(deadline))) {
+                    retire(fileName, lease);
+                    return false;
+                }
+                sharedAcquires.increment();
+                lease.held = true;
+                lease.readers++;
+                return true;
+            } finally {
+                lease.mutex.unlock();
+            }
+        }
+    }
+    
+    private void leaveLease(String fileName) {
+        Lease lease = leases.get(fileName);
+        if (lease == null) {
+            return;
+        }
+        lease.mutex.lock();
+        try {
+            if (lease.removed || --lease.readers > 0) {
+                return;
+            }
+            if (lease.draining || excelConfig.getLock().getReadLeaseLingerMs() <= 0) {
+                retire(fileName, lease);
+            } else {
+                lease.idleSince = System.currentTimeMillis();
+            }
+        } finally {
+            lease.mutex.unlock();
+        }
+    }
+    
+    /**
+     * 释放没有读者的租约
+     */
+    private void dropIdleLease(String fileName) {
+        Lease lease = leases.get(fileName);
+        if (lease == null) {
+            return;
+        }
+        lease.mutex.lock();
+        try {
+            if (!lease.removed && lease.readers == 0) {
+                retire(fileName, lease);
+            }
+        } finally {
+            lease.mutex.unlock();
+        }
+    }
+    
+    /**
+     * 收到写意图：闲置的租约立即释放，仍有读者的租约停止接纳新读者
+     */
+    private void onWriteIntent(String fileName) {
+        intentsReceived.increment();
+        Lease lease = leases.get(fileName);
+        if (lease == null) {
+            return;
+        }
+        lease.mutex.lock();
+        try {
+            if (lease.removed) {
+                return;
+            }
+            if (lease.readers == 0) {
+                retire(fileName, lease);
+            } else {
+                lease.draining = true;
+            }
+        } finally {
+            lease.mutex.unlock();
+        }
+    }
+    
+    /**
+     * 释放集群租约并移除，调用方需持有mutex
+     */
+    private void retire(String fileName, Lease lease) {
+        try {
+            if (lease.held) {
+                backend.releaseShared(fileName);
+                sharedReleases.increment();
+            }
+        } finally {
+            lease.held = false;
+            lease.removed = true;
+            leases.remove(fileName, lease);
+            lease.retired.signalAll();
+        }
+    }
+    
+    private static long remainingMillis(long deadline) {
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
@@ -1,89 +1,284 @@
 package com.excel.api.lock;
 
+import com.excel.api.config.ExcelConfig;
+import com.excel.api.metrics.LatencyHistogram;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * 本地Excel文件锁管理器（单机模式）
- * 使用ReadWriteLock实现读写锁，支持多读单写
+ * 使用ReadWriteLock实现读写锁，支持多读单写。锁表有两种组织方式：
+ * <ul>
+ *   <li>按文件（excel.lock.stripes=0）：每个文件一个锁，带引用计数，最后一个持有或等待者释放后从表中移除，
+ *   文件名不断变化时锁表不会无限增长</li>
+ *   <li>分段（excel.lock.stripes&gt;0）：固定数量的锁，文件名按哈希映射，不同文件可能共用一把锁</li>
+ * </ul>
+ * excel.lock.fair 控制是否公平锁；非公平模式在读多写少时吞吐更高。等待和持有时间记录在直方图中。
+ * 乐观读不加锁，只在读完后校验期间没有写者
  */
 @Slf4j
 @Component
 public class LocalExcelLockManager implements ExcelLockManager {
-    
-    private final ConcurrentHashMap<String, ReadWriteLock> lockMap = new ConcurrentHashMap<>();
-    
-    private ReadWriteLock getLock(String fileName) {
-        return lockMap.computeIfAbsent(fileName, k -> new ReentrantReadWriteLock(true));
+
+    private final boolean fair;
+
+    /**
+     * 分段锁，按文件模式下为null
+     */
+    private final ReentrantReadWriteLock[] stripes;
+
+    private final ConcurrentHashMap<String, LockEntry> lockMap = new ConcurrentHashMap<>();
+
+    private final OptimisticReadStamps stamps = new OptimisticReadStamps();
+
+    /**
+     * 当前线程持有的锁的获取时间，键为 R:/W: + 文件名，用于统计持有时间
+     */
+    private final ThreadLocal<Map<String, ArrayDeque<Long>>> acquiredAt = ThreadLocal.withInitial(HashMap::new);
+
+    private final LatencyHistogram readWait = new LatencyHistogram();
+    private final LatencyHistogram writeWait = new LatencyHistogram();
+    private final LatencyHistogram readHold = new LatencyHistogram();
+    private final LatencyHistogram writeHold = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+
+    public LocalExcelLockManager(ExcelConfig excelConfig) {
+        ExcelConfig.Lock lockConfig = excelConfig.getLock();
+        this.fair = Boolean.TRUE.equals(lockConfig.getFair());
+        int stripeCount = lockConfig.getStripes() != null ? lockConfig.getStripes() : 0;
+        if (stripeCount > 0) {
+            stripes = new ReentrantReadWriteLock[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new ReentrantReadWriteLock(fair);
+            }
+        } else {
+            stripes = null;
+        }
     }
-    
+
+    /**
+     * 单个文件的锁及引用计数（持有者和等待者），计数只在lockMap.compute中修改
+     */
+    private static final class LockEntry {
+        private final ReentrantReadWriteLock lock;
+        private int refs;
+
+        private LockEntry(boolean fair) {
+            this.lock = new ReentrantReadWriteLock(fair);
+        }
+    }
+
+    /**
+     * 获取文件的锁，按文件模式下增加引用计数，需与 {@link #unref(String)} 配对
+     */
+    private ReentrantReadWriteLock ref(String fileName) {
+        if (stripes != null) {
+            return stripes[stripeOf(fileName)];
+        }
+        return lockMap.compute(fileName, (k, entry) -> {
+            if (entry == null) {
+                entry = new LockEntry(fair);
+            }
+            entry.refs++;
+            return entry;
+        }).lock;
+    }
+
+    private void unref(String fileName) {
+        if (stripes == null) {
+            lockMap.computeIfPresent(fileName, (k, entry) -> --entry.refs == 0 ? null : entry);
+        }
+    }
+
+    /**
+     * 已持有锁时查找，不改变引用计数
+     */
+    private ReentrantReadWriteLock held(String fileName) {
+        if (stripes != null) {
+            return stripes[stripeOf(fileName)];
+        }
+        LockEntry entry = lockMap.get(fileName);
+        if (entry == null) {
+            throw new IllegalMonitorStateException("未持有文件锁: " + fileName);
+        }
+        return entry.lock;
+    }
+
+    private int stripeOf(String fileName) {
+        int hash = fileName.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+    }
+
     @Override
     public boolean acquireReadLock(String fileName) {
         log.debug("尝试获取读锁: {}", fileName);
-        getLock(fileName).readLock().lock();
+        long start = System.nanoTime();
+        ref(fileName).readLock().lock();
+        onAcquired("R:" + fileName, start, readWait);
         log.debug("成功获取读锁: {}", fileName);
         return true;
     }
-    
+
     @Override
     public void releaseReadLock(String fileName) {
         log.debug("释放读锁: {}", fileName);
-        getLock(fileName).readLock().unlock();
+        release(fileName, "R:" + fileName, held(fileName).readLock(), readHold);
     }
-    
+
     @Override
     public boolean acquireWriteLock(String fileName) {
         log.debug("尝试获取写锁: {}", fileName);
-        getLock(fileName).writeLock().lock();
+        long start = System.nanoTime();
+        ref(fileName).writeLock().lock();
+        stamps.writerEntered(fileName);
+        onAcquired("W:" + fileName, start, writeWait);
         log.debug("成功获取写锁: {}", fileName);
         return true;
     }
-    
+
     @Override
     public void releaseWriteLock(String fileName) {
         log.debug("释放写锁: {}", fileName);
-        getLock(fileName).writeLock().unlock();
+        ReentrantReadWriteLock.WriteLock writeLock = held(fileName).writeLock();
+        if (!writeLock.isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException("未持有文件写锁: " + fileName);
+        }
+        stamps.writerExited(fileName);
+        release(fileName, "W:" + fileName, writeLock, writeHold);
     }
-    
+
     @Override
     public boolean tryAcquireReadLock(String fileName, long timeout) {
         log.debug("尝试获取读锁（超时{}ms）: {}", timeout, fileName);
-        try {
-            boolean acquired = getLock(fileName).readLock().tryLock(timeout, TimeUnit.MILLISECONDS);
-            if (acquired) {
-                log.debug("成功获取读锁: {}", fileName);
-            } else {
-                log.warn("获取读锁超时: {}", fileName);
-            }
-            return acquired;
-        } catch (InterruptedException e) {
-            log.error("获取读锁被中断: {}", fileName, e);
-            Thread.currentThread().interrupt();
-            return false;
+        boolean acquired = tryAcquire(fileName, "R:" + fileName, timeout, true);
+        if (acquired) {
+            log.debug("成功获取读锁: {}", fileName);
+        } else {
+            log.warn("获取读锁超时: {}", fileName);
         }
+        return acquired;
     }
-    
+
     @Override
     public boolean tryAcquireWriteLock(String fileName, long timeout) {
         log.debug("尝试获取写锁（超时{}ms）: {}", timeout, fileName);
+        boolean acquired = tryAcquire(fileName, "W:" + fileName, timeout, false);
+        if (acquired) {
+            log.debug("成功获取写锁: {}", fileName);
+        } else {
+            log.warn("获取写锁超时: {}", fileName);
+        }
+        return acquired;
+    }
+
+    @Override
+    public boolean tryAcquireLocks(Collection<String> readFiles, Collection<String> writeFiles, long timeout) {
+        Set<String> writes = new HashSet<>(writeFiles);
+        return MultiFileLocks.acquire(this, lockOrder(readFiles, writes), writes, timeout);
+    }
+
+    @Override
+    public void releaseLocks(Collection<String> readFiles, Collection<String> writeFiles) {
+        Set<String> writes = new HashSet<>(writeFiles);
+        MultiFileLocks.release(this, lockOrder(readFiles, writes), writes);
+    }
+
+    /**
+     * 多文件加锁顺序
+     * 分段模式下不同文件可能共用一把锁，按段号排序，同一段内先加写锁（持有写锁时可再加读锁，反之会阻塞），
+     * 之后同一段的加锁都是重入，不会等待
+     */
+    List<String> lockOrder(Collection<String> readFiles, Set<String> writes) {
+        Comparator<String> order = Comparator.naturalOrder();
+        if (stripes != null) {
+            order = Comparator.<String>comparingInt(this::stripeOf)
+                    .thenComparing(fileName -> !writes.contains(fileName))
+                    .thenComparing(Comparator.naturalOrder());
+        }
+        return MultiFileLocks.order(readFiles, writes, order);
+    }
+
+    @Override
+    public long tryOptimisticRead(String fileName) {
+        return stamps.tryOptimisticRead(fileName);
+    }
+
+    @Override
+    public boolean validate(String fileName, long stamp) {
+        return stamps.validate(fileName, stamp);
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "local");
+        stats.put("fair", fair);
+        stats.put("stripes", stripes != null ? stripes.length : 0);
+        stats.put("entries", lockMap.size());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("readWait", readWait.snapshot());
+        stats.put("writeWait", writeWait.snapshot());
+        stats.put("readHold", readHold.snapshot());
+        stats.put("writeHold", writeHold.snapshot());
+        return stats;
+    }
+
+    private boolean tryAcquire(String fileName, String holdKey, long timeout, boolean read) {
+        long start = System.nanoTime();
+        ReentrantReadWriteLock rw = ref(fileName);
+        Lock lock = read ? rw.readLock() : rw.writeLock();
+        boolean acquired = false;
         try {
-            boolean acquired = getLock(fileName).writeLock().tryLock(timeout, TimeUnit.MILLISECONDS);
-            if (acquired) {
-                log.debug("成功获取写锁: {}", fileName);
-            } else {
-                log.warn("获取写锁超时: {}", fileName);
-            }
-            return acquired;
+            acquired = lock.tryLock(timeout, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
-            log.error("获取写锁被中断: {}", fileName, e);
+            log.error("获取{}锁被中断: {}", read ? "读" : "写", fileName, e);
             Thread.currentThread().interrupt();
-            return false;
         }
+
+        if (acquired) {
+            if (!read) {
+                stamps.writerEntered(fileName);
+            }
+            onAcquired(holdKey, start, read ? readWait : writeWait);
+        } else {
+            timeouts.increment();
+            unref(fileName);
+        }
+        return acquired;
     }
-}
 
+    private void onAcquired(String holdKey, long start, LatencyHistogram wait) {
+        long now = System.nanoTime();
+        wait.record(now - start);
+        acquiredAt.get().computeIfAbsent(holdKey, k -> new ArrayDeque<>()).push(now);
+    }
+
+    private void release(String fileName, String holdKey, Lock lock, LatencyHistogram hold) {
+        lock.unlock();
+        unref(fileName);
+
+        Map<String, ArrayDeque<Long>> held = acquiredAt.get();
+        ArrayDeque<Long> starts = held.get(holdKey);
+        if (starts != null) {
+            hold.record(System.nanoTime() - starts.pop());
+            if (starts.isEmpty()) {
+                held.remove(holdKey);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.excel.api.lock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多文件加锁的通用实现
+ * 按统一顺序逐个获取，所有线程的获取顺序一致，不会互相等待形成死锁；共用一个截止时间，
+ * 任一文件超时则按相反顺序释放已获取的锁。同一文件同时出现在读、写集合中时只加写锁
+ */
+final class MultiFileLocks {
+
+    private MultiFileLocks() {
+    }
+
+    /**
+     * 合并读写集合并排序
+     */
+    static List<String> order(Collection<String> readFiles, Collection<String> writeFiles, Comparator<String> order) {
+        Set<String> files = new LinkedHashSet<>(writeFiles);
+        files.addAll(readFiles);
+        List<String> ordered = new ArrayList<>(files);
+        ordered.sort(order);
+        return ordered;
+    }
+
+    static boolean acquire(ExcelLockManager lockManager, List<String> ordered, Set<String> writes, long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (int i = 0; i < ordered.size(); i++) {
+            String fileName = ordered.get(i);
+            long remaining = Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            boolean acquired = writes.contains(fileName)
+                    ? lockManager.tryAcquireWriteLock(fileName, remaining)
+                    : lockManager.tryAcquireReadLock(fileName, remaining);
+            if (!acquired) {
+                release(lockManager, ordered.subList(0, i), writes);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void release(ExcelLockManager lockManager, List<String> ordered, Set<String> writes) {
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            String fileName = ordered.get(i);
+            if (writes.contains(fileName)) {
+                lockManager.releaseWriteLock(fileName);
+            } else {
+                lockManager.releaseReadLock(fileName);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.excel.api.lock;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 乐观读戳（顺序锁）
+ * 固定数量的槽位按文件名哈希映射，每个槽位记录当前写者数和写入序号：写者获取写锁后进入、释放前退出，各使序号加一。
+ * 读者开始前取戳（有写者时失败），读完后校验期间没有写者进入过。槽位共用只会导致多余的校验失败，不会漏判
+ */
+class OptimisticReadStamps {
+
+    private static final int SLOTS = 1024;
+
+    private final AtomicLongArray versions = new AtomicLongArray(SLOTS);
+    private final AtomicIntegerArray writers = new AtomicIntegerArray(SLOTS);
+
+    /**
+     * @return 戳，有写者持有锁时返回0
+     */
+    long tryOptimisticRead(String fileName) {
+        int slot = slotOf(fileName);
+        long version = versions.get(slot);
+        if (writers.get(slot) > 0) {
+            return 0L;
+        }
+        // 序号从0开始，加一保证有效戳非0
+        return version + 1;
+    }
+
+    boolean validate(String fileName, long stamp) {
+        int slot = slotOf(fileName);
+        return stamp != 0L && writers.get(slot) == 0 && versions.get(slot) + 1 == stamp;
+    }
+
+    /**
+     * 写者已获取写锁
+     */
+    void writerEntered(String fileName) {
+        int slot = slotOf(fileName);
+        writers.incrementAndGet(slot);
+        versions.incrementAndGet(slot);
+    }
+
+    /**
+     * 写者即将释放写锁
+     */
+    void writerExited(String fileName) {
+        int slot = slotOf(fileName);
+        versions.incrementAndGet(slot);
+        writers.decrementAndGet(slot);
+    }
+
+    private static int slotOf(String fileName) {
+        int hash = fileName.hashCode();
+        return (hash ^ (hash >>> 16)) & (SLOTS - 1);
+    }
+}
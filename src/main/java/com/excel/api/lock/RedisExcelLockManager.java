@@ -2,6 +2,9 @@ package com.excel.api.lock;
 
 import com.excel.api.config.ExcelConfig;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.RedissonMultiLock;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RLock;
 import org.redisson.api.RReadWriteLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
@@ -9,11 +12,20 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Redis分布式Excel文件锁管理器（集群模式）
- * 使用Redisson实现分布式读写锁
+ * 使用Redisson实现分布式读写锁。
+ * 默认不设固定租期，由看门狗在持有期间续期；写锁带防护令牌，保存前校验租约没有失效被接管。
+ * 乐观读只跟踪本节点的写者，其他节点的修改由调用方比对文件时间戳和大小发现
  */
 @Slf4j
 @Component
@@ -25,9 +37,16 @@ public class RedisExcelLockManager implements ExcelLockManager {
     private final RedissonClient redissonClient;
     private final ExcelConfig excelConfig;
     
+    private final OptimisticReadStamps stamps = new OptimisticReadStamps();
+    
+    private final FencingTokens fencing;
+    
     public RedisExcelLockManager(RedissonClient redissonClient, ExcelConfig excelConfig) {
         this.redissonClient = redissonClient;
         this.excelConfig = excelConfig;
+        this.fencing = new FencingTokens(
+                fileName -> getFence(fileName).incrementAndGet(),
+                fileName -> getFence(fileName).get());
         log.info("使用Redis分布式锁管理器");
     }
     
@@ -35,6 +54,30 @@ public class RedisExcelLockManager implements ExcelLockManager {
         return redissonClient.getReadWriteLock("excel:lock:" + fileName);
     }
     
+    private RAtomicLong getFence(String fileName) {
+        return redissonClient.getAtomicLong("excel:fence:" + fileName);
+    }
+    
+    /**
+     * 锁的租期，-1表示由看门狗续期
+     */
+    private long leaseTime() {
+        return Boolean.FALSE.equals(excelConfig.getLock().getWatchdog()) ? excelConfig.getLock().getTimeout() : -1L;
+    }
+    
+    /**
+     * 写锁获取成功后登记，取令牌失败时释放写锁
+     */
+    private void onWriteAcquired(String fileName) {
+        try {
+            fencing.acquired(fileName);
+        } catch (RuntimeException e) {
+            getLock(fileName).writeLock().unlock();
+            throw e;
+        }
+        stamps.writerEntered(fileName);
+    }
+    
     @Override
     public boolean acquireReadLock(String fileName) {
         log.debug("尝试获取Redis读锁: {}", fileName);
@@ -57,6 +100,7 @@ public class RedisExcelLockManager implements ExcelLockManager {
     public boolean acquireWriteLock(String fileName) {
         log.debug("尝试获取Redis写锁: {}", fileName);
         getLock(fileName).writeLock().lock();
+        onWriteAcquired(fileName);
         log.debug("成功获取Redis写锁: {}", fileName);
         return true;
     }
@@ -65,6 +109,10 @@ public class RedisExcelLockManager implements ExcelLockManager {
     public void releaseWriteLock(String fileName) {
         log.debug("释放Redis写锁: {}", fileName);
         try {
+            if (getLock(fileName).writeLock().isHeldByCurrentThread()) {
+                stamps.writerExited(fileName);
+            }
+            fencing.released(fileName);
             getLock(fileName).writeLock().unlock();
         } catch (Exception e) {
             log.error("释放Redis写锁失败: {}", fileName, e);
@@ -76,7 +124,7 @@ public class RedisExcelLockManager implements ExcelLockManager {
         log.debug("尝试获取Redis读锁（超时{}ms）: {}", timeout, fileName);
         try {
             boolean acquired = getLock(fileName).readLock()
-                    .tryLock(timeout, excelConfig.getLock().getTimeout(), TimeUnit.MILLISECONDS);
+                    .tryLock(timeout, leaseTime(), TimeUnit.MILLISECONDS);
             if (acquired) {
                 log.debug("成功获取Redis读锁: {}", fileName);
             } else {
@@ -95,8 +143,9 @@ public class RedisExcelLockManager implements ExcelLockManager {
         log.debug("尝试获取Redis写锁（超时{}ms）: {}", timeout, fileName);
         try {
             boolean acquired = getLock(fileName).writeLock()
-                    .tryLock(timeout, excelConfig.getLock().getTimeout(), TimeUnit.MILLISECONDS);
+                    .tryLock(timeout, leaseTime(), TimeUnit.MILLISECONDS);
             if (acquired) {
+                onWriteAcquired(fileName);
                 log.debug("成功获取Redis写锁: {}", fileName);
             } else {
                 log.warn("获取Redis写锁超时: {}", fileName);
@@ -108,5 +157,106 @@ public class RedisExcelLockManager implements ExcelLockManager {
             return false;
         }
     }
+    
+    /**
+     * 多文件加锁使用RedissonMultiLock，全部获取成功或全部不获取
+     */
+    @Override
+    public boolean tryAcquireLocks(Collection<String> readFiles, Collection<String> writeFiles, long timeout) {
+        Set<String> writes = new HashSet<>(writeFiles);
+        List<String> ordered = MultiFileLocks.order(readFiles, writes, Comparator.naturalOrder());
+        if (ordered.isEmpty()) {
+            return true;
+        }
+        log.debug("尝试获取Redis多文件锁（超时{}ms）: 读={}, 写={}", timeout, readFiles, writeFiles);
+        try {
+            boolean acquired = multiLock(ordered, writes)
+                    .tryLock(timeout, leaseTime(), TimeUnit.MILLISECONDS);
+            if (acquired) {
+                try {
+                    writes.forEach(fencing::acquired);
+                } catch (RuntimeException e) {
+                    writes.forEach(fencing::released);
+                    multiLock(ordered, writes).unlock();
+                    throw e;
+                }
+                writes.forEach(stamps::writerEntered);
+                log.debug("成功获取Redis多文件锁: {}", ordered);
+            } else {
+                log.warn("获取Redis多文件锁超时: {}", ordered);
+            }
+            return acquired;
+        } catch (InterruptedException e) {
+            log.error("获取Redis多文件锁被中断: {}", ordered, e);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    @Override
+    public void releaseLocks(Collection<String> readFiles, Collection<String> writeFiles) {
+        Set<String> writes = new HashSet<>(writeFiles);
+        List<String> ordered = MultiFileLocks.order(readFiles, writes, Comparator.naturalOrder());
+        if (ordered.isEmpty()) {
+            return;
+        }
+        log.debug("释放Redis多文件锁: {}", ordered);
+        try {
+            for (String fileName : writes) {
+                if (getLock(fileName).writeLock().isHeldByCurrentThread()) {
+                    stamps.writerExited(fileName);
+                }
+                fencing.released(fileName);
+            }
+            multiLock(ordered, writes).unlock();
+        } catch (Exception e) {
+            log.error("释放Redis多文件锁失败: {}", ordered, e);
+        }
+    }
+    
+    private RedissonMultiLock multiLock(List<String> ordered, Set<String> writes) {
+        RLock[] locks = new RLock[ordered.size()];
+        for (int i = 0; i < locks.length; i++) {
+            RReadWriteLock lock = getLock(ordered.get(i));
+            locks[i] = writes.contains(ordered.get(i)) ? lock.writeLock() : lock.readLock();
+        }
+        return new RedissonMultiLock(locks);
+    }
+    
+    @Override
+    public long tryOptimisticRead(String fileName) {
+        return stamps.tryOptimisticRead(fileName);
+    }
+    
+    @Override
+    public boolean validate(String fileName, long stamp) {
+        return stamps.validate(fileName, stamp);
+    }
+    
+    @Override
+    public long getFencingToken(String fileName) {
+        return fencing.token(fileName);
+    }
+    
+    /**
+     * 写锁仍由当前线程持有，且期间没有其他持有者取过令牌
+     */
+    @Override
+    public boolean validateFencingToken(String fileName, long token) {
+        if (!getLock(fileName).writeLock().isHeldByCurrentThread()) {
+            log.warn("Redis写锁已失效: {}", fileName);
+            return false;
+        }
+        return fencing.validate(fileName, token);
+    }
+    
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "redis");
+        stats.put("watchdog", leaseTime() < 0);
+        stats.put("fencingTokensIssued", fencing.getIssued());
+        stats.put("fencingRejections", fencing.getRejected());
+        return stats;
+    }
 }
-
@@ -0,0 +1,104 @@
+package com.excel.api.lock;
+
+import com.excel.api.config.ExcelConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RReadWriteLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 基于Redisson的集群级锁操作
+ * 节点的共享租约用固定的持有者编号代替线程ID获取，不设过期时间，由Redisson看门狗续期，节点宕机后自动过期；
+ * 独占锁的租期与 {@link RedisExcelLockManager} 相同。写意图通过Redis发布订阅广播
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "excel.lock.type", havingValue = "hybrid")
+@ConditionalOnBean(RedissonClient.class)
+public class RedisLockBackend implements DistributedLockBackend {
+    
+    private static final String WRITE_INTENT_TOPIC = "excel:lock:write-intent";
+    
+    /**
+     * 节点共享租约的持有者编号，Redisson以客户端ID加该编号区分持有者，不会与其他节点冲突
+     */
+    private static final long NODE_LEASE_OWNER = -1L;
+    
+    private final RedissonClient redissonClient;
+    private final ExcelConfig excelConfig;
+    
+    public RedisLockBackend(RedissonClient redissonClient, ExcelConfig excelConfig) {
+        this.redissonClient = redissonClient;
+        this.excelConfig = excelConfig;
+    }
+    
+    private RReadWriteLock getLock(String fileName) {
+        return redissonClient.getReadWriteLock("excel:lock:" + fileName);
+    }
+    
+    @Override
+    public boolean tryAcquireShared(String fileName, long timeout) throws InterruptedException {
+        try {
+            return getLock(fileName).readLock()
+                    .tryLockAsync(timeout, -1, TimeUnit.MILLISECONDS, NODE_LEASE_OWNER).get();
+        } catch (ExecutionException e) {
+            log.error("获取Redis读租约失败: {}", fileName, e.getCause());
+            return false;
+        }
+    }
+    
+    @Override
+    public void releaseShared(String fileName) {
+        try {
+            getLock(fileName).readLock().unlockAsync(NODE_LEASE_OWNER).get();
+        } catch (InterruptedException e) {
+            log.error("释放Redis读租约被中断: {}", fileName, e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("释放Redis读租约失败: {}", fileName, e.getCause());
+        }
+    }
+    
+    @Override
+    public boolean tryAcquireExclusive(String fileName, long timeout) throws InterruptedException {
+        long leaseTime = Boolean.FALSE.equals(excelConfig.getLock().getWatchdog())
+                ? excelConfig.getLock().getTimeout() : -1L;
+        return getLock(fileName).writeLock().tryLock(timeout, leaseTime, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public void releaseExclusive(String fileName) {
+        try {
+            getLock(fileName).writeLock().unlock();
+        } catch (Exception e) {
+            log.error("释放Redis写锁失败: {}", fileName, e);
+        }
+    }
+    
+    @Override
+    public long nextFencingToken(String fileName) {
+        return redissonClient.getAtomicLong("excel:fence:" + fileName).incrementAndGet();
+    }
+    
+    @Override
+    public long currentFencingToken(String fileName) {
+        return redissonClient.getAtomicLong("excel:fence:" + fileName).get();
+    }
+    
+    @Override
+    public void publishWriteIntent(String fileName) {
+        redissonClient.getTopic(WRITE_INTENT_TOPIC).publish(fileName);
+    }
+    
+    @Override
+    public void subscribeWriteIntents(Consumer<String> listener) {
+        redissonClient.getTopic(WRITE_INTENT_TOPIC)
+                .addListener(String.class, (channel, fileName) -> listener.accept(fileName));
+    }
+}
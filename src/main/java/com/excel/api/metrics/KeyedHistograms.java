@@ -0,0 +1,49 @@
+package com.excel.api.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按键（接口、文件、Token等）分开的耗时直方图
+ * 键的数量有上限，超出后新出现的键都计入 {@link #OTHER}，避免文件名等不断变化时无限增长；
+ * 已有键的记录只做一次查表，不分配对象
+ */
+class KeyedHistograms {
+
+    static final String OTHER = "other";
+
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final LatencyHistogram other = new LatencyHistogram();
+    private final int maxKeys;
+
+    KeyedHistograms(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    void record(String key, long nanos) {
+        histogramOf(key).record(nanos);
+    }
+
+    private LatencyHistogram histogramOf(String key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (histograms.size() >= maxKeys) {
+            return other;
+        }
+        return histograms.computeIfAbsent(key, k -> new LatencyHistogram());
+    }
+
+    /**
+     * 按键排序的直方图，有超出上限的记录时包含 {@link #OTHER}
+     */
+    Map<String, LatencyHistogram> entries() {
+        Map<String, LatencyHistogram> entries = new TreeMap<>(histograms);
+        if (other.getCount() > 0) {
+            entries.put(OTHER, other);
+        }
+        return entries;
+    }
+}
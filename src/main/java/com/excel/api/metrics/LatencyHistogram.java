@@ -0,0 +1,121 @@
+package com.excel.api.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图
+ * 桶上界按2的幂（微秒）划分，从1微秒到约35分钟，超出的计入最后一个桶；记录只做一次LongAdder累加，无锁。
+ * 分位数取所在桶的上界，误差不超过2倍
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次耗时
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[bucketOf(nanos)].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * 各桶的计数，下标i的桶上界为 {@link #upperBoundMicros(int)}
+     */
+    public long[] bucketCounts() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = counts[i].sum();
+        }
+        return result;
+    }
+
+    public static int bucketCount() {
+        return BUCKETS;
+    }
+
+    /**
+     * 桶的上界（微秒，含）
+     */
+    public static long upperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder adder : counts) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * 摘要：次数、平均、P50/P90/P99、最大值（毫秒）
+     */
+    public Map<String, Object> snapshot() {
+        long[] buckets = bucketCounts();
+        long count = 0;
+        for (long c : buckets) {
+            count += c;
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", count);
+        stats.put("avgMillis", count > 0 ? totalNanos.sum() / count / 1_000_000.0 : 0.0);
+        stats.put("p50Millis", percentileMillis(buckets, count, 0.50));
+        stats.put("p90Millis", percentileMillis(buckets, count, 0.90));
+        stats.put("p99Millis", percentileMillis(buckets, count, 0.99));
+        stats.put("maxMillis", maxNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    private static double percentileMillis(long[] buckets, long count, double percentile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return upperBoundMicros(i) / 1000.0;
+            }
+        }
+        return upperBoundMicros(buckets.length - 1) / 1000.0;
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = (nanos + 999) / 1000;
+        if (micros <= 1) {
+            return 0;
+        }
+        // 上界为2^i的最小i
+        int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+}
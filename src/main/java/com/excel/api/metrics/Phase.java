@@ -0,0 +1,42 @@
+package com.excel.api.metrics;
+
+/**
+ * 请求处理中分别计时的阶段
+ */
+public enum Phase {
+
+    /**
+     * 等待文件锁
+     */
+    LOCK_WAIT("lockWait"),
+
+    /**
+     * 解析xlsx文件
+     */
+    PARSE("parse"),
+
+    /**
+     * 公式计算
+     */
+    EVALUATION("evaluation"),
+
+    /**
+     * 工作簿写出为xlsx
+     */
+    SERIALIZATION("serialization"),
+
+    /**
+     * 记录历史版本
+     */
+    BACKUP("backup");
+
+    private final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
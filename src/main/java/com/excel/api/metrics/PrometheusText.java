@@ -0,0 +1,51 @@
+package com.excel.api.metrics;
+
+/**
+ * Prometheus文本格式（0.0.4）输出
+ */
+final class PrometheusText {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private PrometheusText() {
+    }
+
+    static void header(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+    }
+
+    /**
+     * 输出一个直方图序列：累计的各桶计数（上界为秒）、总和与次数
+     * @param labels 已格式化的标签，如 endpoint="/api/excel/read"
+     */
+    static void histogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        long[] buckets = histogram.bucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i];
+            // 最后一个桶包含超出上界的记录
+            String le = i < buckets.length - 1
+                    ? Double.toString(LatencyHistogram.upperBoundMicros(i) / 1_000_000.0) : "+Inf";
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ")
+                .append(histogram.getTotalNanos() / 1_000_000_000.0).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+    }
+
+    static String label(String name, String value) {
+        StringBuilder label = new StringBuilder(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> label.append("\\\\");
+                case '"' -> label.append("\\\"");
+                case '\n' -> label.append("\\n");
+                default -> label.append(c);
+            }
+        }
+        return label.append('"').toString();
+    }
+}
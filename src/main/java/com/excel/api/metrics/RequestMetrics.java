@@ -0,0 +1,171 @@
+package com.excel.api.metrics;
+
+import com.excel.api.config.ExcelConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 请求耗时统计
+ * 过滤器在请求开始时调用 {@link #begin()}，结束时调用 {@link #end}，按接口、文件、Token记录总耗时；
+ * 处理过程中 ExcelService 把锁等待、解析、计算、写出、版本记录的耗时累加到当前线程（{@link #addPhase}），
+ * 请求结束时按接口记录各阶段耗时，可以看出慢请求的时间花在哪里。
+ * 不在请求线程上的处理（后台延迟保存、批量试算的并行计算等）不计入阶段耗时。
+ * 上下文随线程复用，记录时不分配对象
+ */
+@Component
+public class RequestMetrics {
+
+    /**
+     * 未匹配到接口、没有Token
+     */
+    public static final String UNKNOWN = "-";
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final KeyedHistograms endpoints;
+    private final KeyedHistograms files;
+    private final KeyedHistograms tokens;
+
+    /**
+     * 各阶段按接口的耗时，下标为 {@link Phase#ordinal()}
+     */
+    private final KeyedHistograms[] phases = new KeyedHistograms[PHASES.length];
+
+    private final ThreadLocal<Context> current = ThreadLocal.withInitial(Context::new);
+
+    public RequestMetrics(ExcelConfig excelConfig) {
+        int maxKeys = excelConfig.getMetrics().getMaxKeys();
+        endpoints = new KeyedHistograms(maxKeys);
+        files = new KeyedHistograms(maxKeys);
+        tokens = new KeyedHistograms(maxKeys);
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new KeyedHistograms(maxKeys);
+        }
+    }
+
+    /**
+     * 当前线程上正在处理的请求
+     */
+    private static final class Context {
+        private boolean active;
+        private String fileName;
+        private final long[] phaseNanos = new long[PHASES.length];
+    }
+
+    /**
+     * 请求开始
+     */
+    public void begin() {
+        Context context = current.get();
+        context.active = true;
+        context.fileName = null;
+        Arrays.fill(context.phaseNanos, 0L);
+    }
+
+    /**
+     * 累加当前请求某个阶段的耗时，不在请求中时忽略
+     */
+    public void addPhase(Phase phase, long nanos) {
+        Context context = current.get();
+        if (context.active) {
+            context.phaseNanos[phase.ordinal()] += nanos;
+        }
+    }
+
+    /**
+     * 记录当前请求操作的文件，涉及多个文件时取第一个
+     */
+    public void setFileName(String fileName) {
+        Context context = current.get();
+        if (context.active && context.fileName == null) {
+            context.fileName = fileName;
+        }
+    }
+
+    /**
+     * 请求结束，记录总耗时和各阶段耗时
+     * @param endpoint 接口（匹配到的路径模式），为null时计入 {@link #UNKNOWN}
+     * @param fileName 处理过程中没有记录文件时使用的文件名（如路径中的文件名），可为null
+     * @param tokenName Token名称，为null时计入 {@link #UNKNOWN}
+     */
+    public void end(String endpoint, String fileName, String tokenName, long nanos) {
+        Context context = current.get();
+        String endpointKey = endpoint != null ? endpoint : UNKNOWN;
+        String fileKey = context.fileName != null ? context.fileName : fileName;
+
+        endpoints.record(endpointKey, nanos);
+        if (fileKey != null) {
+            files.record(fileKey, nanos);
+        }
+        tokens.record(tokenName != null ? tokenName : UNKNOWN, nanos);
+
+        if (context.active) {
+            for (int i = 0; i < PHASES.length; i++) {
+                if (context.phaseNanos[i] > 0) {
+                    phases[i].record(endpointKey, context.phaseNanos[i]);
+                }
+            }
+        }
+        context.active = false;
+        context.fileName = null;
+    }
+
+    /**
+     * 各接口、文件、Token的耗时摘要，以及各接口下每个阶段的耗时摘要
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("endpoints", snapshot(endpoints));
+        stats.put("files", snapshot(files));
+        stats.put("tokens", snapshot(tokens));
+
+        Map<String, Map<String, Object>> phaseStats = new TreeMap<>();
+        for (Phase phase : PHASES) {
+            phases[phase.ordinal()].entries().forEach((endpoint, histogram) ->
+                    phaseStats.computeIfAbsent(endpoint, k -> new LinkedHashMap<>())
+                            .put(phase.getLabel(), histogram.snapshot()));
+        }
+        stats.put("phases", phaseStats);
+        return stats;
+    }
+
+    /**
+     * Prometheus文本格式
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        writeKeyed(out, "excel_request_duration_seconds", "请求耗时（按接口）", "endpoint", endpoints);
+        writeKeyed(out, "excel_file_request_duration_seconds", "请求耗时（按文件）", "file", files);
+        writeKeyed(out, "excel_token_request_duration_seconds", "请求耗时（按Token）", "token", tokens);
+
+        PrometheusText.header(out, "excel_request_phase_duration_seconds", "单个请求中各阶段的耗时（按接口）");
+        for (Phase phase : PHASES) {
+            String phaseLabel = PrometheusText.label("phase", phase.getLabel());
+            phases[phase.ordinal()].entries().forEach((endpoint, histogram) ->
+                    PrometheusText.histogram(out, "excel_request_phase_duration_seconds",
+                            PrometheusText.label("endpoint", endpoint) + "," + phaseLabel, histogram));
+        }
+        return out.toString();
+    }
+
+    public static String prometheusContentType() {
+        return PrometheusText.CONTENT_TYPE;
+    }
+
+    private static void writeKeyed(StringBuilder out, String name, String help, String labelName,
+                                   KeyedHistograms histograms) {
+        PrometheusText.header(out, name, help);
+        histograms.entries().forEach((key, histogram) ->
+                PrometheusText.histogram(out, name, PrometheusText.label(labelName, key), histogram));
+    }
+
+    private static Map<String, Object> snapshot(KeyedHistograms histograms) {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        histograms.entries().forEach((key, histogram) -> snapshot.put(key, histogram.snapshot()));
+        return snapshot;
+    }
+}
@@ -0,0 +1,70 @@
+package com.excel.api.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量试算请求
+ * 同一文件的多组输入一次提交，共用一次加载和一次加锁
+ */
+@Data
+public class ExcelBatchCalculateRequest {
+    
+    /**
+     * Excel文件名（不含路径）
+     */
+    @NotBlank(message = "文件名不能为空")
+    private String fileName;
+    
+    /**
+     * Sheet名称
+     * 如果场景或单元格中单独指定了sheetName，则此字段作为默认值
+     */
+    private String sheetName;
+    
+    /**
+     * 是否读取公式（true读取公式，false读取计算结果）
+     */
+    private Boolean readFormula = false;
+    
+    /**
+     * 试算场景列表
+     */
+    @Valid
+    @NotEmpty(message = "试算场景不能为空")
+    private List<Scenario> scenarios;
+    
+    /**
+     * 试算场景
+     */
+    @Data
+    public static class Scenario {
+        /**
+         * 场景标识（可选），原样返回
+         */
+        private String id;
+        
+        /**
+         * Sheet名称（可选），覆盖外层的sheetName
+         */
+        private String sheetName;
+        
+        /**
+         * 临时输入的单元格
+         */
+        @Valid
+        private List<ExcelWriteRequest.CellData> inputs;
+        
+        /**
+         * 要返回计算结果的单元格
+         */
+        @Valid
+        @NotNull(message = "输出位置不能为空")
+        private List<ExcelReadRequest.CellPosition> outputs;
+    }
+}
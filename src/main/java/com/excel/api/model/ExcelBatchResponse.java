@@ -0,0 +1,47 @@
+package com.excel.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量试算响应
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExcelBatchResponse {
+    
+    /**
+     * 是否全部成功
+     */
+    private Boolean success;
+    
+    /**
+     * 消息
+     */
+    private String message;
+    
+    /**
+     * 各场景结果，顺序与请求一致
+     */
+    private List<ScenarioResult> results;
+    
+    /**
+     * 单个场景的结果
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ScenarioResult {
+        private String id;
+        private Boolean success;
+        private String message;
+        private List<ExcelResponse.CellResult> data;
+    }
+}
@@ -0,0 +1,39 @@
+package com.excel.api.model;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+/**
+ * 区域读取请求
+ */
+@Data
+public class ExcelRangeReadRequest {
+    
+    /**
+     * Excel文件名（不含路径）
+     */
+    @NotBlank(message = "文件名不能为空")
+    private String fileName;
+    
+    /**
+     * Sheet名称
+     * 区域中未带sheet前缀时使用
+     */
+    private String sheetName;
+    
+    /**
+     * 区域：A1:T1000、整列A:C、带sheet前缀的Sheet1!A1:B2，或工作簿级命名区域
+     */
+    @NotBlank(message = "区域不能为空")
+    private String range;
+    
+    /**
+     * 是否读取公式（true读取公式，false读取计算结果）
+     */
+    private Boolean readFormula = false;
+    
+    /**
+     * 是否使用流式读取（适用于大文件），公式返回文件中保存的计算结果
+     */
+    private Boolean streaming = false;
+}
@@ -0,0 +1,53 @@
+package com.excel.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 区域读取响应
+ * 数据按行排列为二维数组，空单元格为null
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExcelRangeResponse {
+    
+    /**
+     * 是否成功
+     */
+    private Boolean success;
+    
+    /**
+     * 消息
+     */
+    private String message;
+    
+    /**
+     * 实际读取的sheet
+     */
+    private String sheetName;
+    
+    /**
+     * 实际读取的区域（整列引用会截取到有数据的最后一行）
+     */
+    private String range;
+    
+    private Integer rowCount;
+    
+    private Integer columnCount;
+    
+    /**
+     * 每列的值类型：NUMERIC/STRING/BOOLEAN/DATE/FORMULA/ERROR，全空为BLANK，类型不一致为MIXED
+     */
+    private List<String> columnTypes;
+    
+    /**
+     * 按行排列的值
+     */
+    private List<Object[]> values;
+}
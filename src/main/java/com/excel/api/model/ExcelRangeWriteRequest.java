@@ -0,0 +1,65 @@
+package com.excel.api.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 区域写入请求
+ * 从左上角单元格开始连续写入，values（按行）和columns（按列）二选一
+ */
+@Data
+public class ExcelRangeWriteRequest {
+    
+    /**
+     * Excel文件名（不含路径）
+     */
+    @NotBlank(message = "文件名不能为空")
+    private String fileName;
+    
+    /**
+     * Sheet名称，不存在时自动创建
+     */
+    private String sheetName;
+    
+    /**
+     * 左上角单元格，可带sheet前缀（如Sheet1!B2）
+     */
+    private String anchor = "A1";
+    
+    /**
+     * 按行排列的值，类型按JSON值推断（数字、布尔值、字符串），null清空单元格
+     */
+    private List<List<Object>> values;
+    
+    /**
+     * 按列排列的值，每列声明一种类型
+     */
+    @Valid
+    private List<Column> columns;
+    
+    /**
+     * 是否立即保存到磁盘（仅在写后延迟保存模式下有意义）
+     */
+    private Boolean flush = false;
+    
+    /**
+     * 单列数据
+     */
+    @Data
+    public static class Column {
+        /**
+         * 值类型：STRING, NUMBER, BOOLEAN, FORMULA，整列共用
+         */
+        private String valueType = "STRING";
+        
+        /**
+         * 自上而下的值，null清空单元格；比其他列短时，末尾之后的单元格不变
+         */
+        @NotNull(message = "列数据不能为空")
+        private List<Object> values;
+    }
+}
@@ -35,6 +35,12 @@ public class ExcelReadRequest {
      */
     private Boolean readFormula = false;
     
+    /**
+     * 是否使用流式读取（适用于大文件）
+     * 不加载整个工作簿，只解析到请求的最大行；公式返回文件中保存的计算结果，不重新计算
+     */
+    private Boolean streaming = false;
+    
     /**
      * 单元格位置
      */
@@ -0,0 +1,73 @@
+package com.excel.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 历史版本响应（版本列表或两个版本的差异）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExcelVersionResponse {
+
+    /**
+     * 是否成功
+     */
+    private Boolean success;
+
+    /**
+     * 消息
+     */
+    private String message;
+
+    private String fileName;
+
+    /**
+     * 版本列表，按时间从旧到新
+     */
+    private List<VersionInfo> versions;
+
+    /**
+     * 两个版本间不同的单元格
+     */
+    private List<CellChange> changes;
+
+    /**
+     * 单个版本
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class VersionInfo {
+        private String versionId;
+
+        /**
+         * SNAPSHOT（完整文件）或PATCH（单元格补丁）
+         */
+        private String type;
+
+        private Long savedAt;
+        private Long size;
+    }
+
+    /**
+     * 单元格差异，值为null表示空白；公式以=开头
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CellChange {
+        private String sheetName;
+        private String cellAddress;
+        private Object from;
+        private Object to;
+    }
+}
@@ -30,6 +30,11 @@ public class ExcelWriteRequest {
     @NotNull(message = "写入数据不能为空")
     private List<CellData> cells;
     
+    /**
+     * 是否立即保存到磁盘（仅在写后延迟保存模式下有意义）
+     */
+    private Boolean flush = false;
+    
     /**
      * 单元格数据
      */
@@ -0,0 +1,52 @@
+package com.excel.api.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 请求统计汇总实体
+ * 每行是一分钟内某个路径、状态码、Token名称的请求数和耗时；同一分钟同一键可以有多行（分批汇总），查询时求和
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "request_stats", indexes = {
+    @Index(name = "idx_stats_bucket", columnList = "bucket_start")
+})
+public class RequestStat {
+    
+    @Id
+    @Column(length = 50)
+    private String id;
+    
+    /**
+     * 所在分钟的开始时间
+     */
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+    
+    @Column(length = 500)
+    private String path;
+    
+    @Column(name = "status_code")
+    private int statusCode;
+    
+    @Column(name = "token_name", length = 100)
+    private String tokenName;
+    
+    @Column(name = "request_count")
+    private long requestCount;
+    
+    @Column(name = "total_duration")
+    private long totalDuration;
+    
+    @Column(name = "max_duration")
+    private long maxDuration;
+}
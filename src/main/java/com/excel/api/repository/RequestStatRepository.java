@@ -0,0 +1,12 @@
+package com.excel.api.repository;
+
+import com.excel.api.model.RequestStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 请求统计汇总 Repository
+ */
+@Repository
+public interface RequestStatRepository extends JpaRepository<RequestStat, String> {
+}
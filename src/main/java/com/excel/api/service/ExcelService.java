@@ -1,26 +1,71 @@
 package com.excel.api.service;
 
+import com.excel.api.cache.CachedWorkbook;
+import com.excel.api.cache.FormulaDependencyGraph;
+import com.excel.api.cache.FormulaResultCache;
+import com.excel.api.cache.WorkbookCache;
+import com.excel.api.cache.WorkbookLease;
+import com.excel.api.cache.WorkbookPool;
 import com.excel.api.config.ExcelConfig;
 import com.excel.api.exception.ExcelOperationException;
+import com.excel.api.journal.WriteAheadJournal;
 import com.excel.api.lock.ExcelLockManager;
+import com.excel.api.metrics.Phase;
+import com.excel.api.metrics.RequestMetrics;
+import com.excel.api.model.ExcelBatchCalculateRequest;
+import com.excel.api.model.ExcelBatchResponse;
+import com.excel.api.model.ExcelRangeReadRequest;
+import com.excel.api.model.ExcelRangeResponse;
+import com.excel.api.model.ExcelRangeWriteRequest;
 import com.excel.api.model.ExcelReadRequest;
 import com.excel.api.model.ExcelResponse;
+import com.excel.api.model.ExcelVersionResponse;
 import com.excel.api.model.ExcelWriteRequest;
+import com.excel.api.stream.StreamingExcelReader;
+import com.excel.api.stream.StreamingExcelWriter;
+import com.excel.api.version.CellPatch;
+import com.excel.api.version.FileVersion;
+import com.excel.api.version.VersionStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaParsingWorkbook;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.eval.*;
+import org.apache.poi.ss.formula.eval.forked.ForkedEvaluator;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.AreaReference;
 import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
  * Excel操作核心服务
@@ -29,113 +74,1760 @@ import java.util.List;
 @Service
 public class ExcelService {
     
+    /**
+     * 保存时临时文件的后缀，启动时清理崩溃遗留的临时文件
+     */
+    public static final String SAVE_TEMP_SUFFIX = ".saving";
+    
     @Autowired
     private ExcelConfig excelConfig;
     
-    @Autowired
-    private ExcelLockManager lockManager;
+    @Autowired
+    private ExcelLockManager lockManager;
+    
+    @Autowired
+    private WorkbookCache workbookCache;
+    
+    @Autowired
+    private FormulaResultCache formulaResultCache;
+    
+    @Autowired
+    private WorkbookPool workbookPool;
+    
+    @Autowired
+    private StreamingExcelReader streamingReader;
+    
+    @Autowired
+    private StreamingExcelWriter streamingWriter;
+    
+    @Autowired
+    private VersionStore versionStore;
+    
+    @Autowired
+    private WriteAheadJournal journal;
+    
+    @Autowired
+    private RequestMetrics requestMetrics;
+    
+    /**
+     * 批量试算使用的并行计算池
+     */
+    private ForkJoinPool calculationPool;
+    
+    private final LongAdder optimisticHits = new LongAdder();
+    private final LongAdder optimisticFallbacks = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        int parallelism = excelConfig.getCalculation().getBatchParallelism();
+        calculationPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flushDirtyWorkbooks();
+        calculationPool.shutdown();
+    }
+    
+    /**
+     * 写入Excel数据
+     */
+    public void writeExcel(ExcelWriteRequest request) {
+        String fileName = request.getFileName();
+        boolean lockAcquired = false;
+        
+        try {
+            // 获取写锁
+            lockAcquired = tryAcquireWriteLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件写锁，请稍后重试: " + fileName);
+            }
+            
+            doWrite(request);
+            
+        } catch (IOException e) {
+            log.error("写入Excel失败: {}", fileName, e);
+            throw new ExcelOperationException("写入Excel失败: " + e.getMessage(), e);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseWriteLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 复制文件并在副本上写入（基于模板生成）
+     * 源文件加读锁、目标文件加写锁，两把锁按统一顺序一次获取，复制和写入之间其他请求看不到未填充的副本。
+     * 源文件有未保存的修改时从内存复制
+     * @param sourceFileName 源文件（模板）
+     * @param request 写入请求，fileName为目标文件
+     */
+    public void copyAndWrite(String sourceFileName, ExcelWriteRequest request) {
+        String targetFileName = request.getFileName();
+        List<String> readFiles = List.of(sourceFileName);
+        List<String> writeFiles = List.of(targetFileName);
+        boolean lockAcquired = false;
+        
+        try {
+            requestMetrics.setFileName(targetFileName);
+            long lockStart = System.nanoTime();
+            lockAcquired = lockManager.tryAcquireLocks(readFiles, writeFiles, excelConfig.getLock().getWaitTime());
+            requestMetrics.addPhase(Phase.LOCK_WAIT, System.nanoTime() - lockStart);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException(
+                        "无法获取文件锁，请稍后重试: " + sourceFileName + ", " + targetFileName);
+            }
+            
+            File sourceFile = getExcelFile(sourceFileName);
+            if (!sourceFile.exists()) {
+                throw new ExcelOperationException("Excel文件不存在: " + sourceFileName);
+            }
+            
+            if (!sourceFileName.equals(targetFileName)) {
+                File targetFile = getExcelFile(targetFileName);
+                File tempFile = File.createTempFile("." + targetFile.getName() + ".", SAVE_TEMP_SUFFIX,
+                        targetFile.getParentFile());
+                try {
+                    try (InputStream in = openSource(sourceFile, workbookCache.peek(sourceFileName));
+                         FileOutputStream fos = new FileOutputStream(tempFile)) {
+                        in.transferTo(fos);
+                        fos.getFD().sync();
+                    }
+                    publish(targetFileName, tempFile, targetFile, null);
+                } finally {
+                    Files.deleteIfExists(tempFile.toPath());
+                }
+                invalidateAfterWrite(targetFileName, null);
+                checkpointJournal(targetFileName);
+            }
+            
+            doWrite(request);
+            
+        } catch (IOException e) {
+            log.error("复制并写入Excel失败: {} -> {}", sourceFileName, targetFileName, e);
+            throw new ExcelOperationException("复制并写入Excel失败: " + e.getMessage(), e);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseLocks(readFiles, writeFiles);
+            }
+        }
+    }
+    
+    /**
+     * 执行写入，调用方需持有写锁
+     * @return 启用缓存且文件已存在时返回常驻的工作簿，否则返回null
+     */
+    private CachedWorkbook doWrite(ExcelWriteRequest request) throws IOException {
+        String fileName = request.getFileName();
+        CachedWorkbook cached = doWrite(fileName, workbook -> applyCells(workbook, request),
+                Boolean.TRUE.equals(request.getFlush()));
+        
+        // 统计涉及的sheet数量
+        long sheetCount = request.getCells().stream()
+                .map(cell -> cell.getSheetName() != null ? cell.getSheetName() : request.getSheetName())
+                .distinct()
+                .count();
+        
+        log.info("成功写入Excel: {}, 涉及Sheet数: {}, 单元格数: {}", 
+                fileName, sheetCount, request.getCells().size());
+        
+        return cached;
+    }
+    
+    /**
+     * 执行写入，调用方需持有写锁
+     * @param changes 将修改应用到工作簿上
+     * @param flush 写后延迟保存模式下是否仍立即保存
+     */
+    private CachedWorkbook doWrite(String fileName, Function<Workbook, AppliedChanges> changes,
+                                   boolean flush) throws IOException {
+        File excelFile = getExcelFile(fileName);
+        
+        CachedWorkbook cached = null;
+        if (workbookCache.isEnabled() && excelFile.exists()) {
+            cached = workbookCache.get(fileName, excelFile);
+            writeResident(fileName, changes, cached, excelFile, flush);
+        } else {
+            writeFresh(fileName, changes, excelFile);
+        }
+        return cached;
+    }
+    
+    /**
+     * 在常驻内存的工作簿上原地修改并保存
+     * 只通知公式计算器被修改的单元格，下游公式在下次读取时按需重算，无需重新解析文件；
+     * 写后延迟保存模式下只标记为未保存，由后台合并保存
+     */
+    private void writeResident(String fileName, Function<Workbook, AppliedChanges> apply,
+                               CachedWorkbook cached, File excelFile, boolean flush) throws IOException {
+        boolean deferred = !flush && isWriteBehind();
+        CellPatch deferredPatch = null;
+        
+        cached.lock();
+        boolean committed = false;
+        try {
+            FormulaDependencyGraph graph = cached.getDependencyGraph();
+            
+            AppliedChanges changes = apply.apply(cached.getWorkbook());
+            cached.notifyCellsChanged(changes.cells, changes.structureChanged, changes.formulaChanged);
+            Set<Long> affected = graph.dependentsOf(changes.cellKeys);
+            if (deferred) {
+                deferredPatch = CellPatch.of(changes.cells);
+                // 修改发布前先写入日志；写入失败时改为立即保存，保存也失败时修改不生效
+                if (journal.isEnabled()) {
+                    try {
+                        journal.append(fileName, deferredPatch);
+                    } catch (IOException e) {
+                        log.warn("写入预写日志失败，立即保存: {} - {}", fileName, e.getMessage());
+                        deferred = false;
+                    }
+                }
+            }
+            
+            if (!deferred) {
+                // 之前有延迟保存的修改时，补丁不完整，记录完整快照
+                persist(fileName, cached.getWorkbook(), excelFile, cached.isDirty() ? null : CellPatch.of(changes.cells));
+            }
+            
+            long version = workbookCache.commit(cached, excelFile);
+            formulaResultCache.onWrite(fileName, version, affected);
+            if (deferred) {
+                cached.markDirty(deferredPatch);
+            } else {
+                cached.markClean();
+            }
+            committed = true;
+            
+            log.debug("增量写入: {}, 版本: {}, 受影响单元格数: {}, 延迟保存: {}", 
+                    fileName, version, affected.size(), deferred);
+        } finally {
+            // 内存中的工作簿可能已被部分修改
+            if (!committed) {
+                discardFailedWrite(fileName, cached, excelFile);
+            }
+            cached.unlock();
+        }
+        
+        if (!deferred) {
+            checkpointJournal(fileName);
+        }
+        
+        if (deferred && cached.getDirtyCells() >= excelConfig.getStorage().getWriteBehindMaxDirtyCells()) {
+            try {
+                flushResident(cached, excelFile);
+            } catch (IOException e) {
+                // 修改仍在内存中，交给后台重试
+                log.warn("延迟保存失败，稍后重试: {} - {}", fileName, e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 原地修改失败后丢弃被部分修改的常驻工作簿，调用方需持有写锁和 cached.lock()
+     * 其中还有已确认但未保存的修改时不能直接丢弃：重新加载磁盘文件并重放这些修改，重建常驻条目
+     */
+    private void discardFailedWrite(String fileName, CachedWorkbook cached, File excelFile) {
+        if (!cached.isDirty()) {
+            invalidateAfterWrite(fileName, null);
+            return;
+        }
+        try {
+            XSSFWorkbook workbook;
+            try (FileInputStream fis = new FileInputStream(excelFile)) {
+                workbook = parseWorkbook(fis);
+            }
+            for (CellPatch patch : cached.getPendingPatches()) {
+                patch.applyTo(workbook);
+            }
+            workbookPool.remove(fileName);
+            CachedWorkbook rebuilt = workbookCache.replace(cached, workbook, excelFile);
+            formulaResultCache.onWrite(fileName, rebuilt.getVersion(), null);
+        } catch (IOException | RuntimeException e) {
+            // 无法重建时保留原条目：其中可能带有失败请求的部分修改，但不能丢掉已确认的修改
+            log.error("重建常驻工作簿失败，保留内存中的修改: {}", fileName, e);
+        }
+    }
+    
+    /**
+     * 将常驻工作簿中未保存的修改写入磁盘，调用方需持有写锁
+     * @return 是否有修改被保存
+     */
+    private boolean flushResident(CachedWorkbook cached, File excelFile) throws IOException {
+        cached.lock();
+        try {
+            if (!cached.isDirty()) {
+                return false;
+            }
+            int dirtyCells = cached.getDirtyCells();
+            long dirtyMillis = System.currentTimeMillis() - cached.getDirtySince();
+            
+            persist(cached.getFileName(), cached.getWorkbook(), excelFile, null);
+            workbookCache.persisted(cached, excelFile);
+            cached.markClean();
+            
+            log.debug("延迟保存完成: {}, 单元格数: {}, 延迟: {}ms", cached.getFileName(), dirtyCells, dirtyMillis);
+        } finally {
+            cached.unlock();
+        }
+        
+        checkpointJournal(cached.getFileName());
+        return true;
+    }
+    
+    /**
+     * 文件已保存或已被替换，预写日志中之前的记录不再重放，调用方需持有写锁
+     * 只能在保存成功后调用，保存失败或只是使缓存失效时不能写检查点
+     */
+    private void checkpointJournal(String fileName) {
+        try {
+            journal.checkpoint(fileName);
+        } catch (IOException e) {
+            // 重放补丁是幂等的，已保存的修改被再次应用不影响结果
+            log.warn("写入预写日志检查点失败: {} - {}", fileName, e.getMessage());
+        }
+    }
+    
+    /**
+     * 启动时从预写日志恢复：将未保存的补丁按顺序应用到文件并保存
+     */
+    public void recoverFromJournal(String fileName, List<CellPatch> patches) throws IOException {
+        boolean lockAcquired = false;
+        
+        try {
+            lockAcquired = tryAcquireWriteLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件写锁: " + fileName);
+            }
+            
+            File excelFile = getExcelFile(fileName);
+            Workbook workbook;
+            if (excelFile.exists()) {
+                try (FileInputStream fis = new FileInputStream(excelFile)) {
+                    workbook = parseWorkbook(fis);
+                }
+            } else {
+                workbook = new XSSFWorkbook();
+            }
+            
+            try {
+                for (CellPatch patch : patches) {
+                    patch.applyTo(workbook);
+                }
+                persist(fileName, workbook, excelFile, null);
+                checkpointJournal(fileName);
+            } finally {
+                workbook.close();
+                invalidateAfterWrite(fileName, null);
+            }
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseWriteLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 将文件在内存中未保存的修改写入磁盘（写后延迟保存模式）
+     * 直接读取磁盘文件的操作（下载、流式读取、模板复制）前调用
+     * @return 是否有修改被保存
+     */
+    public boolean flush(String fileName) {
+        CachedWorkbook cached = workbookCache.peek(fileName);
+        if (cached == null || !cached.isDirty()) {
+            return false;
+        }
+        
+        boolean lockAcquired = false;
+        try {
+            lockAcquired = tryAcquireWriteLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件写锁，请稍后重试: " + fileName);
+            }
+            
+            return flushLocked(fileName);
+            
+        } catch (IOException e) {
+            log.error("保存Excel失败: {}", fileName, e);
+            throw new ExcelOperationException("保存Excel失败: " + e.getMessage(), e);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseWriteLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 调用方已持有写锁
+     */
+    private boolean flushLocked(String fileName) throws IOException {
+        CachedWorkbook cached = workbookCache.peek(fileName);
+        return cached != null && flushResident(cached, getExcelFile(fileName));
+    }
+    
+    /**
+     * 后台合并保存所有未保存的修改
+     */
+    @Scheduled(fixedDelayString = "${excel.storage.write-behind-interval-ms:1000}")
+    public void flushDirtyWorkbooks() {
+        for (CachedWorkbook cached : workbookCache.dirtyEntries()) {
+            try {
+                flush(cached.getFileName());
+            } catch (Exception e) {
+                log.warn("延迟保存失败，稍后重试: {} - {}", cached.getFileName(), e.getMessage());
+            }
+        }
+    }
+    
+    private boolean isWriteBehind() {
+        return workbookCache.isEnabled() && Boolean.TRUE.equals(excelConfig.getStorage().getWriteBehind());
+    }
+    
+    /**
+     * 重新打开（或新建）工作簿写入并保存
+     */
+    private void writeFresh(String fileName, Function<Workbook, AppliedChanges> apply,
+                            File excelFile) throws IOException {
+        Workbook workbook = null;
+        Set<Long> changedCells = null;
+        
+        try {
+            // 打开或创建workbook
+            if (excelFile.exists()) {
+                try (FileInputStream fis = new FileInputStream(excelFile)) {
+                    workbook = parseWorkbook(fis);
+                }
+            } else {
+                workbook = new XSSFWorkbook();
+            }
+            
+            AppliedChanges changes = apply.apply(workbook);
+            
+            persist(fileName, workbook, excelFile, CellPatch.of(changes.cells));
+            changedCells = changes.cellKeys;
+            checkpointJournal(fileName);
+            
+        } finally {
+            if (workbook != null) {
+                workbook.close();
+            }
+            // 无论成功与否，磁盘文件都可能已变化
+            invalidateAfterWrite(fileName, changedCells);
+        }
+    }
+    
+    /**
+     * 将请求中的单元格写入工作簿
+     */
+    private AppliedChanges applyCells(Workbook workbook, ExcelWriteRequest request) {
+        // 先校验并转换全部单元格，任何一个不合法都不修改工作簿
+        FormulaParsingWorkbook parsing = formulaParsing(workbook);
+        List<CellWrite> writes = new ArrayList<>(request.getCells().size());
+        for (ExcelWriteRequest.CellData cellData : request.getCells()) {
+            // 确定使用哪个sheet（优先使用cell级别的sheetName）
+            String targetSheetName = cellData.getSheetName() != null 
+                    ? cellData.getSheetName() 
+                    : request.getSheetName();
+            
+            if (targetSheetName == null || targetSheetName.trim().isEmpty()) {
+                throw new IllegalArgumentException(
+                    "单元格 " + cellData.getCellAddress() + " 未指定sheet名称");
+            }
+            
+            // 解析单元格地址（如"B1"、"AZ27"）并转换值
+            ValueKind kind = ValueKind.of(cellData.getValueType());
+            try {
+                CellReference cellRef = new CellReference(cellData.getCellAddress());
+                Object value = convertValue(cellData.getValue(), kind, parsing, workbook.getSheetIndex(targetSheetName));
+                writes.add(new CellWrite(targetSheetName, cellRef.getRow(), cellRef.getCol(), kind, value));
+            } catch (RuntimeException e) {
+                throw new ExcelOperationException(
+                        "单元格 " + targetSheetName + "!" + cellData.getCellAddress() + " 无效: " + e.getMessage(), e);
+            }
+        }
+        
+        AppliedChanges changes = new AppliedChanges();
+        for (CellWrite write : writes) {
+            // 获取或创建sheet
+            Sheet sheet = workbook.getSheet(write.sheetName);
+            if (sheet == null) {
+                sheet = getOrCreateSheet(workbook, write.sheetName);
+                changes.structureChanged = true;
+            }
+            
+            Row row = sheet.getRow(write.row);
+            if (row == null) {
+                row = sheet.createRow(write.row);
+                changes.structureChanged = true;
+            }
+            
+            Cell cell = row.getCell(write.col);
+            if (cell == null) {
+                cell = row.createCell(write.col);
+            }
+            
+            setCellValue(cell, write.value, write.kind);
+            
+            changes.cells.add(cell);
+            changes.cellKeys.add(FormulaDependencyGraph.cellKey(workbook.getSheetIndex(sheet), write.row, write.col));
+            if (cell.getCellType() == CellType.FORMULA) {
+                changes.formulaChanged = true;
+            }
+        }
+        
+        return changes;
+    }
+    
+    /**
+     * 将区域数据写入工作簿
+     * 逐行只取一次Row、逐列只解析一次类型，不解析单元格地址
+     */
+    private AppliedChanges applyRange(Workbook workbook, ExcelRangeWriteRequest request) {
+        boolean byRow = request.getValues() != null;
+        if (byRow == (request.getColumns() != null)) {
+            throw new ExcelOperationException("values和columns必须且只能指定一个");
+        }
+        
+        CellReference anchor = new CellReference(request.getAnchor() != null ? request.getAnchor() : "A1");
+        String sheetName = anchor.getSheetName() != null ? anchor.getSheetName() : request.getSheetName();
+        if (sheetName == null || sheetName.trim().isEmpty()) {
+            throw new IllegalArgumentException("区域 " + request.getAnchor() + " 未指定sheet名称");
+        }
+        
+        // 每列的类型只解析一次；按行写入时类型由值推断
+        List<ExcelRangeWriteRequest.Column> columns = request.getColumns();
+        ValueKind[] kinds = null;
+        int rowCount;
+        if (byRow) {
+            rowCount = request.getValues().size();
+        } else {
+            kinds = new ValueKind[columns.size()];
+            rowCount = 0;
+            for (int c = 0; c < columns.size(); c++) {
+                kinds[c] = ValueKind.of(columns.get(c).getValueType());
+                rowCount = Math.max(rowCount, columns.get(c).getValues().size());
+            }
+        }
+        
+        // 先校验全部值，任何一个不合法都不修改工作簿
+        FormulaParsingWorkbook parsing = formulaParsing(workbook);
+        int existingSheetIdx = workbook.getSheetIndex(sheetName);
+        for (int r = 0; r < rowCount; r++) {
+            List<Object> rowValues = byRow ? request.getValues().get(r) : null;
+            int colCount = byRow ? (rowValues != null ? rowValues.size() : 0) : columns.size();
+            for (int c = 0; c < colCount; c++) {
+                Object value;
+                ValueKind kind;
+                if (byRow) {
+                    value = rowValues.get(c);
+                    kind = ValueKind.infer(value);
+                } else {
+                    List<Object> columnValues = columns.get(c).getValues();
+                    value = r < columnValues.size() ? columnValues.get(r) : null;
+                    kind = kinds[c];
+                }
+                try {
+                    convertValue(value, kind, parsing, existingSheetIdx);
+                } catch (RuntimeException e) {
+                    String address = new CellReference(sheetName, anchor.getRow() + r, anchor.getCol() + c, false, false)
+                            .formatAsString();
+                    throw new ExcelOperationException("单元格 " + address + " 无效: " + e.getMessage(), e);
+                }
+            }
+        }
+        
+        AppliedChanges changes = new AppliedChanges();
+        Sheet sheet = workbook.getSheet(sheetName);
+        if (sheet == null) {
+            sheet = getOrCreateSheet(workbook, sheetName);
+            changes.structureChanged = true;
+        }
+        int sheetIdx = workbook.getSheetIndex(sheet);
+        
+        for (int r = 0; r < rowCount; r++) {
+            int rowIdx = anchor.getRow() + r;
+            List<Object> rowValues = byRow ? request.getValues().get(r) : null;
+            int colCount = byRow ? (rowValues != null ? rowValues.size() : 0) : columns.size();
+            
+            Row row = null;
+            for (int c = 0; c < colCount; c++) {
+                Object value;
+                ValueKind kind;
+                if (byRow) {
+                    value = rowValues.get(c);
+                    kind = ValueKind.infer(value);
+                } else {
+                    List<Object> columnValues = columns.get(c).getValues();
+                    if (r >= columnValues.size()) {
+                        // 较短的列末尾之后的单元格保持不变
+                        continue;
+                    }
+                    value = columnValues.get(r);
+                    kind = kinds[c];
+                }
+                
+                // null与单个单元格写入一致，清空单元格；单元格不存在时无需清空
+                if (row == null) {
+                    row = sheet.getRow(rowIdx);
+                    if (row == null) {
+                        if (value == null) {
+                            continue;
+                        }
+                        row = sheet.createRow(rowIdx);
+                        changes.structureChanged = true;
+                    }
+                }
+                
+                int colIdx = anchor.getCol() + c;
+                Cell cell = row.getCell(colIdx);
+                if (cell == null) {
+                    if (value == null) {
+                        continue;
+                    }
+                    cell = row.createCell(colIdx);
+                }
+                
+                setCellValue(cell, value, kind);
+                
+                changes.cells.add(cell);
+                changes.cellKeys.add(FormulaDependencyGraph.cellKey(sheetIdx, rowIdx, colIdx));
+                if (value != null && kind == ValueKind.FORMULA) {
+                    changes.formulaChanged = true;
+                }
+            }
+        }
+        
+        return changes;
+    }
+    
+    /**
+     * 保存工作簿到磁盘并记录历史版本
+     * @param patch 本次修改的单元格（补丁模式下据此记录版本），未知时为null
+     */
+    private void persist(String fileName, Workbook workbook, File excelFile, CellPatch patch) throws IOException {
+        // 确保父目录存在
+        File parentDir = excelFile.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            log.info("父目录不存在，正在创建: {}", parentDir.getAbsolutePath());
+            if (!parentDir.mkdirs()) {
+                throw new IOException("无法创建父目录: " + parentDir.getAbsolutePath());
+            }
+        }
+        
+        // 先写入同目录下的临时文件并同步到磁盘，再原子替换原文件：
+        // 中途崩溃只会留下临时文件，已打开旧文件的读者（如下载）继续读取完整的旧版本
+        File tempFile = File.createTempFile("." + excelFile.getName() + ".", SAVE_TEMP_SUFFIX, excelFile.getParentFile());
+        try {
+            long start = System.nanoTime();
+            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                workbook.write(fos);
+                fos.getFD().sync();
+            }
+            requestMetrics.addPhase(Phase.SERIALIZATION, System.nanoTime() - start);
+            publish(fileName, tempFile, excelFile, patch);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+    
+    /**
+     * 以上传的内容替换文件，与保存一样先写临时文件再原子替换
+     * 持有写锁替换并使缓存失效，内存中未保存的修改随之丢弃
+     */
+    public void replaceFile(String fileName, File targetFile, MultipartFile upload) throws IOException {
+        boolean lockAcquired = false;
+        
+        try {
+            lockAcquired = tryAcquireWriteLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件写锁，请稍后重试: " + fileName);
+            }
+            
+            File tempFile = File.createTempFile("." + targetFile.getName() + ".", SAVE_TEMP_SUFFIX, targetFile.getParentFile());
+            try {
+                try (InputStream in = upload.getInputStream();
+                     FileOutputStream fos = new FileOutputStream(tempFile)) {
+                    in.transferTo(fos);
+                    fos.getFD().sync();
+                }
+                publish(fileName, tempFile, targetFile, null);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+            invalidateAfterWrite(fileName, null);
+            checkpointJournal(fileName);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseWriteLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 持有写锁删除文件并移除缓存
+     * @return 文件是否存在并已删除
+     */
+    public boolean deleteFile(String fileName) {
+        boolean lockAcquired = false;
+        
+        try {
+            lockAcquired = tryAcquireWriteLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件写锁，请稍后重试: " + fileName);
+            }
+            
+            File excelFile = getExcelFile(fileName);
+            if (!excelFile.exists() || !excelFile.delete()) {
+                return false;
+            }
+            workbookCache.remove(fileName);
+            formulaResultCache.remove(fileName);
+            workbookPool.remove(fileName);
+            checkpointJournal(fileName);
+            return true;
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseWriteLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 用已写好的临时文件原子替换目标文件，启用版本控制时记录新版本
+     * 替换后的文件不会再被原地修改，版本快照直接以硬链接保留
+     * <p>
+     * 分布式写锁的租约失效并被其他持有者接管后放弃保存，不覆盖对方写入的文件。
+     * 文件存储本身不支持按令牌的条件写入，校验与替换之间仍有很短的窗口：窗口内被接管时，
+     * 替换后再次校验会发现，此时文件可能已覆盖对方的写入，记录错误并报错，不当作保存成功
+     * @param fileName 请求中的文件名，即加锁时使用的名称
+     */
+    private void publish(String fileName, File tempFile, File targetFile, CellPatch patch) throws IOException {
+        long token = lockManager.getFencingToken(fileName);
+        
+        boolean versionControl = Boolean.TRUE.equals(excelConfig.getStorage().getVersionControl());
+        // 文件在上次记录版本后被绕过修改过（如模板复制），补丁无法衔接
+        CellPatch continuous = versionControl && patch != null && targetFile.exists()
+                && versionStore.isCurrent(targetFile) ? patch : null;
+        
+        // 紧挨着替换校验，缩小窗口
+        if (token != 0L && !lockManager.validateFencingToken(fileName, token)) {
+            throw new IOException("文件写锁已失效，放弃保存: " + fileName);
+        }
+        try {
+            Files.move(tempFile.toPath(), targetFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (token != 0L && !lockManager.validateFencingToken(fileName, token)) {
+            log.error("替换文件期间写锁被接管，可能覆盖了新持有者的写入: {}", fileName);
+            throw new IOException("替换文件期间写锁已失效: " + fileName);
+        }
+        
+        if (versionControl) {
+            long start = System.nanoTime();
+            versionStore.record(targetFile, continuous);
+            requestMetrics.addPhase(Phase.BACKUP, System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * 区域写入
+     */
+    public void writeRange(ExcelRangeWriteRequest request) {
+        String fileName = request.getFileName();
+        boolean lockAcquired = false;
+        
+        try {
+            lockAcquired = tryAcquireWriteLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件写锁，请稍后重试: " + fileName);
+            }
+            
+            int[] cellCount = new int[1];
+            doWrite(fileName, workbook -> {
+                AppliedChanges changes = applyRange(workbook, request);
+                cellCount[0] = changes.cells.size();
+                return changes;
+            }, Boolean.TRUE.equals(request.getFlush()));
+            
+            log.info("成功写入Excel区域: {}, 起始单元格: {}, 单元格数: {}", 
+                    fileName, request.getAnchor(), cellCount[0]);
+            
+        } catch (IOException e) {
+            log.error("写入Excel区域失败: {}", fileName, e);
+            throw new ExcelOperationException("写入Excel区域失败: " + e.getMessage(), e);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseWriteLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 流式批量写入行
+     * 行数据边读边写，不缓冲整个请求，也不在内存中保留整个工作簿
+     * @param append true追加到已有文件的sheet末尾，false新建文件（覆盖已有文件）
+     */
+    public ExcelResponse bulkWrite(String fileName, String sheetName, boolean append, InputStream rows) {
+        boolean lockAcquired = false;
+        
+        try {
+            lockAcquired = tryAcquireWriteLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件写锁，请稍后重试: " + fileName);
+            }
+            
+            // 追加时从磁盘加载已有内容，先保存内存中的修改
+            flushLocked(fileName);
+            
+            File excelFile = getExcelFile(fileName);
+            int rowCount;
+            
+            SXSSFWorkbook workbook = streamingWriter.open(append && excelFile.exists() ? excelFile : null);
+            try {
+                rowCount = streamingWriter.appendRows(workbook, sheetName, rows);
+                persist(fileName, workbook, excelFile, null);
+                checkpointJournal(fileName);
+            } finally {
+                workbook.dispose();
+                workbook.close();
+                invalidateAfterWrite(fileName, null);
+            }
+            
+            log.info("成功流式写入Excel: {}, Sheet: {}, 行数: {}", fileName, sheetName, rowCount);
+            
+            return ExcelResponse.builder()
+                    .success(true)
+                    .message("写入成功，行数: " + rowCount)
+                    .build();
+            
+        } catch (IOException e) {
+            log.error("流式写入Excel失败: {}", fileName, e);
+            throw new ExcelOperationException("流式写入Excel失败: " + e.getMessage(), e);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseWriteLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 读取Excel数据
+     */
+    public ExcelResponse readExcel(ExcelReadRequest request) {
+        String fileName = request.getFileName();
+        boolean lockAcquired = false;
+        
+        if (Boolean.TRUE.equals(request.getStreaming())) {
+            // 流式读取直接解析磁盘文件
+            flush(fileName);
+        }
+        
+        try {
+            if (!Boolean.TRUE.equals(request.getStreaming())) {
+                ExcelResponse response = readOptimistic(fileName, cached -> readResident(request, cached));
+                if (response != null) {
+                    return response;
+                }
+            }
+            
+            // 获取读锁
+            lockAcquired = tryAcquireReadLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件读锁，请稍后重试: " + fileName);
+            }
+            
+            return doRead(request);
+            
+        } catch (IOException e) {
+            log.error("读取Excel失败: {}", fileName, e);
+            throw new ExcelOperationException("读取Excel失败: " + e.getMessage(), e);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseReadLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 执行读取，调用方需持有读锁或写锁
+     */
+    private ExcelResponse doRead(ExcelReadRequest request) throws IOException {
+        String fileName = request.getFileName();
+        File excelFile = getExcelFile(fileName);
+        if (!excelFile.exists()) {
+            throw new ExcelOperationException("Excel文件不存在: " + fileName);
+        }
+        
+        if (Boolean.TRUE.equals(request.getStreaming())) {
+            return readStreaming(request, excelFile);
+        }
+        
+        if (workbookCache.isEnabled()) {
+            return readResident(request, workbookCache.get(fileName, excelFile));
+        }
+        
+        try (FileInputStream fis = new FileInputStream(excelFile);
+             Workbook workbook = parseWorkbook(fis)) {
+            
+            // 创建公式计算器
+            FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+            
+            return readCells(workbook, evaluator, request, null);
+        }
+    }
+    
+    /**
+     * 不加锁读取常驻工作簿
+     * 只在工作簿已缓存且与磁盘文件一致时尝试，读完后校验期间没有写者，否则丢弃结果
+     * @return 读取结果，无法乐观读取或校验失败时返回null，由调用方加读锁重读
+     */
+    private <T> T readOptimistic(String fileName, ResidentRead<T> read) throws IOException {
+        if (!workbookCache.isEnabled() || !Boolean.TRUE.equals(excelConfig.getCalculation().getOptimisticReads())) {
+            return null;
+        }
+        requestMetrics.setFileName(fileName);
+        long stamp = lockManager.tryOptimisticRead(fileName);
+        if (stamp == 0L) {
+            return null;
+        }
+        
+        CachedWorkbook cached = workbookCache.getIfPresent(fileName, getExcelFile(fileName));
+        if (cached == null) {
+            return null;
+        }
+        
+        T result;
+        try {
+            result = read.read(cached);
+        } catch (RuntimeException | IOException e) {
+            if (lockManager.validate(fileName, stamp)) {
+                throw e;
+            }
+            // 读到写入中途的状态，按校验失败处理
+            result = null;
+        }
+        
+        if (result != null && lockManager.validate(fileName, stamp)) {
+            optimisticHits.increment();
+            return result;
+        }
+        optimisticFallbacks.increment();
+        return null;
+    }
+    
+    @FunctionalInterface
+    private interface ResidentRead<T> {
+        T read(CachedWorkbook cached) throws IOException;
+    }
+    
+    /**
+     * 从常驻内存的工作簿读取
+     */
+    private ExcelResponse readResident(ExcelReadRequest request, CachedWorkbook cached) throws IOException {
+        try (WorkbookLease lease = workbookPool.acquire(cached)) {
+            return readCells(lease.getWorkbook(), lease.getEvaluator(), request, lease);
+        }
+    }
+    
+    /**
+     * 流式读取：按sheet汇总请求的单元格，每个sheet只扫描到请求的最大行
+     */
+    private ExcelResponse readStreaming(ExcelReadRequest request, File excelFile) throws IOException {
+        List<ExcelReadRequest.CellPosition> positions = request.getCells();
+        ExcelResponse.CellResult[] results = new ExcelResponse.CellResult[positions.size()];
+        boolean readFormula = Boolean.TRUE.equals(request.getReadFormula());
+        
+        // sheet -> 单元格 -> 请求中的位置（同一单元格可能被请求多次）
+        Map<String, Map<Long, List<Integer>>> wanted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, int[]> bounds = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        
+        for (int i = 0; i < positions.size(); i++) {
+            ExcelReadRequest.CellPosition position = positions.get(i);
+            String sheetName = position.getSheetName() != null ? position.getSheetName() : request.getSheetName();
+            if (sheetName == null || sheetName.trim().isEmpty()) {
+                throw new IllegalArgumentException(
+                    "单元格 " + position.getCellAddress() + " 未指定sheet名称");
+            }
+            
+            CellReference cellRef = new CellReference(position.getCellAddress());
+            wanted.computeIfAbsent(sheetName, k -> new HashMap<>())
+                    .computeIfAbsent(FormulaDependencyGraph.cellKey(0, cellRef.getRow(), cellRef.getCol()),
+                            k -> new ArrayList<>(1))
+                    .add(i);
+            
+            // 首行、末行、首列、末列
+            int[] bound = bounds.computeIfAbsent(sheetName,
+                    k -> new int[]{Integer.MAX_VALUE, -1, Integer.MAX_VALUE, -1});
+            bound[0] = Math.min(bound[0], cellRef.getRow());
+            bound[1] = Math.max(bound[1], cellRef.getRow());
+            bound[2] = Math.min(bound[2], cellRef.getCol());
+            bound[3] = Math.max(bound[3], cellRef.getCol());
+            
+            results[i] = ExcelResponse.CellResult.builder()
+                    .sheetName(sheetName)
+                    .cellAddress(position.getCellAddress())
+                    .value(null)
+                    .valueType("BLANK")
+                    .build();
+        }
+        
+        Map<String, StreamingExcelReader.SheetScan> scans = new HashMap<>();
+        wanted.forEach((sheetName, cells) -> {
+            int[] bound = bounds.get(sheetName);
+            scans.put(sheetName, new StreamingExcelReader.SheetScan(bound[0], bound[1], bound[2], bound[3],
+                    (row, col, valueType, value, formula) -> {
+                        List<Integer> indexes = cells.get(FormulaDependencyGraph.cellKey(0, row, col));
+                        if (indexes == null) {
+                            return;
+                        }
+                        for (int index : indexes) {
+                            ExcelResponse.CellResult result = results[index];
+                            result.setFormula(formula);
+                            if (formula != null && readFormula) {
+                                result.setValue("=" + formula);
+                                result.setValueType("FORMULA");
+                            } else {
+                                result.setValue(value);
+                                result.setValueType(valueType);
+                            }
+                        }
+                    }));
+        });
+        
+        streamingReader.scan(excelFile, scans);
+        
+        log.info("成功流式读取Excel: {}, 涉及Sheet数: {}, 单元格数: {}", 
+                request.getFileName(), scans.size(), positions.size());
+        
+        return ExcelResponse.builder()
+                .success(true)
+                .message("读取成功")
+                .data(Arrays.asList(results))
+                .build();
+    }
+    
+    /**
+     * 区域读取：按行顺序遍历区域，返回按列归类类型的二维数组
+     */
+    public ExcelRangeResponse readRange(ExcelRangeReadRequest request) {
+        String fileName = request.getFileName();
+        boolean lockAcquired = false;
+        
+        if (Boolean.TRUE.equals(request.getStreaming())) {
+            // 流式读取直接解析磁盘文件
+            flush(fileName);
+        }
+        
+        try {
+            ExcelRangeResponse optimistic = Boolean.TRUE.equals(request.getStreaming()) ? null
+                    : readOptimistic(fileName, cached -> readRangeResident(request, cached));
+            
+            if (optimistic == null) {
+                lockAcquired = tryAcquireReadLock(fileName);
+                
+                if (!lockAcquired) {
+                    throw new ExcelOperationException("无法获取文件读锁，请稍后重试: " + fileName);
+                }
+            }
+            
+            File excelFile = getExcelFile(fileName);
+            if (!excelFile.exists()) {
+                throw new ExcelOperationException("Excel文件不存在: " + fileName);
+            }
+            
+            ExcelRangeResponse response;
+            if (optimistic != null) {
+                response = optimistic;
+            } else if (Boolean.TRUE.equals(request.getStreaming())) {
+                response = readRangeStreaming(request, excelFile);
+            } else if (workbookCache.isEnabled()) {
+                response = readRangeResident(request, workbookCache.get(fileName, excelFile));
+            } else {
+                try (FileInputStream fis = new FileInputStream(excelFile);
+                     Workbook workbook = parseWorkbook(fis)) {
+                    FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+                    response = readRangeCells(workbook, evaluator, request, null);
+                }
+            }
+            
+            log.info("成功读取Excel区域: {}, 区域: {}!{}, 行数: {}, 列数: {}", 
+                    fileName, response.getSheetName(), response.getRange(), 
+                    response.getRowCount(), response.getColumnCount());
+            
+            return response;
+            
+        } catch (IOException e) {
+            log.error("读取Excel区域失败: {}", fileName, e);
+            throw new ExcelOperationException("读取Excel区域失败: " + e.getMessage(), e);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseReadLock(fileName);
+            }
+        }
+    }
+    
+    private ExcelRangeResponse readRangeResident(ExcelRangeReadRequest request, CachedWorkbook cached) throws IOException {
+        try (WorkbookLease lease = workbookPool.acquire(cached)) {
+            return readRangeCells(lease.getWorkbook(), lease.getEvaluator(), request, lease);
+        }
+    }
+    
+    /**
+     * 从已打开的工作簿读取区域，逐行只取一次Row
+     */
+    private ExcelRangeResponse readRangeCells(Workbook workbook, FormulaEvaluator evaluator,
+                                              ExcelRangeReadRequest request, WorkbookLease lease) {
+        Name name = isPossibleName(request.getRange()) ? workbook.getName(request.getRange().trim()) : null;
+        AreaReference area = parseArea(name != null ? name.getRefersToFormula() : request.getRange());
+        String sheetName = rangeSheetName(area, request.getSheetName());
+        
+        Sheet sheet = workbook.getSheet(sheetName);
+        if (sheet == null) {
+            throw new ExcelOperationException("Sheet不存在: " + sheetName);
+        }
+        
+        int firstRow = firstRowOf(area);
+        int firstCol = area.getFirstCell().getCol();
+        int lastCol = area.getLastCell().getCol();
+        int lastRow = isWholeColumn(area) ? sheet.getLastRowNum() : lastRowOf(area);
+        boolean readFormula = Boolean.TRUE.equals(request.getReadFormula());
+        
+        RangeValues values = new RangeValues(firstRow, firstCol, lastCol);
+        for (int rowIdx = firstRow; rowIdx <= lastRow; rowIdx++) {
+            Row row = sheet.getRow(rowIdx);
+            if (row == null) {
+                continue;
+            }
+            for (int colIdx = firstCol; colIdx <= lastCol; colIdx++) {
+                Cell cell = row.getCell(colIdx);
+                if (cell != null) {
+                    putRangeCell(values, cell, evaluator, readFormula, lease);
+                }
+            }
+        }
+        
+        return values.toResponse(sheetName, lastRow);
+    }
+    
+    /**
+     * 流式读取区域，只解析到区域的最后一行
+     */
+    private ExcelRangeResponse readRangeStreaming(ExcelRangeReadRequest request, File excelFile) throws IOException {
+        String definedName = isPossibleName(request.getRange())
+                ? streamingReader.resolveDefinedName(excelFile, request.getRange().trim())
+                : null;
+        AreaReference area = parseArea(definedName != null ? definedName : request.getRange());
+        String sheetName = rangeSheetName(area, request.getSheetName());
+        boolean readFormula = Boolean.TRUE.equals(request.getReadFormula());
+        
+        int firstRow = firstRowOf(area);
+        int firstCol = area.getFirstCell().getCol();
+        int lastCol = area.getLastCell().getCol();
+        RangeValues values = new RangeValues(firstRow, firstCol, lastCol);
+        
+        streamingReader.scan(excelFile, Map.of(sheetName, new StreamingExcelReader.SheetScan(
+                firstRow, lastRowOf(area), firstCol, lastCol,
+                (row, col, valueType, value, formula) -> {
+                    if (formula != null && readFormula) {
+                        values.put(row, col, "=" + formula, "FORMULA");
+                    } else {
+                        values.put(row, col, value, valueType);
+                    }
+                })));
+        
+        int lastRow = isWholeColumn(area) ? values.lastRowSeen() : lastRowOf(area);
+        return values.toResponse(sheetName, lastRow);
+    }
+    
+    private void putRangeCell(RangeValues values, Cell cell, FormulaEvaluator evaluator,
+                              boolean readFormula, WorkbookLease lease) {
+        int row = cell.getRowIndex();
+        int col = cell.getColumnIndex();
+        
+        switch (cell.getCellType()) {
+            case FORMULA:
+                if (readFormula) {
+                    values.put(row, col, "=" + cell.getCellFormula(), "FORMULA");
+                    return;
+                }
+                CellValue cellValue;
+                try {
+                    cellValue = evaluateFormula(cell, evaluator, lease);
+                } catch (Exception e) {
+                    log.warn("公式计算失败: {}, 公式: {}", e.getMessage(), cell.getCellFormula());
+                    values.put(row, col, "#ERROR: " + e.getMessage(), "ERROR");
+                    return;
+                }
+                switch (cellValue.getCellType()) {
+                    case NUMERIC:
+                        values.put(row, col, cellValue.getNumberValue(), "NUMERIC");
+                        break;
+                    case STRING:
+                        values.put(row, col, cellValue.getStringValue(), "STRING");
+                        break;
+                    case BOOLEAN:
+                        values.put(row, col, cellValue.getBooleanValue(), "BOOLEAN");
+                        break;
+                    case ERROR:
+                        values.put(row, col, "#ERROR", "ERROR");
+                        break;
+                    default:
+                        break;
+                }
+                break;
+            case NUMERIC:
+                if (DateUtil.isCellDateFormatted(cell)) {
+                    values.put(row, col, cell.getDateCellValue().toString(), "DATE");
+                } else {
+                    values.put(row, col, cell.getNumericCellValue(), "NUMERIC");
+                }
+                break;
+            case STRING:
+                values.put(row, col, cell.getStringCellValue(), "STRING");
+                break;
+            case BOOLEAN:
+                values.put(row, col, cell.getBooleanCellValue(), "BOOLEAN");
+                break;
+            case BLANK:
+                break;
+            default:
+                values.put(row, col, cell.toString(), "UNKNOWN");
+        }
+    }
+    
+    /**
+     * 不含":"和"!"的区域可能是命名区域
+     */
+    private boolean isPossibleName(String range) {
+        return range.indexOf(':') < 0 && range.indexOf('!') < 0;
+    }
+    
+    private AreaReference parseArea(String range) {
+        String ref = range.trim();
+        if (ref.startsWith("=")) {
+            ref = ref.substring(1);
+        }
+        if (!AreaReference.isContiguous(ref)) {
+            throw new ExcelOperationException("不支持不连续的区域: " + range);
+        }
+        AreaReference area;
+        try {
+            area = new AreaReference(ref, SpreadsheetVersion.EXCEL2007);
+        } catch (RuntimeException e) {
+            throw new ExcelOperationException("无效的区域: " + range);
+        }
+        if (area.getFirstCell().getCol() < 0 || area.getLastCell().getCol() < 0) {
+            throw new ExcelOperationException("不支持整行区域: " + range);
+        }
+        return area;
+    }
+    
+    /**
+     * 是否整列引用：A:C解析后行号为-1，A$1:C$1048576形式由isWholeColumnReference识别
+     */
+    private boolean isWholeColumn(AreaReference area) {
+        return area.getFirstCell().getRow() < 0 || area.isWholeColumnReference();
+    }
+    
+    private int firstRowOf(AreaReference area) {
+        return isWholeColumn(area) ? 0 : area.getFirstCell().getRow();
+    }
+    
+    private int lastRowOf(AreaReference area) {
+        return isWholeColumn(area)
+                ? SpreadsheetVersion.EXCEL2007.getLastRowIndex()
+                : area.getLastCell().getRow();
+    }
+    
+    /**
+     * 区域的sheet：优先使用区域中的sheet前缀
+     */
+    private String rangeSheetName(AreaReference area, String defaultSheetName) {
+        String sheetName = area.getFirstCell().getSheetName() != null
+                ? area.getFirstCell().getSheetName()
+                : defaultSheetName;
+        if (sheetName == null || sheetName.trim().isEmpty()) {
+            throw new IllegalArgumentException("区域 " + area.formatAsString() + " 未指定sheet名称");
+        }
+        return sheetName;
+    }
+    
+    /**
+     * 从已打开的工作簿中读取单元格
+     * @param lease 工作簿借用自缓存时传入，用于复用公式结果；否则为null
+     */
+    private ExcelResponse readCells(Workbook workbook, FormulaEvaluator evaluator,
+                                    ExcelReadRequest request, WorkbookLease lease) {
+        String fileName = request.getFileName();
+        
+        List<ExcelResponse.CellResult> results = new ArrayList<>();
+        
+        // 读取单元格数据（支持多个sheet）
+        for (ExcelReadRequest.CellPosition position : request.getCells()) {
+            // 确定使用哪个sheet（优先使用cell级别的sheetName）
+            String targetSheetName = position.getSheetName() != null 
+                    ? position.getSheetName() 
+                    : request.getSheetName();
+            
+            if (targetSheetName == null || targetSheetName.trim().isEmpty()) {
+                throw new IllegalArgumentException(
+                    "单元格 " + position.getCellAddress() + " 未指定sheet名称");
+            }
+            
+            // 获取sheet
+            Sheet sheet = workbook.getSheet(targetSheetName);
+            if (sheet == null) {
+                throw new ExcelOperationException("Sheet不存在: " + targetSheetName);
+            }
+            
+            // 解析单元格地址（如"B1"、"AZ27"）
+            CellReference cellRef = new CellReference(position.getCellAddress());
+            int rowIdx = cellRef.getRow();
+            int colIdx = cellRef.getCol();
+            
+            Row row = sheet.getRow(rowIdx);
+            Cell cell = (row != null) ? row.getCell(colIdx) : null;
+            
+            ExcelResponse.CellResult result = extractCellData(
+                    cell, 
+                    position.getCellAddress(),
+                    evaluator,
+                    request.getReadFormula(),
+                    lease
+            );
+            
+            // 在结果中添加sheet信息，方便识别
+            result.setSheetName(targetSheetName);
+            
+            results.add(result);
+        }
+        
+        // 统计涉及的sheet数量
+        long sheetCount = request.getCells().stream()
+                .map(cell -> cell.getSheetName() != null ? cell.getSheetName() : request.getSheetName())
+                .distinct()
+                .count();
+        
+        log.info("成功读取Excel: {}, 涉及Sheet数: {}, 单元格数: {}", 
+                fileName, sheetCount, request.getCells().size());
+        
+        return ExcelResponse.builder()
+                .success(true)
+                .message("读取成功")
+                .data(results)
+                .build();
+    }
+    
+    /**
+     * 同时执行写入和读取操作
+     * 读写同一文件时在一次写锁内完成：写入常驻工作簿后直接从同一份内存数据读取，
+     * 不再重新解析文件，也只重算受写入影响的公式
+     */
+    public ExcelResponse writeAndRead(ExcelWriteRequest writeRequest, ExcelReadRequest readRequest) {
+        if (writeRequest != null && readRequest != null && workbookCache.isEnabled()
+                && writeRequest.getFileName().equals(readRequest.getFileName())) {
+            return writeThenReadResident(writeRequest, readRequest);
+        }
+        
+        // 先写入
+        if (writeRequest != null) {
+            writeExcel(writeRequest);
+        }
+        
+        // 再读取
+        if (readRequest != null) {
+            return readExcel(readRequest);
+        }
+        
+        return ExcelResponse.builder()
+                .success(true)
+                .message("操作成功")
+                .build();
+    }
+    
+    /**
+     * 在同一次写锁内写入并读取
+     */
+    private ExcelResponse writeThenReadResident(ExcelWriteRequest writeRequest, ExcelReadRequest readRequest) {
+        String fileName = writeRequest.getFileName();
+        boolean lockAcquired = false;
+        
+        try {
+            lockAcquired = tryAcquireWriteLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件写锁，请稍后重试: " + fileName);
+            }
+            
+            CachedWorkbook cached = doWrite(writeRequest);
+            if (cached != null && !Boolean.TRUE.equals(readRequest.getStreaming())) {
+                return readResident(readRequest, cached);
+            }
+            // 流式读取直接解析磁盘文件
+            flushLocked(fileName);
+            return doRead(readRequest);
+            
+        } catch (IOException e) {
+            log.error("操作Excel失败: {}", fileName, e);
+            throw new ExcelOperationException("操作Excel失败: " + e.getMessage(), e);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseWriteLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 试算：应用输入后读取输出，输入不会保存
+     * 在读锁下基于缓存工作簿的写时复制视图计算，多个试算请求可以并行，不涉及任何文件写入
+     */
+    public ExcelResponse calculate(ExcelWriteRequest inputs, ExcelReadRequest outputs) {
+        String fileName = outputs.getFileName();
+        boolean lockAcquired = false;
+        
+        try {
+            lockAcquired = tryAcquireReadLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件读锁，请稍后重试: " + fileName);
+            }
+            
+            File excelFile = getExcelFile(fileName);
+            if (!excelFile.exists()) {
+                throw new ExcelOperationException("Excel文件不存在: " + fileName);
+            }
+            
+            List<ExcelWriteRequest.CellData> inputCells = inputs != null ? inputs.getCells() : List.of();
+            String inputSheetName = inputs != null ? inputs.getSheetName() : null;
+            
+            ExcelResponse response = null;
+            CachedWorkbook cached = null;
+            if (workbookCache.isEnabled()) {
+                cached = workbookCache.get(fileName, excelFile);
+                try (WorkbookLease lease = workbookPool.acquire(cached)) {
+                    response = calculateForked(lease.getWorkbook(), inputCells, inputSheetName, outputs);
+                }
+            }
+            if (response == null) {
+                response = calculateOnCopy(excelFile, cached, inputCells, inputSheetName, outputs);
+            }
+            
+            log.info("成功试算Excel: {}, 输入单元格数: {}, 输出单元格数: {}", 
+                    fileName, inputCells.size(), outputs.getCells().size());
+            
+            return response;
+            
+        } catch (IOException e) {
+            log.error("试算Excel失败: {}", fileName, e);
+            throw new ExcelOperationException("试算Excel失败: " + e.getMessage(), e);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseReadLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 基于共享工作簿的ForkedEvaluator计算，输入只保存在本次请求的覆盖层中
+     * @return 输入中有公式或单元格在文件中不存在（覆盖层无法表示）时返回null
+     */
+    private ExcelResponse calculateForked(XSSFWorkbook workbook, List<ExcelWriteRequest.CellData> inputCells,
+                                          String inputSheetName, ExcelReadRequest outputs) {
+        for (ExcelWriteRequest.CellData cellData : inputCells) {
+            String sheetName = resolveSheetName(cellData.getSheetName(), inputSheetName, cellData.getCellAddress());
+            if (ValueKind.of(cellData.getValueType()) == ValueKind.FORMULA
+                    || getExistingCell(workbook, sheetName, new CellReference(cellData.getCellAddress())) == null) {
+                return null;
+            }
+        }
+        
+        ForkedEvaluator fork = ForkedEvaluator.create(workbook, null, null);
+        for (ExcelWriteRequest.CellData cellData : inputCells) {
+            String sheetName = resolveSheetName(cellData.getSheetName(), inputSheetName, cellData.getCellAddress());
+            CellReference cellRef = new CellReference(cellData.getCellAddress());
+            fork.updateCell(sheetName, cellRef.getRow(), cellRef.getCol(), toValueEval(cellData));
+        }
+        
+        List<ExcelResponse.CellResult> results = new ArrayList<>();
+        for (ExcelReadRequest.CellPosition position : outputs.getCells()) {
+            String sheetName = resolveSheetName(position.getSheetName(), outputs.getSheetName(), position.getCellAddress());
+            if (workbook.getSheet(sheetName) == null) {
+                throw new ExcelOperationException("Sheet不存在: " + sheetName);
+            }
+            
+            CellReference cellRef = new CellReference(position.getCellAddress());
+            Cell cell = getExistingCell(workbook, sheetName, cellRef);
+            
+            ExcelResponse.CellResult.CellResultBuilder builder = ExcelResponse.CellResult.builder()
+                    .sheetName(sheetName)
+                    .cellAddress(position.getCellAddress());
+            
+            if (cell == null) {
+                builder.value(null).valueType("BLANK");
+            } else if (cell.getCellType() == CellType.FORMULA && Boolean.TRUE.equals(outputs.getReadFormula())) {
+                builder.formula(cell.getCellFormula())
+                       .value("=" + cell.getCellFormula())
+                       .valueType("FORMULA");
+            } else {
+                if (cell.getCellType() == CellType.FORMULA) {
+                    builder.formula(cell.getCellFormula());
+                }
+                try {
+                    long evalStart = System.nanoTime();
+                    ValueEval value = fork.evaluate(sheetName, cellRef.getRow(), cellRef.getCol());
+                    requestMetrics.addPhase(Phase.EVALUATION, System.nanoTime() - evalStart);
+                    extractEvalValue(builder, value);
+                } catch (Exception e) {
+                    log.warn("公式计算失败: {}, 单元格: {}!{}", e.getMessage(), sheetName, position.getCellAddress());
+                    builder.value("#ERROR: " + e.getMessage())
+                           .valueType("ERROR");
+                }
+            }
+            
+            results.add(builder.build());
+        }
+        
+        return ExcelResponse.builder()
+                .success(true)
+                .message("试算成功")
+                .data(results)
+                .build();
+    }
+    
+    /**
+     * 在从磁盘重新加载的私有副本上计算，用完即丢弃
+     */
+    private ExcelResponse calculateOnCopy(File excelFile, CachedWorkbook cached,
+                                          List<ExcelWriteRequest.CellData> inputCells,
+                                          String inputSheetName, ExcelReadRequest outputs) throws IOException {
+        try (InputStream source = openSource(excelFile, cached);
+             Workbook workbook = parseWorkbook(source)) {
+            
+            ExcelWriteRequest inputs = new ExcelWriteRequest();
+            inputs.setFileName(outputs.getFileName());
+            inputs.setSheetName(inputSheetName);
+            inputs.setCells(inputCells);
+            applyCells(workbook, inputs);
+            
+            FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+            ExcelResponse response = readCells(workbook, evaluator, outputs, null);
+            response.setMessage("试算成功");
+            return response;
+        }
+    }
+    
+    /**
+     * 副本的数据来源：常驻工作簿有未保存的修改时从内存序列化，否则读取磁盘文件
+     */
+    private InputStream openSource(File excelFile, CachedWorkbook cached) throws IOException {
+        if (cached == null || !cached.isDirty()) {
+            return new FileInputStream(excelFile);
+        }
+        cached.lock();
+        try {
+            long start = System.nanoTime();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            cached.getWorkbook().write(bos);
+            requestMetrics.addPhase(Phase.SERIALIZATION, System.nanoTime() - start);
+            return new ByteArrayInputStream(bos.toByteArray());
+        } finally {
+            cached.unlock();
+        }
+    }
+    
+    /**
+     * 批量试算：同一文件的多组输入共用一次加锁和一次加载
+     * 场景按并行度切分成若干组，每组独占一个工作簿实例，组内逐个场景在各自的ForkedEvaluator上计算；
+     * 单个场景失败只记录在该场景的结果中
+     */
+    public ExcelBatchResponse calculateBatch(ExcelBatchCalculateRequest request) {
+        String fileName = request.getFileName();
+        List<ExcelBatchCalculateRequest.Scenario> scenarios = request.getScenarios();
+        boolean lockAcquired = false;
+        
+        try {
+            lockAcquired = tryAcquireReadLock(fileName);
+            
+            if (!lockAcquired) {
+                throw new ExcelOperationException("无法获取文件读锁，请稍后重试: " + fileName);
+            }
+            
+            File excelFile = getExcelFile(fileName);
+            if (!excelFile.exists()) {
+                throw new ExcelOperationException("Excel文件不存在: " + fileName);
+            }
+            
+            CachedWorkbook cached = workbookCache.isEnabled() ? workbookCache.get(fileName, excelFile) : null;
+            
+            // 每组占用一个工作簿实例，组数不超过实例池上限
+            int parallelism = Math.min(scenarios.size(), Math.min(calculationPool.getParallelism(),
+                    excelConfig.getCalculation().getMaxConcurrentReads()));
+            int chunkSize = (scenarios.size() + Math.max(parallelism, 1) - 1) / Math.max(parallelism, 1);
+            
+            List<CompletableFuture<List<ExcelBatchResponse.ScenarioResult>>> futures = new ArrayList<>();
+            for (int from = 0; from < scenarios.size(); from += chunkSize) {
+                List<ExcelBatchCalculateRequest.Scenario> chunk =
+                        scenarios.subList(from, Math.min(from + chunkSize, scenarios.size()));
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> calculateChunk(request, chunk, cached, excelFile), calculationPool));
+            }
+            
+            List<ExcelBatchResponse.ScenarioResult> results = new ArrayList<>(scenarios.size());
+            for (CompletableFuture<List<ExcelBatchResponse.ScenarioResult>> future : futures) {
+                results.addAll(future.join());
+            }
+            
+            long failed = results.stream().filter(result -> !result.getSuccess()).count();
+            log.info("成功批量试算Excel: {}, 场景数: {}, 失败场景数: {}, 并行度: {}", 
+                    fileName, scenarios.size(), failed, futures.size());
+            
+            return ExcelBatchResponse.builder()
+                    .success(failed == 0)
+                    .message(failed == 0 ? "批量试算成功" : "批量试算完成，失败场景数: " + failed)
+                    .results(results)
+                    .build();
+            
+        } catch (IOException | UncheckedIOException | CompletionException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof ExcelOperationException) {
+                throw (ExcelOperationException) cause;
+            }
+            log.error("批量试算Excel失败: {}", fileName, cause);
+            throw new ExcelOperationException("批量试算Excel失败: " + cause.getMessage(), cause);
+        } finally {
+            if (lockAcquired) {
+                lockManager.releaseReadLock(fileName);
+            }
+        }
+    }
+    
+    /**
+     * 在一个独占的工作簿实例上依次计算一组场景
+     * 启用缓存时从实例池借用，否则每组从磁盘加载一次
+     */
+    private List<ExcelBatchResponse.ScenarioResult> calculateChunk(ExcelBatchCalculateRequest request,
+                                                                   List<ExcelBatchCalculateRequest.Scenario> chunk,
+                                                                   CachedWorkbook cached, File excelFile) {
+        try {
+            if (cached != null) {
+                try (WorkbookLease lease = workbookPool.acquire(cached)) {
+                    return calculateScenarios(lease.getWorkbook(), request, chunk, excelFile, cached);
+                }
+            }
+            try (FileInputStream fis = new FileInputStream(excelFile);
+                 XSSFWorkbook workbook = parseWorkbook(fis)) {
+                return calculateScenarios(workbook, request, chunk, excelFile, null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private List<ExcelBatchResponse.ScenarioResult> calculateScenarios(XSSFWorkbook workbook,
+                                                                       ExcelBatchCalculateRequest request,
+                                                                       List<ExcelBatchCalculateRequest.Scenario> chunk,
+                                                                       File excelFile, CachedWorkbook cached) {
+        List<ExcelBatchResponse.ScenarioResult> results = new ArrayList<>(chunk.size());
+        
+        for (ExcelBatchCalculateRequest.Scenario scenario : chunk) {
+            String sheetName = scenario.getSheetName() != null ? scenario.getSheetName() : request.getSheetName();
+            List<ExcelWriteRequest.CellData> inputCells = scenario.getInputs() != null ? scenario.getInputs() : List.of();
+            
+            ExcelReadRequest outputs = new ExcelReadRequest();
+            outputs.setFileName(request.getFileName());
+            outputs.setSheetName(sheetName);
+            outputs.setCells(scenario.getOutputs());
+            outputs.setReadFormula(Boolean.TRUE.equals(request.getReadFormula()));
+            
+            ExcelBatchResponse.ScenarioResult.ScenarioResultBuilder builder = ExcelBatchResponse.ScenarioResult.builder()
+                    .id(scenario.getId());
+            try {
+                ExcelResponse response = calculateForked(workbook, inputCells, sheetName, outputs);
+                if (response == null) {
+                    response = calculateOnCopy(excelFile, cached, inputCells, sheetName, outputs);
+                }
+                builder.success(true).data(response.getData());
+            } catch (Exception e) {
+                log.warn("批量试算场景失败: {}, 场景: {} - {}", request.getFileName(), scenario.getId(), e.getMessage());
+                builder.success(false).message(e.getMessage());
+            }
+            results.add(builder.build());
+        }
+        
+        return results;
+    }
     
     /**
-     * 写入Excel数据
+     * 列出文件的历史版本
      */
-    public void writeExcel(ExcelWriteRequest request) {
-        String fileName = request.getFileName();
+    public ExcelVersionResponse listVersions(String fileName) {
+        List<ExcelVersionResponse.VersionInfo> versions = new ArrayList<>();
+        for (FileVersion version : versionStore.list(getExcelFile(fileName))) {
+            versions.add(ExcelVersionResponse.VersionInfo.builder()
+                    .versionId(version.getId())
+                    .type(version.isSnapshot() ? "SNAPSHOT" : "PATCH")
+                    .savedAt(version.getSavedAt())
+                    .size(version.getSize())
+                    .build());
+        }
+        
+        return ExcelVersionResponse.builder()
+                .success(true)
+                .message("版本数: " + versions.size())
+                .fileName(fileName)
+                .versions(versions)
+                .build();
+    }
+    
+    /**
+     * 将文件恢复为指定版本，恢复本身也记录为一个新版本
+     */
+    public ExcelResponse restoreVersion(String fileName, String versionId) {
         boolean lockAcquired = false;
         
         try {
-            // 获取写锁
-            lockAcquired = lockManager.tryAcquireWriteLock(
-                    fileName, 
-                    excelConfig.getLock().getWaitTime()
-            );
+            lockAcquired = tryAcquireWriteLock(fileName);
             
             if (!lockAcquired) {
                 throw new ExcelOperationException("无法获取文件写锁，请稍后重试: " + fileName);
             }
             
-            File excelFile = getExcelFile(fileName);
-            Workbook workbook = null;
+            // 先保存内存中的修改，使其也留在版本历史中
+            flushLocked(fileName);
             
-            try {
-                // 打开或创建workbook
-                if (excelFile.exists()) {
-                    try (FileInputStream fis = new FileInputStream(excelFile)) {
-                        workbook = new XSSFWorkbook(fis);
-                    }
-                } else {
-                    workbook = new XSSFWorkbook();
-                }
-                
-                // 写入单元格数据（支持多个sheet）
-                for (ExcelWriteRequest.CellData cellData : request.getCells()) {
-                    // 确定使用哪个sheet（优先使用cell级别的sheetName）
-                    String targetSheetName = cellData.getSheetName() != null 
-                            ? cellData.getSheetName() 
-                            : request.getSheetName();
-                    
-                    if (targetSheetName == null || targetSheetName.trim().isEmpty()) {
-                        throw new IllegalArgumentException(
-                            "单元格 " + cellData.getCellAddress() + " 未指定sheet名称");
-                    }
-                    
-                    // 获取或创建sheet
-                    Sheet sheet = getOrCreateSheet(workbook, targetSheetName);
-                    
-                    // 解析单元格地址（如"B1"、"AZ27"）
-                    CellReference cellRef = new CellReference(cellData.getCellAddress());
-                    int rowIdx = cellRef.getRow();
-                    int colIdx = cellRef.getCol();
-                    
-                    Row row = sheet.getRow(rowIdx);
-                    if (row == null) {
-                        row = sheet.createRow(rowIdx);
-                    }
-                    
-                    Cell cell = row.getCell(colIdx);
-                    if (cell == null) {
-                        cell = row.createCell(colIdx);
-                    }
-                    
-                    setCellValue(cell, cellData);
-                }
-                
-                // 备份原文件（如果启用版本控制）
-                if (excelFile.exists() && excelConfig.getStorage().getVersionControl()) {
-                    backupFile(excelFile);
-                }
-                
-                // 确保父目录存在
-                File parentDir = excelFile.getParentFile();
-                if (parentDir != null && !parentDir.exists()) {
-                    log.info("父目录不存在，正在创建: {}", parentDir.getAbsolutePath());
-                    if (!parentDir.mkdirs()) {
-                        throw new IOException("无法创建父目录: " + parentDir.getAbsolutePath());
-                    }
-                }
-                
-                // 写入文件
-                try (FileOutputStream fos = new FileOutputStream(excelFile)) {
-                    workbook.write(fos);
+            File excelFile = getExcelFile(fileName);
+            try (XSSFWorkbook workbook = versionStore.open(excelFile, versionId)) {
+                if (workbook == null) {
+                    throw new ExcelOperationException("版本不存在: " + versionId);
                 }
-                
-                // 统计涉及的sheet数量
-                long sheetCount = request.getCells().stream()
-                        .map(cell -> cell.getSheetName() != null ? cell.getSheetName() : request.getSheetName())
-                        .distinct()
-                        .count();
-                
-                log.info("成功写入Excel: {}, 涉及Sheet数: {}, 单元格数: {}", 
-                        fileName, sheetCount, request.getCells().size());
-                
-            } finally {
-                if (workbook != null) {
-                    workbook.close();
+                try {
+                    persist(fileName, workbook, excelFile, null);
+                    checkpointJournal(fileName);
+                } finally {
+                    invalidateAfterWrite(fileName, null);
                 }
             }
             
+            log.info("成功恢复Excel版本: {}, 版本: {}", fileName, versionId);
+            
+            return ExcelResponse.builder()
+                    .success(true)
+                    .message("恢复成功: " + versionId)
+                    .build();
+            
         } catch (IOException e) {
-            log.error("写入Excel失败: {}", fileName, e);
-            throw new ExcelOperationException("写入Excel失败: " + e.getMessage(), e);
+            log.error("恢复Excel版本失败: {}, 版本: {}", fileName, versionId, e);
+            throw new ExcelOperationException("恢复Excel版本失败: " + e.getMessage(), e);
         } finally {
             if (lockAcquired) {
                 lockManager.releaseWriteLock(fileName);
@@ -144,161 +1836,199 @@ public class ExcelService {
     }
     
     /**
-     * 读取Excel数据
+     * 比较两个版本，返回内容不同的单元格
      */
-    public ExcelResponse readExcel(ExcelReadRequest request) {
-        String fileName = request.getFileName();
-        boolean lockAcquired = false;
+    public ExcelVersionResponse diffVersions(String fileName, String fromVersionId, String toVersionId) {
+        File excelFile = getExcelFile(fileName);
         
-        try {
-            // 获取读锁
-            lockAcquired = lockManager.tryAcquireReadLock(
-                    fileName, 
-                    excelConfig.getLock().getWaitTime()
-            );
-            
-            if (!lockAcquired) {
-                throw new ExcelOperationException("无法获取文件读锁，请稍后重试: " + fileName);
+        try (XSSFWorkbook from = versionStore.open(excelFile, fromVersionId);
+             XSSFWorkbook to = versionStore.open(excelFile, toVersionId)) {
+            if (from == null || to == null) {
+                throw new ExcelOperationException("版本不存在: " + (from == null ? fromVersionId : toVersionId));
             }
             
-            File excelFile = getExcelFile(fileName);
-            if (!excelFile.exists()) {
-                throw new ExcelOperationException("Excel文件不存在: " + fileName);
-            }
+            Map<String, CellPatch.Entry> before = cellEntries(from);
+            Map<String, CellPatch.Entry> after = cellEntries(to);
             
-            try (FileInputStream fis = new FileInputStream(excelFile);
-                 Workbook workbook = new XSSFWorkbook(fis)) {
-                
-                // 创建公式计算器
-                FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
-                
-                List<ExcelResponse.CellResult> results = new ArrayList<>();
-                
-                // 读取单元格数据（支持多个sheet）
-                for (ExcelReadRequest.CellPosition position : request.getCells()) {
-                    // 确定使用哪个sheet（优先使用cell级别的sheetName）
-                    String targetSheetName = position.getSheetName() != null 
-                            ? position.getSheetName() 
-                            : request.getSheetName();
-                    
-                    if (targetSheetName == null || targetSheetName.trim().isEmpty()) {
-                        throw new IllegalArgumentException(
-                            "单元格 " + position.getCellAddress() + " 未指定sheet名称");
-                    }
-                    
-                    // 获取sheet
-                    Sheet sheet = workbook.getSheet(targetSheetName);
-                    if (sheet == null) {
-                        throw new ExcelOperationException("Sheet不存在: " + targetSheetName);
-                    }
-                    
-                    // 解析单元格地址（如"B1"、"AZ27"）
-                    CellReference cellRef = new CellReference(position.getCellAddress());
-                    int rowIdx = cellRef.getRow();
-                    int colIdx = cellRef.getCol();
-                    
-                    Row row = sheet.getRow(rowIdx);
-                    Cell cell = (row != null) ? row.getCell(colIdx) : null;
-                    
-                    ExcelResponse.CellResult result = extractCellData(
-                            cell, 
-                            position.getCellAddress(),
-                            evaluator,
-                            request.getReadFormula()
-                    );
-                    
-                    // 在结果中添加sheet信息，方便识别
-                    result.setSheetName(targetSheetName);
-                    
-                    results.add(result);
+            List<ExcelVersionResponse.CellChange> changes = new ArrayList<>();
+            for (Map.Entry<String, CellPatch.Entry> entry : after.entrySet()) {
+                CellPatch.Entry previous = before.remove(entry.getKey());
+                if (!sameContent(previous, entry.getValue())) {
+                    changes.add(cellChange(entry.getValue(), previous, entry.getValue()));
+                }
+            }
+            // 只存在于旧版本的单元格
+            for (CellPatch.Entry previous : before.values()) {
+                if (displayValue(previous) != null) {
+                    changes.add(cellChange(previous, previous, null));
                 }
-                
-                // 统计涉及的sheet数量
-                long sheetCount = request.getCells().stream()
-                        .map(cell -> cell.getSheetName() != null ? cell.getSheetName() : request.getSheetName())
-                        .distinct()
-                        .count();
-                
-                log.info("成功读取Excel: {}, 涉及Sheet数: {}, 单元格数: {}", 
-                        fileName, sheetCount, request.getCells().size());
-                
-                return ExcelResponse.builder()
-                        .success(true)
-                        .message("读取成功")
-                        .data(results)
-                        .build();
             }
             
+            return ExcelVersionResponse.builder()
+                    .success(true)
+                    .message("差异单元格数: " + changes.size())
+                    .fileName(fileName)
+                    .changes(changes)
+                    .build();
+            
         } catch (IOException e) {
-            log.error("读取Excel失败: {}", fileName, e);
-            throw new ExcelOperationException("读取Excel失败: " + e.getMessage(), e);
-        } finally {
-            if (lockAcquired) {
-                lockManager.releaseReadLock(fileName);
-            }
+            log.error("比较Excel版本失败: {}", fileName, e);
+            throw new ExcelOperationException("比较Excel版本失败: " + e.getMessage(), e);
         }
     }
     
     /**
-     * 同时执行写入和读取操作
+     * 工作簿中所有单元格的内容，键为 sheet!地址
      */
-    public ExcelResponse writeAndRead(ExcelWriteRequest writeRequest, ExcelReadRequest readRequest) {
-        // 先写入
-        if (writeRequest != null) {
-            writeExcel(writeRequest);
+    private Map<String, CellPatch.Entry> cellEntries(Workbook workbook) {
+        Map<String, CellPatch.Entry> entries = new LinkedHashMap<>();
+        for (Sheet sheet : workbook) {
+            for (Row row : sheet) {
+                for (Cell cell : row) {
+                    CellPatch.Entry entry = CellPatch.entryOf(cell);
+                    entries.put(entry.getSheetName() + "!" + entry.getCellAddress(), entry);
+                }
+            }
         }
-        
-        // 再读取
-        if (readRequest != null) {
-            return readExcel(readRequest);
+        return entries;
+    }
+    
+    private boolean sameContent(CellPatch.Entry a, CellPatch.Entry b) {
+        return Objects.equals(displayValue(a), displayValue(b));
+    }
+    
+    private Object displayValue(CellPatch.Entry entry) {
+        if (entry == null || "BLANK".equals(entry.getValueType())) {
+            return null;
         }
-        
-        return ExcelResponse.builder()
-                .success(true)
-                .message("操作成功")
+        return "FORMULA".equals(entry.getValueType()) ? "=" + entry.getValue() : entry.getValue();
+    }
+    
+    private ExcelVersionResponse.CellChange cellChange(CellPatch.Entry position, CellPatch.Entry from, CellPatch.Entry to) {
+        return ExcelVersionResponse.CellChange.builder()
+                .sheetName(position.getSheetName())
+                .cellAddress(position.getCellAddress())
+                .from(displayValue(from))
+                .to(displayValue(to))
                 .build();
     }
     
     /**
-     * 设置单元格值
+     * 获取缓存统计信息
      */
-    private void setCellValue(Cell cell, ExcelWriteRequest.CellData cellData) {
-        if (cellData.getValue() == null) {
+    public Map<String, Object> getCacheStatistics() {
+        Map<String, Object> stats = workbookCache.getStatistics();
+        stats.put("formulaResults", formulaResultCache.getStatistics());
+        stats.put("pool", workbookPool.getStatistics());
+        stats.put("versions", versionStore.getStatistics());
+        stats.put("journal", journal.getStatistics());
+        stats.put("locks", lockManager.getStatistics());
+        Map<String, Object> optimistic = new LinkedHashMap<>();
+        optimistic.put("hits", optimisticHits.sum());
+        optimistic.put("fallbacks", optimisticFallbacks.sum());
+        stats.put("optimisticReads", optimistic);
+        return stats;
+    }
+    
+    /**
+     * 按类型转换并校验写入的值，不修改工作簿，值不合法时抛出异常
+     * @param sheetIndex 目标sheet的序号，尚不存在时为-1（只影响sheet级名称的解析）
+     * @return NUMBER为Double，BOOLEAN为Boolean，FORMULA为不带等号的公式文本，其余为原值
+     */
+    private Object convertValue(Object value, ValueKind kind, FormulaParsingWorkbook parsing, int sheetIndex) {
+        if (value == null) {
+            return null;
+        }
+        switch (kind) {
+            case NUMBER:
+                return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+            case BOOLEAN:
+                return value instanceof Boolean ? value : Boolean.parseBoolean(value.toString());
+            case FORMULA:
+                String formula = value.toString();
+                if (formula.startsWith("=")) {
+                    formula = formula.substring(1);
+                }
+                if (parsing != null) {
+                    FormulaParser.parse(formula, parsing, FormulaType.CELL, sheetIndex);
+                }
+                return formula;
+            case STRING:
+            default:
+                return value;
+        }
+    }
+    
+    /**
+     * 校验公式用的解析上下文，只支持XSSF工作簿，其他返回null（不预先校验公式）
+     */
+    private FormulaParsingWorkbook formulaParsing(Workbook workbook) {
+        return workbook instanceof XSSFWorkbook ? XSSFEvaluationWorkbook.create((XSSFWorkbook) workbook) : null;
+    }
+    
+    private void setCellValue(Cell cell, Object value, ValueKind kind) {
+        if (value == null) {
             cell.setBlank();
             return;
         }
         
-        String valueType = cellData.getValueType().toUpperCase();
-        
-        switch (valueType) {
-            case "NUMBER":
-                if (cellData.getValue() instanceof Number) {
-                    cell.setCellValue(((Number) cellData.getValue()).doubleValue());
+        switch (kind) {
+            case NUMBER:
+                if (value instanceof Number) {
+                    cell.setCellValue(((Number) value).doubleValue());
                 } else {
-                    cell.setCellValue(Double.parseDouble(cellData.getValue().toString()));
+                    cell.setCellValue(Double.parseDouble(value.toString()));
                 }
                 break;
                 
-            case "BOOLEAN":
-                cell.setCellValue(Boolean.parseBoolean(cellData.getValue().toString()));
+            case BOOLEAN:
+                if (value instanceof Boolean) {
+                    cell.setCellValue((Boolean) value);
+                } else {
+                    cell.setCellValue(Boolean.parseBoolean(value.toString()));
+                }
                 break;
                 
-            case "FORMULA":
+            case FORMULA:
                 // 设置公式（不带等号）
-                String formula = cellData.getValue().toString();
+                String formula = value.toString();
                 if (formula.startsWith("=")) {
                     formula = formula.substring(1);
                 }
                 cell.setCellFormula(formula);
                 break;
                 
-            case "STRING":
+            case STRING:
             default:
-                cell.setCellValue(cellData.getValue().toString());
+                cell.setCellValue(value.toString());
                 break;
         }
     }
     
+    /**
+     * 将输入值转换为公式引擎的值，语义与 {@link #setCellValue} 一致
+     */
+    private ValueEval toValueEval(ExcelWriteRequest.CellData cellData) {
+        if (cellData.getValue() == null) {
+            return BlankEval.instance;
+        }
+        
+        switch (ValueKind.of(cellData.getValueType())) {
+            case NUMBER:
+                if (cellData.getValue() instanceof Number) {
+                    return new NumberEval(((Number) cellData.getValue()).doubleValue());
+                }
+                return new NumberEval(Double.parseDouble(cellData.getValue().toString()));
+                
+            case BOOLEAN:
+                return BoolEval.valueOf(Boolean.parseBoolean(cellData.getValue().toString()));
+                
+            case STRING:
+            default:
+                return new StringEval(cellData.getValue().toString());
+        }
+    }
+    
     /**
      * 提取单元格数据
      */
@@ -306,7 +2036,8 @@ public class ExcelService {
             Cell cell,
             String cellAddress,
             FormulaEvaluator evaluator,
-            boolean readFormula) {
+            boolean readFormula,
+            WorkbookLease lease) {
         
         ExcelResponse.CellResult.CellResultBuilder builder = ExcelResponse.CellResult.builder()
                 .cellAddress(cellAddress);
@@ -331,7 +2062,7 @@ public class ExcelService {
             } else {
                 // 计算公式结果
                 try {
-                    CellValue cellValue = evaluator.evaluate(cell);
+                    CellValue cellValue = evaluateFormula(cell, evaluator, lease);
                     extractCellValue(builder, cellValue);
                 } catch (Exception e) {
                     log.warn("公式计算失败: {}, 公式: {}", e.getMessage(), cell.getCellFormula());
@@ -347,6 +2078,59 @@ public class ExcelService {
         return builder.build();
     }
     
+    /**
+     * 计算公式单元格，工作簿借用自缓存时优先使用已缓存的结果
+     * 结果按借出时的版本读写：副本或乐观读取期间写者可能已提交新版本，不能用条目的当前版本
+     */
+    private CellValue evaluateFormula(Cell cell, FormulaEvaluator evaluator, WorkbookLease lease) {
+        if (lease == null) {
+            return evaluate(evaluator, cell);
+        }
+        
+        CachedWorkbook cached = lease.getSource();
+        Sheet sheet = cell.getSheet();
+        long cellKey = FormulaDependencyGraph.cellKey(
+                sheet.getWorkbook().getSheetIndex(sheet), cell.getRowIndex(), cell.getColumnIndex());
+        if (!cached.getDependencyGraph().isCacheable(cellKey)) {
+            return evaluate(evaluator, cell);
+        }
+        
+        CellValue cellValue = formulaResultCache.get(cached.getFileName(), lease.getVersion(), cellKey);
+        if (cellValue == null) {
+            cellValue = evaluate(evaluator, cell);
+            formulaResultCache.put(cached.getFileName(), lease.getVersion(), cellKey, cellValue);
+        }
+        return cellValue;
+    }
+    
+    /**
+     * 计算单元格，记录计算耗时
+     */
+    private CellValue evaluate(FormulaEvaluator evaluator, Cell cell) {
+        long start = System.nanoTime();
+        try {
+            return evaluator.evaluate(cell);
+        } finally {
+            requestMetrics.addPhase(Phase.EVALUATION, System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * 写入后使缓存失效
+     * 已缓存的工作簿带有依赖图时只清除被写单元格下游的公式结果，否则清除全部
+     * @param changedCells 被写入的单元格，为null表示写入未完成
+     */
+    private void invalidateAfterWrite(String fileName, Set<Long> changedCells) {
+        Set<Long> affected = null;
+        CachedWorkbook previous = workbookCache.peek(fileName);
+        if (changedCells != null && previous != null) {
+            affected = previous.getDependencyGraph().dependentsOf(changedCells);
+        }
+        
+        long version = workbookCache.invalidate(fileName);
+        formulaResultCache.onWrite(fileName, version, affected);
+    }
+    
     /**
      * 提取计算后的单元格值
      */
@@ -374,6 +2158,28 @@ public class ExcelService {
         }
     }
     
+    /**
+     * 提取公式引擎计算出的值
+     */
+    private void extractEvalValue(ExcelResponse.CellResult.CellResultBuilder builder, ValueEval valueEval) {
+        if (valueEval instanceof NumberEval) {
+            builder.value(((NumberEval) valueEval).getNumberValue())
+                   .valueType("NUMERIC");
+        } else if (valueEval instanceof StringEval) {
+            builder.value(((StringEval) valueEval).getStringValue())
+                   .valueType("STRING");
+        } else if (valueEval instanceof BoolEval) {
+            builder.value(((BoolEval) valueEval).getBooleanValue())
+                   .valueType("BOOLEAN");
+        } else if (valueEval instanceof ErrorEval) {
+            builder.value("#ERROR")
+                   .valueType("ERROR");
+        } else {
+            builder.value(null)
+                   .valueType("BLANK");
+        }
+    }
+    
     /**
      * 提取直接的单元格值
      */
@@ -410,6 +2216,26 @@ public class ExcelService {
         }
     }
     
+    /**
+     * 确定单元格所在的sheet（优先使用cell级别的sheetName）
+     */
+    private String resolveSheetName(String cellSheetName, String defaultSheetName, String cellAddress) {
+        String sheetName = cellSheetName != null ? cellSheetName : defaultSheetName;
+        if (sheetName == null || sheetName.trim().isEmpty()) {
+            throw new IllegalArgumentException("单元格 " + cellAddress + " 未指定sheet名称");
+        }
+        return sheetName;
+    }
+    
+    /**
+     * 获取已存在的单元格，sheet、行或单元格不存在时返回null
+     */
+    private Cell getExistingCell(Workbook workbook, String sheetName, CellReference cellRef) {
+        Sheet sheet = workbook.getSheet(sheetName);
+        Row row = sheet != null ? sheet.getRow(cellRef.getRow()) : null;
+        return row != null ? row.getCell(cellRef.getCol()) : null;
+    }
+    
     /**
      * 获取或创建Sheet
      */
@@ -422,6 +2248,44 @@ public class ExcelService {
         return sheet;
     }
     
+    /**
+     * 获取文件读锁（等待时间按配置），记录等待耗时
+     */
+    private boolean tryAcquireReadLock(String fileName) {
+        requestMetrics.setFileName(fileName);
+        long start = System.nanoTime();
+        try {
+            return lockManager.tryAcquireReadLock(fileName, excelConfig.getLock().getWaitTime());
+        } finally {
+            requestMetrics.addPhase(Phase.LOCK_WAIT, System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * 获取文件写锁（等待时间按配置），记录等待耗时
+     */
+    private boolean tryAcquireWriteLock(String fileName) {
+        requestMetrics.setFileName(fileName);
+        long start = System.nanoTime();
+        try {
+            return lockManager.tryAcquireWriteLock(fileName, excelConfig.getLock().getWaitTime());
+        } finally {
+            requestMetrics.addPhase(Phase.LOCK_WAIT, System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * 解析xlsx，记录解析耗时
+     */
+    private XSSFWorkbook parseWorkbook(InputStream in) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return new XSSFWorkbook(in);
+        } finally {
+            requestMetrics.addPhase(Phase.PARSE, System.nanoTime() - start);
+        }
+    }
+    
     /**
      * 获取Excel文件
      */
@@ -431,42 +2295,144 @@ public class ExcelService {
     }
     
     /**
-     * 备份文件
+     * 区域读取结果，按行收集值并归并每列的类型
      */
-    private void backupFile(File originalFile) throws IOException {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        String backupFileName = originalFile.getName().replace(".xlsx", "_" + timestamp + ".xlsx");
-        File backupFile = new File(originalFile.getParent(), "backup_" + backupFileName);
+    private static class RangeValues {
+        private final int firstRow;
+        private final int firstCol;
+        private final int lastCol;
+        private final String[] columnTypes;
+        private final List<Object[]> rows = new ArrayList<>();
+        
+        private RangeValues(int firstRow, int firstCol, int lastCol) {
+            this.firstRow = firstRow;
+            this.firstCol = firstCol;
+            this.lastCol = lastCol;
+            this.columnTypes = new String[lastCol - firstCol + 1];
+        }
+        
+        private void put(int row, int col, Object value, String valueType) {
+            if (value == null || "BLANK".equals(valueType)) {
+                return;
+            }
+            int c = col - firstCol;
+            rowAt(row - firstRow)[c] = value;
+            if (columnTypes[c] == null) {
+                columnTypes[c] = valueType;
+            } else if (!columnTypes[c].equals(valueType)) {
+                columnTypes[c] = "MIXED";
+            }
+        }
+        
+        private Object[] rowAt(int index) {
+            while (rows.size() <= index) {
+                rows.add(new Object[columnTypes.length]);
+            }
+            return rows.get(index);
+        }
         
-        Files.copy(originalFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        log.debug("备份文件: {} -> {}", originalFile.getName(), backupFile.getName());
+        private int lastRowSeen() {
+            return firstRow + rows.size() - 1;
+        }
         
-        // 清理旧版本
-        cleanOldBackups(originalFile);
+        private ExcelRangeResponse toResponse(String sheetName, int lastRow) {
+            // 补齐末尾的空行
+            if (lastRow >= firstRow) {
+                rowAt(lastRow - firstRow);
+            }
+            int rowCount = Math.max(lastRow - firstRow + 1, 0);
+            
+            List<String> types = new ArrayList<>(columnTypes.length);
+            for (String type : columnTypes) {
+                types.add(type != null ? type : "BLANK");
+            }
+            
+            String range = rowCount > 0
+                    ? new CellReference(firstRow, firstCol).formatAsString() + ":"
+                            + new CellReference(lastRow, lastCol).formatAsString()
+                    : "";
+            
+            return ExcelRangeResponse.builder()
+                    .success(true)
+                    .message("读取成功")
+                    .sheetName(sheetName)
+                    .range(range)
+                    .rowCount(rowCount)
+                    .columnCount(columnTypes.length)
+                    .columnTypes(types)
+                    .values(rows.subList(0, rowCount))
+                    .build();
+        }
     }
     
     /**
-     * 清理旧备份
+     * 写入值类型
      */
-    private void cleanOldBackups(File originalFile) {
-        File[] backupFiles = originalFile.getParentFile().listFiles((dir, name) -> 
-                name.startsWith("backup_") && name.contains(originalFile.getName().replace(".xlsx", ""))
-        );
+    private enum ValueKind {
+        STRING, NUMBER, BOOLEAN, FORMULA;
         
-        if (backupFiles != null && backupFiles.length > excelConfig.getStorage().getMaxVersions()) {
-            // 按修改时间排序
-            java.util.Arrays.sort(backupFiles, (f1, f2) -> 
-                    Long.compare(f1.lastModified(), f2.lastModified())
-            );
-            
-            // 删除最旧的文件
-            int deleteCount = backupFiles.length - excelConfig.getStorage().getMaxVersions();
-            for (int i = 0; i < deleteCount; i++) {
-                if (backupFiles[i].delete()) {
-                    log.debug("删除旧备份: {}", backupFiles[i].getName());
-                }
+        /**
+         * 解析请求中的类型，未知类型按字符串处理
+         */
+        private static ValueKind of(String valueType) {
+            if (valueType == null) {
+                return STRING;
             }
+            switch (valueType.toUpperCase()) {
+                case "NUMBER":
+                    return NUMBER;
+                case "BOOLEAN":
+                    return BOOLEAN;
+                case "FORMULA":
+                    return FORMULA;
+                default:
+                    return STRING;
+            }
+        }
+        
+        /**
+         * 按JSON值的类型推断
+         */
+        private static ValueKind infer(Object value) {
+            if (value instanceof Number) {
+                return NUMBER;
+            }
+            if (value instanceof Boolean) {
+                return BOOLEAN;
+            }
+            return STRING;
+        }
+    }
+    
+    /**
+     * 已校验并转换的单元格写入
+     */
+    private static class CellWrite {
+        private final String sheetName;
+        private final int row;
+        private final int col;
+        private final ValueKind kind;
+        private final Object value;
+        
+        private CellWrite(String sheetName, int row, int col, ValueKind kind, Object value) {
+            this.sheetName = sheetName;
+            this.row = row;
+            this.col = col;
+            this.kind = kind;
+            this.value = value;
         }
     }
+    
+    /**
+     * 一次写入涉及的修改
+     */
+    private static class AppliedChanges {
+        private final List<Cell> cells = new ArrayList<>();
+        private final Set<Long> cellKeys = new HashSet<>();
+        /**
+         * 是否新建了sheet或行（公式计算器缓存的表结构需要刷新）
+         */
+        private boolean structureChanged = false;
+        private boolean formulaChanged = false;
+    }
 }
-
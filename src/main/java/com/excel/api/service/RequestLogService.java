@@ -1,35 +1,189 @@
 package com.excel.api.service;
 
+import com.excel.api.config.AdminConfig;
 import com.excel.api.model.RequestLog;
 import com.excel.api.repository.RequestLogRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 请求日志服务（使用JPA持久化）
+ * 记录日志只放入有界无锁环形队列，由单独的写入线程按批用JDBC批量插入；队列满时按配置丢弃（计数）或等待，
+ * 关闭时写完队列中剩余的日志。统计不扫描日志表，由 {@link RequestStatsService} 的内存计数和汇总表提供
  */
 @Slf4j
 @Service
 @Transactional
 public class RequestLogService {
     
+    private static final String INSERT_SQL = "INSERT INTO request_logs (id, timestamp, method, path, token, token_name, "
+            + "status_code, duration, request_body, response_body, error_message, client_ip) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
     @Autowired
     private RequestLogRepository logRepository;
     
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private AdminConfig adminConfig;
+    
+    @Autowired
+    private RequestStatsService requestStatsService;
+    
+    private RingBuffer<RequestLog> buffer;
+    
+    private Thread writer;
+    
+    private volatile boolean running;
+    
+    /**
+     * 主键前缀，区分共用数据库的多个节点；后接时间和序号，按写入顺序递增
+     */
+    private final String idPrefix = String.format("%08x", ThreadLocalRandom.current().nextInt());
+    private final AtomicLong idSequence = new AtomicLong();
+    
+    private final AtomicLong accepted = new AtomicLong();
+    private volatile long processed;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    
+    @PostConstruct
+    public void start() {
+        buffer = new RingBuffer<>(adminConfig.getRequestLogs().getBufferSize());
+        running = true;
+        writer = new Thread(this::drainLoop, "request-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
     /**
-     * 记录请求日志
+     * 停止写入线程，写完队列中剩余的日志
      */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        if (writer.isAlive()) {
+            log.warn("请求日志写入线程未能及时结束，剩余 {} 条未写入", buffer.size());
+        }
+    }
+    
+    /**
+     * 记录请求日志（只放入队列，不访问数据库）
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void logRequest(RequestLog requestLog) {
-        requestLog.setId(UUID.randomUUID().toString());
         requestLog.setTimestamp(LocalDateTime.now());
+        requestStatsService.record(requestLog.getPath(), requestLog.getStatusCode(),
+                requestLog.getTokenName(), requestLog.getDuration());
         
-        logRepository.save(requestLog);
+        boolean offered = buffer.offer(requestLog);
+        if (!offered && Boolean.TRUE.equals(adminConfig.getRequestLogs().getBlockWhenFull())) {
+            // 等待写入线程腾出空间，已停止时放弃
+            while (!offered && running) {
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                offered = buffer.offer(requestLog);
+            }
+        }
+        if (!offered) {
+            dropped.increment();
+            return;
+        }
+        
+        accepted.incrementAndGet();
+        if (buffer.size() == adminConfig.getRequestLogs().getBatchSize()) {
+            // 攒够一批，提前唤醒写入线程
+            LockSupport.unpark(writer);
+        }
+    }
+    
+    /**
+     * 等待已放入队列的日志写入数据库
+     * @return 是否在超时前写完
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean flush(long timeoutMillis) {
+        long target = accepted.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (processed < target) {
+            if (System.nanoTime() - deadline > 0 || !writer.isAlive()) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+    
+    private void drainLoop() {
+        AdminConfig.RequestLogConfig config = adminConfig.getRequestLogs();
+        List<RequestLog> batch = new ArrayList<>(config.getBatchSize());
+        while (true) {
+            buffer.drainTo(batch, config.getBatchSize());
+            if (batch.isEmpty()) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMs()));
+                continue;
+            }
+            writeBatch(batch);
+            processed += batch.size();
+            batch.clear();
+        }
+    }
+    
+    private void writeBatch(List<RequestLog> batch) {
+        try {
+            for (RequestLog requestLog : batch) {
+                requestLog.setId(nextId(requestLog.getTimestamp()));
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, requestLog) -> {
+                ps.setString(1, requestLog.getId());
+                ps.setTimestamp(2, Timestamp.valueOf(requestLog.getTimestamp()));
+                ps.setString(3, requestLog.getMethod());
+                ps.setString(4, requestLog.getPath());
+                ps.setString(5, requestLog.getToken());
+                ps.setString(6, requestLog.getTokenName());
+                ps.setInt(7, requestLog.getStatusCode());
+                ps.setLong(8, requestLog.getDuration());
+                ps.setString(9, requestLog.getRequestBody());
+                ps.setString(10, requestLog.getResponseBody());
+                ps.setString(11, requestLog.getErrorMessage());
+                ps.setString(12, requestLog.getClientIp());
+            });
+            written.add(batch.size());
+            batches.increment();
+        } catch (Exception e) {
+            failed.add(batch.size());
+            log.warn("批量写入请求日志失败，丢弃 {} 条: {}", batch.size(), e.getMessage());
+        }
+    }
+    
+    private String nextId(LocalDateTime timestamp) {
+        long millis = Timestamp.valueOf(timestamp).getTime();
+        return String.format("%011x-%s-%08x", millis, idPrefix, idSequence.incrementAndGet());
     }
     
     /**
@@ -57,7 +211,8 @@ public class RequestLogService {
      * 清空日志
      */
     public void clearLogs() {
-        logRepository.deleteAll();
+        logRepository.deleteAllInBatch();
+        requestStatsService.clear();
         log.info("清空所有请求日志（从数据库删除）");
     }
     
@@ -67,16 +222,20 @@ public class RequestLogService {
     public Map<String, Object> getStatistics() {
         Map<String, Object> stats = new HashMap<>();
         
-        List<RequestLog> allLogs = logRepository.findAll();
-        
-        stats.put("totalRequests", allLogs.size());
-        stats.put("successRequests", allLogs.stream().filter(l -> l.getStatusCode() == 200).count());
-        stats.put("errorRequests", allLogs.stream().filter(l -> l.getStatusCode() != 200).count());
+        Map<String, Object> pipeline = new LinkedHashMap<>();
+        pipeline.put("buffered", buffer.size());
+        pipeline.put("capacity", buffer.capacity());
+        pipeline.put("accepted", accepted.get());
+        pipeline.put("dropped", dropped.sum());
+        pipeline.put("written", written.sum());
+        pipeline.put("failed", failed.sum());
+        pipeline.put("batches", batches.sum());
+        stats.put("pipeline", pipeline);
         
-        // 按路径统计
-        Map<String, Long> pathStats = allLogs.stream()
-                .collect(Collectors.groupingBy(RequestLog::getPath, Collectors.counting()));
-        stats.put("pathStats", pathStats);
+        // 总数及按路径、状态码、Token的分布，另有最近若干分钟的滑动窗口
+        stats.putAll(requestStatsService.getTotals());
+        stats.put("windows", requestStatsService.getWindows());
+        stats.put("rollup", requestStatsService.getRollupStatistics());
         
         return stats;
     }
@@ -0,0 +1,435 @@
+package com.excel.api.service;
+
+import com.excel.api.config.AdminConfig;
+import com.excel.api.repository.RequestStatRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 请求统计服务
+ * 请求线程只在内存中按分钟、路径、状态码、Token名称累加，最近若干分钟的滑动窗口直接由内存计算；
+ * 定时把各分钟新增的部分写入汇总表（request_stats），总数和历史时间范围用聚合SQL查询汇总表，
+ * 耗时与请求日志表的行数无关
+ */
+@Slf4j
+@Service
+public class RequestStatsService {
+
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    /**
+     * 统计结果中没有Token的请求
+     */
+    private static final String NO_TOKEN = "-";
+
+    private static final String INSERT_SQL = "INSERT INTO request_stats (id, bucket_start, path, status_code, token_name, "
+            + "request_count, total_duration, max_duration) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SUMMARY_SQL = "SELECT path, status_code, token_name, SUM(request_count), "
+            + "SUM(total_duration), MAX(max_duration) FROM request_stats";
+
+    /**
+     * 汇总表为空时由已有的请求日志生成（升级前记录的日志）
+     */
+    private static final String BACKFILL_SQL = "INSERT INTO request_stats (id, bucket_start, path, status_code, token_name, "
+            + "request_count, total_duration, max_duration) "
+            + "SELECT CAST(RANDOM_UUID() AS VARCHAR(50)), DATE_TRUNC('MINUTE', timestamp), path, status_code, token_name, "
+            + "COUNT(*), SUM(duration), MAX(duration) FROM request_logs "
+            + "GROUP BY DATE_TRUNC('MINUTE', timestamp), path, status_code, token_name";
+
+    /**
+     * 早期版本的汇总表按Token原文统计：换成Token名称后删除原文列
+     */
+    private static final String LEGACY_TOKEN_COLUMN_SQL = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS "
+            + "WHERE TABLE_NAME = 'REQUEST_STATS' AND COLUMN_NAME = 'TOKEN'";
+
+    private static final String MIGRATE_TOKEN_NAME_SQL = "UPDATE request_stats s SET token_name = "
+            + "(SELECT t.name FROM api_tokens t WHERE t.token = s.token) WHERE s.token_name IS NULL AND s.token IS NOT NULL";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RequestStatRepository statRepository;
+
+    @Autowired
+    private AdminConfig adminConfig;
+
+    /**
+     * 最近若干分钟的计数，按分钟号取模循环使用
+     */
+    private AtomicReferenceArray<MinuteSlot> slots;
+
+    /**
+     * 被新的一分钟覆盖、但可能还有未写入汇总表的计数的分钟
+     * 覆盖时正在累加的请求可能仍写入旧分钟，因此写完后再保留一轮才丢弃
+     */
+    private final ConcurrentLinkedQueue<MinuteSlot> retired = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 写入汇总表与合并查询互斥，避免同一部分既在表中又被当作未写入计算两次
+     */
+    private final Object flushLock = new Object();
+
+    private final LongAdder rollupRows = new LongAdder();
+    private final LongAdder rollupFailures = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        slots = new AtomicReferenceArray<>(adminConfig.getRequestLogs().getStatsWindowMinutes());
+        try {
+            Integer legacy = jdbcTemplate.queryForObject(LEGACY_TOKEN_COLUMN_SQL, Integer.class);
+            if (legacy != null && legacy > 0) {
+                int rows = jdbcTemplate.update(MIGRATE_TOKEN_NAME_SQL);
+                jdbcTemplate.execute("ALTER TABLE request_stats DROP COLUMN token");
+                log.info("请求统计汇总改为按Token名称统计，已转换 {} 条", rows);
+            }
+        } catch (Exception e) {
+            log.warn("转换请求统计汇总的Token列失败: {}", e.getMessage());
+        }
+        try {
+            if (!hasRows("request_stats") && hasRows("request_logs")) {
+                int rows = jdbcTemplate.update(BACKFILL_SQL);
+                log.info("由已有请求日志生成 {} 条统计汇总", rows);
+            }
+        } catch (Exception e) {
+            log.warn("生成请求统计汇总失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭前写入尚未汇总的统计
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushRollups();
+    }
+
+    /**
+     * 记录一次请求（只在内存中累加）
+     * @param tokenName Token名称，不记录Token原文
+     */
+    public void record(String path, int statusCode, String tokenName, long durationMillis) {
+        record(System.currentTimeMillis(), path, statusCode, tokenName, durationMillis);
+    }
+
+    void record(long timeMillis, String path, int statusCode, String tokenName, long durationMillis) {
+        long minute = timeMillis / MINUTE_MILLIS;
+        Counter counter = slotOf(minute).counters.computeIfAbsent(new StatKey(path, statusCode, tokenName), k -> new Counter());
+        counter.count.increment();
+        counter.duration.add(durationMillis);
+        counter.max.accumulate(durationMillis);
+    }
+
+    private MinuteSlot slotOf(long minute) {
+        int index = (int) (minute % slots.length());
+        while (true) {
+            MinuteSlot slot = slots.get(index);
+            if (slot != null && slot.minute >= minute) {
+                return slot;
+            }
+            // 覆盖窗口之前的一分钟；其中未写入汇总表的计数留给下次定时任务
+            MinuteSlot fresh = new MinuteSlot(minute);
+            if (slots.compareAndSet(index, slot, fresh)) {
+                if (slot != null) {
+                    retired.add(slot);
+                }
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * 把各分钟新增的计数写入汇总表
+     * 每次只写上次之后的增量，同一分钟可能写入多行，查询时求和；写入失败时下次重试
+     */
+    @Scheduled(fixedDelayString = "${admin.request-logs.stats-rollup-interval-ms:60000}")
+    public void flushRollups() {
+        synchronized (flushLock) {
+            List<Delta> deltas = new ArrayList<>();
+            forEachSlot(slot -> slot.counters.forEach((key, counter) -> {
+                long count = counter.count.sum();
+                if (count > counter.flushedCount) {
+                    deltas.add(new Delta(slot, key, counter, count, counter.duration.sum()));
+                }
+            }));
+            if (deltas.isEmpty()) {
+                releaseRetired(deltas);
+                return;
+            }
+
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, deltas, deltas.size(), (ps, delta) -> {
+                    ps.setString(1, UUID.randomUUID().toString());
+                    ps.setTimestamp(2, new Timestamp(delta.slot.minute * MINUTE_MILLIS));
+                    ps.setString(3, delta.key.path);
+                    ps.setInt(4, delta.key.statusCode);
+                    ps.setString(5, delta.key.tokenName);
+                    ps.setLong(6, delta.count - delta.counter.flushedCount);
+                    ps.setLong(7, delta.duration - delta.counter.flushedDuration);
+                    ps.setLong(8, delta.counter.max.get());
+                });
+            } catch (Exception e) {
+                rollupFailures.increment();
+                log.warn("写入请求统计汇总失败，下次重试: {}", e.getMessage());
+                return;
+            }
+            for (Delta delta : deltas) {
+                delta.counter.flushedCount = delta.count;
+                delta.counter.flushedDuration = delta.duration;
+            }
+            rollupRows.add(deltas.size());
+            releaseRetired(deltas);
+        }
+    }
+
+    /**
+     * 丢弃已被覆盖且计数已全部写入的分钟：被覆盖后至少经过一轮写入，且本轮没有新增
+     */
+    private void releaseRetired(List<Delta> written) {
+        Set<MinuteSlot> active = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Delta delta : written) {
+            active.add(delta.slot);
+        }
+        retired.removeIf(slot -> slot.flushesSinceRetired++ > 0 && !active.contains(slot));
+    }
+
+    /**
+     * 全部请求的统计
+     */
+    public Map<String, Object> getTotals() {
+        return getRange(null, null);
+    }
+
+    /**
+     * 时间范围内的统计（按分钟对齐，to不含），为null表示不限
+     * 汇总表按路径、状态码、Token聚合，再加上内存中尚未写入的部分
+     */
+    public Map<String, Object> getRange(LocalDateTime from, LocalDateTime to) {
+        StringBuilder sql = new StringBuilder(SUMMARY_SQL);
+        List<Object> args = new ArrayList<>();
+        if (from != null) {
+            sql.append(args.isEmpty() ? " WHERE" : " AND").append(" bucket_start >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(args.isEmpty() ? " WHERE" : " AND").append(" bucket_start < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        sql.append(" GROUP BY path, status_code, token_name");
+
+        long fromMillis = from != null ? Timestamp.valueOf(from).getTime() : Long.MIN_VALUE;
+        long toMillis = to != null ? Timestamp.valueOf(to).getTime() : Long.MAX_VALUE;
+
+        Summary summary = new Summary();
+        synchronized (flushLock) {
+            jdbcTemplate.query(sql.toString(), (ResultSet rs) -> {
+                summary.add(rs.getString(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getLong(5), rs.getLong(6));
+            }, args.toArray());
+
+            forEachSlot(slot -> {
+                long start = slot.minute * MINUTE_MILLIS;
+                if (start >= fromMillis && start < toMillis) {
+                    slot.counters.forEach((key, counter) -> summary.add(key.path, key.statusCode, key.tokenName,
+                            counter.count.sum() - counter.flushedCount,
+                            counter.duration.sum() - counter.flushedDuration,
+                            counter.max.get()));
+                }
+            });
+        }
+        return summary.toMap();
+    }
+
+    /**
+     * 最近若干分钟（含当前分钟）的统计，只由内存计算
+     */
+    public Map<String, Object> getWindow(int minutes) {
+        long current = System.currentTimeMillis() / MINUTE_MILLIS;
+        Summary summary = new Summary();
+        forEachSlot(slot -> {
+            if (slot.minute > current - minutes && slot.minute <= current) {
+                slot.counters.forEach((key, counter) -> summary.add(key.path, key.statusCode, key.tokenName,
+                        counter.count.sum(), counter.duration.sum(), counter.max.get()));
+            }
+        });
+        return summary.toMap();
+    }
+
+    /**
+     * 1分钟、5分钟和整个窗口的统计
+     */
+    public Map<String, Object> getWindows() {
+        Map<String, Object> windows = new LinkedHashMap<>();
+        for (int minutes : new TreeSet<>(Arrays.asList(1, 5, slots.length()))) {
+            if (minutes <= slots.length()) {
+                windows.put(minutes + "m", getWindow(minutes));
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * 清空统计（与清空请求日志一起）
+     */
+    public void clear() {
+        synchronized (flushLock) {
+            statRepository.deleteAllInBatch();
+            for (int i = 0; i < slots.length(); i++) {
+                slots.set(i, null);
+            }
+            retired.clear();
+        }
+    }
+
+    public Map<String, Object> getRollupStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowMinutes", slots.length());
+        stats.put("rowsWritten", rollupRows.sum());
+        stats.put("failures", rollupFailures.sum());
+        return stats;
+    }
+
+    private boolean hasRows(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.query("SELECT 1 FROM " + table + " LIMIT 1", ResultSet::next));
+    }
+
+    /**
+     * 窗口内的各分钟，以及已被覆盖但还未丢弃的分钟
+     */
+    private void forEachSlot(Consumer<MinuteSlot> action) {
+        for (int i = 0; i < slots.length(); i++) {
+            MinuteSlot slot = slots.get(i);
+            if (slot != null) {
+                action.accept(slot);
+            }
+        }
+        retired.forEach(action);
+    }
+
+    private static final class StatKey {
+        private final String path;
+        private final int statusCode;
+        private final String tokenName;
+
+        private StatKey(String path, int statusCode, String tokenName) {
+            this.path = path;
+            this.statusCode = statusCode;
+            this.tokenName = tokenName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StatKey other)) {
+                return false;
+            }
+            return statusCode == other.statusCode && Objects.equals(path, other.path)
+                    && Objects.equals(tokenName, other.tokenName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, statusCode, tokenName);
+        }
+    }
+
+    /**
+     * 一分钟内一个键的计数；flushed* 为已写入汇总表的部分，只在flushLock内读写
+     */
+    private static final class Counter {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder duration = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private long flushedCount;
+        private long flushedDuration;
+    }
+
+    private static final class MinuteSlot {
+        private final long minute;
+        private final ConcurrentHashMap<StatKey, Counter> counters = new ConcurrentHashMap<>();
+
+        /**
+         * 被覆盖后经过的写入轮数，只在flushLock内读写
+         */
+        private int flushesSinceRetired;
+
+        private MinuteSlot(long minute) {
+            this.minute = minute;
+        }
+    }
+
+    /**
+     * 待写入汇总表的增量，count/duration 为取增量时的累计值
+     */
+    private static final class Delta {
+        private final MinuteSlot slot;
+        private final StatKey key;
+        private final Counter counter;
+        private final long count;
+        private final long duration;
+
+        private Delta(MinuteSlot slot, StatKey key, Counter counter, long count, long duration) {
+            this.slot = slot;
+            this.key = key;
+            this.counter = counter;
+            this.count = count;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * 合并各键的计数，生成总数及按路径、状态码、Token的分布
+     */
+    private static final class Summary {
+        private long requests;
+        private long success;
+        private long duration;
+        private long max;
+        private final Map<String, Long> paths = new HashMap<>();
+        private final Map<String, Long> statuses = new TreeMap<>();
+        private final Map<String, Long> tokens = new HashMap<>();
+
+        private void add(String path, int statusCode, String tokenName, long count, long totalDuration, long maxDuration) {
+            if (count <= 0) {
+                return;
+            }
+            requests += count;
+            if (statusCode == 200) {
+                success += count;
+            }
+            duration += totalDuration;
+            max = Math.max(max, maxDuration);
+            paths.merge(String.valueOf(path), count, Long::sum);
+            statuses.merge(String.valueOf(statusCode), count, Long::sum);
+            tokens.merge(tokenName != null ? tokenName : NO_TOKEN, count, Long::sum);
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("totalRequests", requests);
+            stats.put("successRequests", success);
+            stats.put("errorRequests", requests - success);
+            stats.put("avgMillis", requests > 0 ? (double) duration / requests : 0.0);
+            stats.put("maxMillis", max);
+            stats.put("pathStats", paths);
+            stats.put("statusStats", statuses);
+            stats.put("tokenStats", tokens);
+            return stats;
+        }
+    }
+}
@@ -3,16 +3,29 @@ package com.excel.api.service;
 import com.excel.api.config.AdminConfig;
 import com.excel.api.model.ApiToken;
 import com.excel.api.repository.ApiTokenRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Token管理服务（使用JPA持久化）
+ * 所有Token缓存在内存中，请求校验不访问数据库；使用次数和最后使用时间先累加在内存，定时批量写入数据库，
+ * 另按较长的间隔重新加载Token以获取其他节点的修改
  */
 @Slf4j
 @Service
@@ -25,6 +38,64 @@ public class TokenService {
     @Autowired
     private ApiTokenRepository tokenRepository;
     
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    private static final String ADD_USAGE_SQL =
+            "UPDATE api_tokens SET usage_count = usage_count + ?, last_used_at = ? WHERE id = ?";
+    
+    /**
+     * token值 -> 缓存项
+     */
+    private final ConcurrentHashMap<String, CachedToken> cache = new ConcurrentHashMap<>();
+    
+    /**
+     * 最近从缓存删除的token值 -> 删除时间，防止并发的重新加载用删除前的快照把它加回来
+     */
+    private final ConcurrentHashMap<String, Long> removed = new ConcurrentHashMap<>();
+    
+    /**
+     * Token的校验信息和未写入数据库的使用统计
+     */
+    private static final class CachedToken {
+        private final String id;
+        private final String name;
+        private final boolean active;
+        private final LocalDateTime expiresAt;
+        private final LongAdder pendingUses;
+        private final LongAccumulator lastUsedAt;
+        private final long loadedAt = System.nanoTime();
+        
+        private CachedToken(ApiToken token, LongAdder pendingUses, LongAccumulator lastUsedAt) {
+            this.id = token.getId();
+            this.name = token.getName();
+            this.active = token.isActive();
+            this.expiresAt = token.getExpiresAt();
+            this.pendingUses = pendingUses;
+            this.lastUsedAt = lastUsedAt;
+        }
+        
+        private static CachedToken of(ApiToken token) {
+            return new CachedToken(token, new LongAdder(), new LongAccumulator(Math::max, 0L));
+        }
+        
+        /**
+         * Token信息变化后替换，保留未写入的统计
+         */
+        private CachedToken with(ApiToken token) {
+            return new CachedToken(token, pendingUses, lastUsedAt);
+        }
+    }
+    
+    /**
+     * 启动时加载全部Token
+     */
+    @PostConstruct
+    public void loadTokens() {
+        refreshCache();
+        log.info("加载Token到内存: {} 个", cache.size());
+    }
+    
     /**
      * 创建新token
      */
@@ -49,6 +120,7 @@ public class TokenService {
                 .build();
         
         tokenRepository.save(token);
+        afterCommit(() -> cache.put(tokenValue, CachedToken.of(token)));
         
         log.info("创建新Token: {} by {} (持久化到数据库)", name, createdBy);
         
@@ -56,37 +128,130 @@ public class TokenService {
     }
     
     /**
-     * 验证token
+     * 验证token（只读内存，不开启事务）
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean validateToken(String token) {
         if (token == null || token.isEmpty()) {
             return false;
         }
         
-        Optional<ApiToken> apiTokenOpt = tokenRepository.findByToken(token);
+        CachedToken cached = cache.get(token);
         
-        if (apiTokenOpt.isEmpty()) {
+        if (cached == null || !cached.active) {
             return false;
         }
         
-        ApiToken apiToken = apiTokenOpt.get();
-        
-        if (!apiToken.isActive()) {
-            return false;
-        }
-        
-        if (apiToken.getExpiresAt().isBefore(LocalDateTime.now())) {
+        if (cached.expiresAt != null && cached.expiresAt.isBefore(LocalDateTime.now())) {
             return false;
         }
         
-        // 更新使用统计（持久化）
-        apiToken.setUsageCount(apiToken.getUsageCount() + 1);
-        apiToken.setLastUsedAt(LocalDateTime.now());
-        tokenRepository.save(apiToken);
+        // 使用统计先记在内存，定时写入数据库
+        cached.pendingUses.increment();
+        cached.lastUsedAt.accumulate(System.currentTimeMillis());
         
         return true;
     }
     
+    /**
+     * 获取token名称（只读内存）
+     * @return 名称，token不存在时返回null
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public String getTokenName(String token) {
+        CachedToken cached = token != null ? cache.get(token) : null;
+        return cached != null ? cached.name : null;
+    }
+    
+    /**
+     * 将内存中的使用统计用一次批量更新写入数据库
+     */
+    @Scheduled(fixedDelayString = "${admin.tokens.usage-flush-interval-ms:5000}")
+    public void flushUsage() {
+        List<CachedToken> used = new ArrayList<>();
+        List<Object[]> args = new ArrayList<>();
+        for (CachedToken cached : cache.values()) {
+            long uses = cached.pendingUses.sum();
+            if (uses == 0) {
+                continue;
+            }
+            used.add(cached);
+            args.add(new Object[]{uses, new Timestamp(cached.lastUsedAt.get()), cached.id});
+        }
+        if (used.isEmpty()) {
+            return;
+        }
+        
+        jdbcTemplate.batchUpdate(ADD_USAGE_SQL, args);
+        // 只减去已写入的部分，期间新增的使用留到下次
+        for (int i = 0; i < used.size(); i++) {
+            used.get(i).pendingUses.add(-(Long) args.get(i)[0]);
+        }
+        log.debug("写入Token使用统计: {} 个", used.size());
+    }
+    
+    /**
+     * 重新加载Token，获取其他节点的创建、禁用和删除
+     * 本节点的修改提交后已直接更新缓存，这里只是兜底，间隔比写入使用统计长得多
+     */
+    @Scheduled(fixedDelayString = "${admin.tokens.refresh-interval-ms:60000}",
+            initialDelayString = "${admin.tokens.refresh-interval-ms:60000}")
+    public void refreshTokens() {
+        refreshCache();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flushUsage();
+        } catch (Exception e) {
+            log.warn("关闭时写入Token使用统计失败: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 按数据库重建缓存，保留未写入的使用统计
+     * 读取期间本节点刚更新过的缓存项以缓存为准，数据库快照可能早于那次提交
+     */
+    private void refreshCache() {
+        long start = System.nanoTime();
+        Map<String, ApiToken> tokens = new HashMap<>();
+        for (ApiToken token : tokenRepository.findAll()) {
+            tokens.put(token.getToken(), token);
+        }
+        tokens.forEach((value, token) -> cache.compute(value, (k, cached) -> {
+            if (cached == null) {
+                Long removedAt = removed.get(value);
+                return removedAt != null && removedAt - start > 0 ? null : CachedToken.of(token);
+            }
+            return cached.loadedAt - start > 0 ? cached : cached.with(token);
+        }));
+        cache.entrySet().removeIf(entry ->
+                !tokens.containsKey(entry.getKey()) && entry.getValue().loadedAt - start < 0);
+        removed.values().removeIf(removedAt -> removedAt - start < 0);
+    }
+    
+    private void evict(String token) {
+        removed.put(token, System.nanoTime());
+        cache.remove(token);
+    }
+    
+    /**
+     * 事务提交后更新缓存，回滚时不更新
+     */
+    private void afterCommit(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+    
     /**
      * 获取token信息
      */
@@ -115,6 +280,7 @@ public class TokenService {
         tokenRepository.findByToken(token).ifPresent(apiToken -> {
             apiToken.setActive(false);
             tokenRepository.save(apiToken);
+            afterCommit(() -> cache.computeIfPresent(token, (k, cached) -> cached.with(apiToken)));
             log.info("禁用Token: {} (持久化到数据库)", apiToken.getName());
         });
     }
@@ -126,6 +292,8 @@ public class TokenService {
         tokenRepository.findByToken(token).ifPresent(apiToken -> {
             apiToken.setActive(true);
             tokenRepository.save(apiToken);
+            afterCommit(() -> cache.compute(token,
+                    (k, cached) -> cached != null ? cached.with(apiToken) : CachedToken.of(apiToken)));
             log.info("启用Token: {} (持久化到数据库)", apiToken.getName());
         });
     }
@@ -136,6 +304,7 @@ public class TokenService {
     public void deleteToken(String token) {
         tokenRepository.findByToken(token).ifPresent(apiToken -> {
             tokenRepository.delete(apiToken);
+            afterCommit(() -> evict(token));
             log.info("删除Token: {} (从数据库删除)", apiToken.getName());
         });
     }
@@ -154,6 +323,7 @@ public class TokenService {
         LocalDateTime now = LocalDateTime.now();
         List<ApiToken> expiredTokens = tokenRepository.findByExpiresAtBefore(now);
         tokenRepository.deleteAll(expiredTokens);
+        afterCommit(() -> expiredTokens.forEach(token -> evict(token.getToken())));
         log.info("清理过期Token: {} 个", expiredTokens.size());
     }
 }
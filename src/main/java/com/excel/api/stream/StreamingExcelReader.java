@@ -0,0 +1,353 @@
+package com.excel.api.stream;
+
+import com.excel.api.exception.ExcelOperationException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ooxml.POIXMLTypeLoader;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTDefinedName;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
+import org.springframework.stereotype.Component;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 基于SAX的流式读取
+ * 不构建DOM，按行扫描sheet XML，只把请求区域内的单元格交给回调；扫描过所需的最大行后立即停止解析该sheet。
+ * 公式单元格返回文件中保存的计算结果，不重新计算（文件中没有保存结果时为空）；
+ * 共享公式的从属单元格在XML中没有公式文本，formula为null
+ */
+@Slf4j
+@Component
+public class StreamingExcelReader {
+
+    /**
+     * 单元格回调
+     */
+    @FunctionalInterface
+    public interface CellHandler {
+        /**
+         * @param row 行号（从0开始）
+         * @param col 列号（从0开始）
+         * @param valueType 值类型，与普通读取一致：STRING/NUMERIC/BOOLEAN/DATE/ERROR/BLANK
+         * @param formula 公式文本，非公式单元格为null
+         */
+        void cell(int row, int col, String valueType, Object value, String formula);
+    }
+
+    /**
+     * 单个sheet的扫描范围（行列均从0开始，含边界）
+     */
+    public static class SheetScan {
+        private final int firstRow;
+        private final int lastRow;
+        private final int firstCol;
+        private final int lastCol;
+        private final CellHandler handler;
+
+        public SheetScan(int firstRow, int lastRow, int firstCol, int lastCol, CellHandler handler) {
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.firstCol = firstCol;
+            this.lastCol = lastCol;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * 扫描文件中的若干sheet
+     * @param scans sheet名称 -> 扫描范围，sheet名称不区分大小写
+     */
+    public void scan(File excelFile, Map<String, SheetScan> scans) throws IOException {
+        Map<String, SheetScan> pending = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        pending.putAll(scans);
+        long start = System.nanoTime();
+
+        try (OPCPackage pkg = OPCPackage.open(excelFile, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            SheetContext context = new SheetContext(pkg, reader.getStylesTable());
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext() && !pending.isEmpty()) {
+                try (InputStream sheetData = sheets.next()) {
+                    SheetScan scan = pending.remove(sheets.getSheetName());
+                    if (scan != null) {
+                        parseSheet(sheetData, scan, context);
+                    }
+                }
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("流式解析Excel失败: " + e.getMessage(), e);
+        }
+
+        if (!pending.isEmpty()) {
+            throw new ExcelOperationException("Sheet不存在: " + pending.keySet().iterator().next());
+        }
+
+        log.debug("流式读取完成: {}, sheet数: {}, 耗时: {}ms",
+                excelFile.getName(), scans.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 查找工作簿级命名区域的引用公式，只解析workbook.xml
+     * @return 未定义时返回null
+     */
+    public String resolveDefinedName(File excelFile, String name) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(excelFile, PackageAccess.READ);
+             InputStream workbookData = new XSSFReader(pkg).getWorkbookData()) {
+            CTWorkbook workbook = WorkbookDocument.Factory
+                    .parse(workbookData, POIXMLTypeLoader.DEFAULT_XML_OPTIONS)
+                    .getWorkbook();
+            if (workbook.getDefinedNames() == null) {
+                return null;
+            }
+            for (CTDefinedName definedName : workbook.getDefinedNames().getDefinedNameArray()) {
+                if (!definedName.isSetLocalSheetId() && definedName.getName().equalsIgnoreCase(name)) {
+                    return definedName.getStringValue();
+                }
+            }
+            return null;
+        } catch (OpenXML4JException | XmlException e) {
+            throw new IOException("读取命名区域失败: " + e.getMessage(), e);
+        }
+    }
+
+    private void parseSheet(InputStream sheetData, SheetScan scan, SheetContext context)
+            throws IOException, SAXException, ParserConfigurationException {
+        XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(new SheetHandler(scan, context));
+        try {
+            parser.parse(new InputSource(sheetData));
+        } catch (StopParsingException e) {
+            // 已越过请求的最大行
+        }
+    }
+
+    /**
+     * 文件级共享数据：共享字符串表和样式表
+     */
+    private static final class SheetContext {
+        private final OPCPackage pkg;
+        private final StylesTable styles;
+        private final Map<Integer, Boolean> dateStyles = new HashMap<>();
+        private ReadOnlySharedStringsTable sharedStrings;
+
+        private SheetContext(OPCPackage pkg, StylesTable styles) {
+            this.pkg = pkg;
+            this.styles = styles;
+        }
+
+        /**
+         * 共享字符串表在第一次遇到共享字符串单元格时才加载
+         */
+        private String sharedString(int index) throws SAXException {
+            if (sharedStrings == null) {
+                try {
+                    sharedStrings = new ReadOnlySharedStringsTable(pkg, false);
+                } catch (IOException e) {
+                    throw new SAXException("读取共享字符串表失败", e);
+                }
+            }
+            return sharedStrings.getItemAt(index).getString();
+        }
+
+        private boolean isDateStyle(int styleIndex) {
+            if (styles == null) {
+                return false;
+            }
+            return dateStyles.computeIfAbsent(styleIndex, idx -> {
+                XSSFCellStyle style = styles.getStyleAt(idx);
+                return style != null && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+            });
+        }
+    }
+
+    /**
+     * sheet XML处理器
+     */
+    private static final class SheetHandler extends DefaultHandler {
+        private final SheetScan scan;
+        private final SheetContext context;
+
+        private int row = -1;
+        private int col = -1;
+        private boolean inRange;
+        private String cellType;
+        private int styleIndex;
+
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+        private boolean hasFormula;
+        private boolean hasValue;
+        private StringBuilder capture;
+        private boolean inInlineString;
+
+        private SheetHandler(SheetScan scan, SheetContext context) {
+            this.scan = scan;
+            this.context = context;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            String name = localName.isEmpty() ? qName : localName;
+            switch (name) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    row = r != null ? Integer.parseInt(r) - 1 : row + 1;
+                    col = -1;
+                    if (row > scan.lastRow) {
+                        throw new StopParsingException();
+                    }
+                    break;
+                case "c":
+                    col = parseColumn(attributes.getValue("r"), col + 1);
+                    inRange = row >= scan.firstRow && col >= scan.firstCol && col <= scan.lastCol;
+                    if (inRange) {
+                        cellType = attributes.getValue("t");
+                        String s = attributes.getValue("s");
+                        styleIndex = s != null ? Integer.parseInt(s) : 0;
+                        value.setLength(0);
+                        formula.setLength(0);
+                        hasFormula = false;
+                        hasValue = false;
+                    }
+                    break;
+                case "f":
+                    if (inRange) {
+                        hasFormula = true;
+                        capture = formula;
+                    }
+                    break;
+                case "v":
+                    if (inRange) {
+                        hasValue = true;
+                        capture = value;
+                    }
+                    break;
+                case "is":
+                    inInlineString = true;
+                    break;
+                case "t":
+                    if (inRange && inInlineString) {
+                        hasValue = true;
+                        capture = value;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            String name = localName.isEmpty() ? qName : localName;
+            switch (name) {
+                case "f":
+                case "v":
+                case "t":
+                    capture = null;
+                    break;
+                case "is":
+                    inInlineString = false;
+                    break;
+                case "c":
+                    if (inRange) {
+                        emitCell();
+                        inRange = false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (capture != null) {
+                capture.append(ch, start, length);
+            }
+        }
+
+        private void emitCell() throws SAXException {
+            String formulaText = hasFormula && formula.length() > 0 ? formula.toString() : null;
+
+            if (!hasValue) {
+                scan.handler.cell(row, col, "BLANK", null, formulaText);
+                return;
+            }
+
+            String text = value.toString();
+            String type = cellType != null ? cellType : "n";
+            switch (type) {
+                case "s":
+                    scan.handler.cell(row, col, "STRING", context.sharedString(Integer.parseInt(text.trim())), formulaText);
+                    break;
+                case "inlineStr":
+                case "str":
+                    scan.handler.cell(row, col, "STRING", text, formulaText);
+                    break;
+                case "b":
+                    scan.handler.cell(row, col, "BOOLEAN", "1".equals(text.trim()), formulaText);
+                    break;
+                case "e":
+                    scan.handler.cell(row, col, "ERROR", text, formulaText);
+                    break;
+                default:
+                    double number = Double.parseDouble(text);
+                    // 与普通读取一致：公式结果不按日期格式转换
+                    if (!hasFormula && context.isDateStyle(styleIndex)) {
+                        scan.handler.cell(row, col, "DATE", DateUtil.getJavaDate(number).toString(), null);
+                    } else {
+                        scan.handler.cell(row, col, "NUMERIC", number, formulaText);
+                    }
+            }
+        }
+
+        /**
+         * 从单元格地址（如"AB12"）中解析列号，不创建CellReference
+         */
+        private static int parseColumn(String ref, int fallback) {
+            if (ref == null) {
+                return fallback;
+            }
+            int col = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                col = col * 26 + (c - 'A' + 1);
+            }
+            return col - 1;
+        }
+    }
+
+    /**
+     * 提前结束解析
+     */
+    private static final class StopParsingException extends SAXException {
+        private StopParsingException() {
+            super("stop");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.excel.api.stream;
+
+import com.excel.api.config.ExcelConfig;
+import com.excel.api.exception.ExcelOperationException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 基于SXSSF的流式写入
+ * 行数据逐行从NDJSON输入流读取（每行一个JSON数组），内存中只保留最近 excel.storage.streaming-row-window 行，
+ * 更早的行压缩写入临时目录 excel.storage.temp-path
+ */
+@Slf4j
+@Component
+public class StreamingExcelWriter {
+
+    @Autowired
+    private ExcelConfig excelConfig;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 打开流式工作簿
+     * @param existingFile 追加时传入已有文件（已有内容需完整加载，新增行才是流式的），新建时传null
+     */
+    public SXSSFWorkbook open(File existingFile) throws IOException {
+        XSSFWorkbook template;
+        if (existingFile != null) {
+            try (FileInputStream fis = new FileInputStream(existingFile)) {
+                template = new XSSFWorkbook(fis);
+            }
+        } else {
+            template = new XSSFWorkbook();
+        }
+
+        ExcelConfig.Storage storage = excelConfig.getStorage();
+        return new SXSSFWorkbook(template, storage.getStreamingRowWindow(),
+                Boolean.TRUE.equals(storage.getCompressTempFiles()));
+    }
+
+    /**
+     * 将NDJSON行追加到sheet末尾，sheet不存在时新建
+     * 每行为一个JSON数组：字符串、数字、布尔值按对应类型写入，null跳过
+     * @return 写入的行数
+     */
+    public int appendRows(SXSSFWorkbook workbook, String sheetName, InputStream ndjson) throws IOException {
+        Sheet sheet = workbook.getSheet(sheetName);
+        int rowIndex = 0;
+        if (sheet == null) {
+            sheet = workbook.createSheet(sheetName);
+        } else {
+            // SXSSF只能在模板已有行之后追加
+            XSSFSheet existing = workbook.getXSSFWorkbook().getSheet(sheetName);
+            rowIndex = existing.getPhysicalNumberOfRows() > 0 ? existing.getLastRowNum() + 1 : 0;
+        }
+
+        int written = 0;
+        // 逐个token读取，不为每行构建JSON树
+        try (JsonParser parser = objectMapper.getFactory().createParser(ndjson)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_ARRAY) {
+                    throw new ExcelOperationException("第" + (written + 1) + "行不是JSON数组");
+                }
+
+                Row row = sheet.createRow(rowIndex++);
+                int col = 0;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == null) {
+                        throw new ExcelOperationException("第" + (written + 1) + "行JSON数组不完整");
+                    }
+                    setCellValue(row, col++, token, parser);
+                }
+                written++;
+            }
+        }
+
+        log.debug("流式写入行完成: sheet: {}, 行数: {}", sheetName, written);
+        return written;
+    }
+
+    private void setCellValue(Row row, int col, JsonToken token, JsonParser parser) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                row.createCell(col).setCellValue(parser.getDoubleValue());
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                row.createCell(col).setCellValue(token == JsonToken.VALUE_TRUE);
+                break;
+            case VALUE_STRING:
+                row.createCell(col).setCellValue(parser.getText());
+                break;
+            default:
+                // 嵌套对象或数组按JSON文本写入
+                row.createCell(col).setCellValue(objectMapper.readTree(parser).toString());
+        }
+    }
+}
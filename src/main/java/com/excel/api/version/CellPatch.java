@@ -0,0 +1,122 @@
+package com.excel.api.version;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellReference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单元格级补丁：一次写入后被修改单元格的最终内容
+ * 在上一个版本上依次应用即得到新版本
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CellPatch {
+
+    private List<Entry> cells = new ArrayList<>();
+
+    /**
+     * 单个单元格的内容
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        private String sheetName;
+        private String cellAddress;
+
+        /**
+         * STRING/NUMBER/BOOLEAN/FORMULA/BLANK
+         */
+        private String valueType;
+
+        /**
+         * 值，公式单元格为公式文本（不含=）
+         */
+        private Object value;
+    }
+
+    /**
+     * 记录被修改单元格当前的内容，同一单元格只保留一条
+     */
+    public static CellPatch of(Collection<Cell> changed) {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (Cell cell : changed) {
+            entries.put(cell.getSheet().getSheetName() + "!" + cell.getAddress().formatAsString(), entryOf(cell));
+        }
+        return new CellPatch(new ArrayList<>(entries.values()));
+    }
+
+    /**
+     * 将补丁应用到工作簿
+     */
+    public void applyTo(Workbook workbook) {
+        for (Entry entry : cells) {
+            Sheet sheet = workbook.getSheet(entry.sheetName);
+            if (sheet == null) {
+                sheet = workbook.createSheet(entry.sheetName);
+            }
+            CellReference ref = new CellReference(entry.cellAddress);
+            Row row = sheet.getRow(ref.getRow());
+            if (row == null) {
+                row = sheet.createRow(ref.getRow());
+            }
+            Cell cell = row.getCell(ref.getCol());
+            if (cell == null) {
+                cell = row.createCell(ref.getCol());
+            }
+
+            // 先清除原有公式，否则设置值只会改变公式的缓存结果
+            cell.setBlank();
+            switch (entry.valueType) {
+                case "FORMULA":
+                    cell.setCellFormula((String) entry.value);
+                    break;
+                case "NUMBER":
+                    cell.setCellValue(((Number) entry.value).doubleValue());
+                    break;
+                case "BOOLEAN":
+                    cell.setCellValue((Boolean) entry.value);
+                    break;
+                case "STRING":
+                    cell.setCellValue((String) entry.value);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 单元格当前的内容
+     */
+    public static Entry entryOf(Cell cell) {
+        String sheetName = cell.getSheet().getSheetName();
+        String address = cell.getAddress().formatAsString();
+        CellType type = cell.getCellType();
+        switch (type) {
+            case FORMULA:
+                return new Entry(sheetName, address, "FORMULA", cell.getCellFormula());
+            case NUMERIC:
+                return new Entry(sheetName, address, "NUMBER", cell.getNumericCellValue());
+            case BOOLEAN:
+                return new Entry(sheetName, address, "BOOLEAN", cell.getBooleanCellValue());
+            case STRING:
+                return new Entry(sheetName, address, "STRING", cell.getStringCellValue());
+            default:
+                return new Entry(sheetName, address, "BLANK", null);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.excel.api.version;
+
+import lombok.Getter;
+
+import java.io.File;
+
+/**
+ * 文件的一个历史版本
+ */
+@Getter
+public class FileVersion {
+
+    /**
+     * 版本号，按保存时间生成，字典序即先后顺序
+     */
+    private final String id;
+
+    /**
+     * 完整快照（xlsx文件）或相对上一版本的单元格补丁
+     */
+    private final boolean snapshot;
+
+    private final File file;
+
+    /**
+     * 该版本内容的保存时间
+     */
+    private final long savedAt;
+
+    private final long size;
+
+    FileVersion(String id, boolean snapshot, File file) {
+        this.id = id;
+        this.snapshot = snapshot;
+        this.file = file;
+        this.savedAt = file.lastModified();
+        this.size = file.length();
+    }
+}
@@ -0,0 +1,346 @@
+package com.excel.api.version;
+
+import com.excel.api.config.ExcelConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 文件历史版本存储
+ * 每个文件的历史版本放在同目录下的 .versions/&lt;文件名&gt;/ 中，每次保存后记录一个版本。版本有两种：
+ * <ul>
+ *   <li>快照：保存是原子替换（新内容写入新文件后改名），文件此后不会再被原地修改，因此只需建立一个硬链接，不复制数据；
+ *   文件系统不支持硬链接时退回复制</li>
+ *   <li>补丁（excel.storage.version-mode=patch）：只记录本次写入的单元格，每隔 snapshot-interval 个补丁保留一次快照，
+ *   任意版本由之前最近的快照依次应用补丁重建</li>
+ * </ul>
+ * 版本列表在内存中维护（首次访问时扫描该文件自己的版本目录），超出 excel.storage.max-versions 的旧版本在后台删除
+ */
+@Slf4j
+@Component
+public class VersionStore {
+
+    static final String VERSIONS_DIR = ".versions";
+
+    private static final String PATCH_SUFFIX = ".patch.json";
+
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+
+    private final ExcelConfig excelConfig;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 文件绝对路径 -> 版本列表
+     */
+    private final ConcurrentHashMap<Path, FileVersions> index = new ConcurrentHashMap<>();
+
+    private final ExecutorService retentionExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "version-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger pendingDeletes = new AtomicInteger();
+    private final LongAdder links = new LongAdder();
+    private final LongAdder copies = new LongAdder();
+    private final LongAdder patches = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+
+    public VersionStore(ExcelConfig excelConfig, ObjectMapper objectMapper) {
+        this.excelConfig = excelConfig;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 磁盘文件是否仍是最近记录的版本（没有被绕过版本记录修改过），只有这时才能在其后追加补丁
+     */
+    public boolean isCurrent(File excelFile) {
+        FileVersions versions = versionsOf(excelFile);
+        synchronized (versions) {
+            return versions.lastModified == excelFile.lastModified() && versions.length == excelFile.length();
+        }
+    }
+
+    /**
+     * 文件保存后记录一个版本，调用方需持有该文件的写锁
+     * @param patch 本次保存修改的单元格；为null，或磁盘文件在上次记录后被绕过修改时，记录完整快照
+     * @return 新版本，文件不存在时返回null
+     */
+    public FileVersion record(File excelFile, CellPatch patch) throws IOException {
+        if (!excelFile.exists()) {
+            return null;
+        }
+
+        FileVersions versions = versionsOf(excelFile);
+        List<FileVersion> expired;
+        FileVersion version;
+        synchronized (versions) {
+            Files.createDirectories(versions.dir);
+            String id = nextId(versions);
+
+            if (patch != null && isPatchMode() && versions.canAppendPatch(excelConfig.getStorage().getSnapshotInterval())) {
+                Path target = versions.dir.resolve(id + PATCH_SUFFIX);
+                Files.write(target, objectMapper.writeValueAsBytes(patch));
+                patches.increment();
+                version = new FileVersion(id, false, target.toFile());
+            } else {
+                Path target = versions.dir.resolve(id + extensionOf(excelFile));
+                try {
+                    Files.createLink(target, excelFile.toPath());
+                    links.increment();
+                } catch (UnsupportedOperationException | IOException e) {
+                    Files.deleteIfExists(target);
+                    Files.copy(excelFile.toPath(), target);
+                    copies.increment();
+                }
+                version = new FileVersion(id, true, target.toFile());
+            }
+
+            versions.list.add(version);
+            versions.lastModified = excelFile.lastModified();
+            versions.length = excelFile.length();
+            expired = versions.trim(excelConfig.getStorage().getMaxVersions());
+        }
+
+        if (!expired.isEmpty()) {
+            scheduleDelete(expired);
+        }
+        log.debug("记录版本: {} -> {}, 快照: {}", excelFile.getName(), version.getId(), version.isSnapshot());
+        return version;
+    }
+
+    /**
+     * 文件的历史版本，按时间从旧到新
+     */
+    public List<FileVersion> list(File excelFile) {
+        FileVersions versions = versionsOf(excelFile);
+        synchronized (versions) {
+            return new ArrayList<>(versions.list);
+        }
+    }
+
+    /**
+     * 重建指定版本的完整内容
+     * @return 版本不存在时返回null
+     */
+    public XSSFWorkbook open(File excelFile, String id) throws IOException {
+        List<FileVersion> chain = chainOf(list(excelFile), id);
+        if (chain == null) {
+            return null;
+        }
+
+        XSSFWorkbook workbook;
+        try (FileInputStream fis = new FileInputStream(chain.get(0).getFile())) {
+            workbook = new XSSFWorkbook(fis);
+        }
+        try {
+            for (FileVersion version : chain.subList(1, chain.size())) {
+                objectMapper.readValue(version.getFile(), CellPatch.class).applyTo(workbook);
+            }
+        } catch (IOException | RuntimeException e) {
+            workbook.close();
+            throw e;
+        }
+        return workbook;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int total = 0;
+        for (FileVersions versions : index.values()) {
+            synchronized (versions) {
+                total += versions.list.size();
+            }
+        }
+        stats.put("mode", excelConfig.getStorage().getVersionMode());
+        stats.put("maxVersions", excelConfig.getStorage().getMaxVersions());
+        stats.put("files", index.size());
+        stats.put("versions", total);
+        stats.put("links", links.sum());
+        stats.put("copies", copies.sum());
+        stats.put("patches", patches.sum());
+        stats.put("deleted", deleted.sum());
+        stats.put("pendingDeletes", pendingDeletes.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        retentionExecutor.shutdown();
+        retentionExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private boolean isPatchMode() {
+        return "patch".equalsIgnoreCase(excelConfig.getStorage().getVersionMode());
+    }
+
+    private FileVersions versionsOf(File excelFile) {
+        Path path = excelFile.getAbsoluteFile().toPath().normalize();
+        return index.computeIfAbsent(path, FileVersions::load);
+    }
+
+    /**
+     * 重建某个版本需要的版本序列：之前最近的快照和其后的补丁
+     */
+    private static List<FileVersion> chainOf(List<FileVersion> list, String id) throws IOException {
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (!list.get(i).getId().equals(id)) {
+                continue;
+            }
+            for (int base = i; base >= 0; base--) {
+                if (list.get(base).isSnapshot()) {
+                    return list.subList(base, i + 1);
+                }
+            }
+            throw new IOException("版本缺少基础快照，无法重建: " + id);
+        }
+        return null;
+    }
+
+    /**
+     * 同一毫秒内多次保存时追加序号
+     */
+    private static String nextId(FileVersions versions) {
+        String base = LocalDateTime.now().format(ID_FORMAT);
+        String id = base;
+        for (int seq = 1; versions.contains(id); seq++) {
+            id = base + "_" + seq;
+        }
+        return id;
+    }
+
+    private static String extensionOf(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot) : "";
+    }
+
+    private void scheduleDelete(List<FileVersion> expired) {
+        pendingDeletes.addAndGet(expired.size());
+        retentionExecutor.execute(() -> {
+            for (FileVersion version : expired) {
+                try {
+                    Files.deleteIfExists(version.getFile().toPath());
+                    deleted.increment();
+                    log.debug("删除过期版本: {}", version.getFile().getName());
+                } catch (IOException e) {
+                    log.warn("删除过期版本失败: {} - {}", version.getFile(), e.getMessage());
+                } finally {
+                    pendingDeletes.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * 单个文件的版本列表，在自身上同步
+     */
+    private static final class FileVersions {
+        private final Path dir;
+        private final List<FileVersion> list = new ArrayList<>();
+
+        /**
+         * 最近记录版本时磁盘文件的修改时间和大小
+         */
+        private long lastModified = -1;
+        private long length = -1;
+
+        private FileVersions(Path dir) {
+            this.dir = dir;
+        }
+
+        private static FileVersions load(Path excelPath) {
+            Path dir = excelPath.resolveSibling(VERSIONS_DIR).resolve(excelPath.getFileName());
+            FileVersions versions = new FileVersions(dir);
+            File[] files = dir.toFile().listFiles(File::isFile);
+            if (files == null) {
+                return versions;
+            }
+
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(PATCH_SUFFIX)) {
+                    versions.list.add(new FileVersion(name.substring(0, name.length() - PATCH_SUFFIX.length()), false, file));
+                } else {
+                    int dot = name.lastIndexOf('.');
+                    versions.list.add(new FileVersion(dot > 0 ? name.substring(0, dot) : name, true, file));
+                }
+            }
+            versions.list.sort((a, b) -> a.getId().compareTo(b.getId()));
+
+            // 最近的版本是快照时，它与磁盘文件是同一个文件（硬链接），可以据此判断文件此后是否被修改过
+            if (!versions.list.isEmpty()) {
+                FileVersion last = versions.list.get(versions.list.size() - 1);
+                if (last.isSnapshot()) {
+                    versions.lastModified = last.getSavedAt();
+                    versions.length = last.getSize();
+                }
+            }
+            return versions;
+        }
+
+        private boolean contains(String id) {
+            for (FileVersion version : list) {
+                if (version.getId().equals(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 已有基础快照且距离上一个快照的补丁数未达到间隔
+         */
+        private boolean canAppendPatch(int snapshotInterval) {
+            int sinceSnapshot = 0;
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (list.get(i).isSnapshot()) {
+                    return sinceSnapshot < snapshotInterval;
+                }
+                sinceSnapshot++;
+            }
+            return false;
+        }
+
+        /**
+         * 从列表中移除超出保留数量的旧版本；保留的最旧版本依赖的快照及其后的补丁不会被移除
+         * @return 被移除的版本
+         */
+        private List<FileVersion> trim(int maxVersions) {
+            int firstKept = list.size() - Math.max(maxVersions, 1);
+            while (firstKept > 0 && !list.get(firstKept).isSnapshot()) {
+                firstKept--;
+            }
+            if (firstKept <= 0) {
+                return Collections.emptyList();
+            }
+            List<FileVersion> expired = new ArrayList<>(list.subList(0, firstKept));
+            list.subList(0, firstKept).clear();
+            return expired;
+        }
+    }
+}
@@ -1,14 +1,53 @@
 package com.excel.api;
 
+import com.excel.api.cache.CachedWorkbook;
+import com.excel.api.cache.WorkbookCache;
+import com.excel.api.cache.WorkbookLease;
+import com.excel.api.cache.WorkbookPool;
+import com.excel.api.config.ExcelConfig;
+import com.excel.api.exception.ExcelOperationException;
+import com.excel.api.journal.WriteAheadJournal;
+import com.excel.api.lock.ExcelLockManager;
+import com.excel.api.lock.HybridExcelLockManager;
+import com.excel.api.lock.InMemoryLockServer;
+import com.excel.api.model.ExcelBatchCalculateRequest;
+import com.excel.api.model.ExcelBatchResponse;
+import com.excel.api.model.ExcelRangeReadRequest;
+import com.excel.api.model.ExcelRangeResponse;
+import com.excel.api.model.ExcelRangeWriteRequest;
 import com.excel.api.model.ExcelReadRequest;
 import com.excel.api.model.ExcelResponse;
+import com.excel.api.model.ExcelVersionResponse;
 import com.excel.api.model.ExcelWriteRequest;
 import com.excel.api.service.ExcelService;
+import com.excel.api.version.CellPatch;
+import com.excel.api.version.FileVersion;
+import com.excel.api.version.VersionStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,11 +55,30 @@ import static org.junit.jupiter.api.Assertions.*;
  * Excel服务测试
  */
 @SpringBootTest
+@ActiveProfiles("test")
 public class ExcelServiceTest {
     
     @Autowired
     private ExcelService excelService;
     
+    @Autowired
+    private ExcelConfig excelConfig;
+    
+    @Autowired
+    private VersionStore versionStore;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private WorkbookCache workbookCache;
+    
+    @Autowired
+    private WorkbookPool workbookPool;
+    
+    @Autowired
+    private ExcelLockManager lockManager;
+    
     @Test
     public void testWriteAndRead() {
         // 准备写入数据
@@ -114,5 +172,898 @@ public class ExcelServiceTest {
         assertEquals(30.0, response.getData().get(0).getValue());
         assertEquals("A1+B1", response.getData().get(0).getFormula());
     }
+    
+    @Test
+    public void testCachedReadSeesLatestWrite() {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("cache_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        
+        ExcelWriteRequest.CellData cell = new ExcelWriteRequest.CellData();
+        cell.setCellAddress("A1");
+        cell.setValue(1);
+        cell.setValueType("NUMBER");
+        
+        writeRequest.setCells(Arrays.asList(cell));
+        excelService.writeExcel(writeRequest);
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("cache_test.xlsx");
+        readRequest.setSheetName("Sheet1");
+        
+        ExcelReadRequest.CellPosition pos = new ExcelReadRequest.CellPosition();
+        pos.setCellAddress("A1");
+        readRequest.setCells(Arrays.asList(pos));
+        
+        // 第二次读取应命中缓存
+        assertEquals(1.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+        long hits = (Long) excelService.getCacheStatistics().get("hits");
+        assertEquals(1.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+        assertEquals(hits + 1, excelService.getCacheStatistics().get("hits"));
+        
+        // 写入后缓存失效，读取到新值
+        cell.setValue(2);
+        excelService.writeExcel(writeRequest);
+        assertEquals(2.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFormulaResultsInvalidatedDownstreamOnly() {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("formula_cache_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(
+                cellData("A1", 10, "NUMBER"),
+                cellData("B1", 20, "NUMBER"),
+                cellData("C1", "A1+B1", "FORMULA"),
+                cellData("D1", "B1*2", "FORMULA")));
+        excelService.writeExcel(writeRequest);
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("formula_cache_test.xlsx");
+        readRequest.setSheetName("Sheet1");
+        readRequest.setCells(Arrays.asList(cellPosition("C1"), cellPosition("D1")));
+        
+        ExcelResponse response = excelService.readExcel(readRequest);
+        assertEquals(30.0, response.getData().get(0).getValue());
+        assertEquals(40.0, response.getData().get(1).getValue());
+        
+        // 只修改A1，C1的结果应重新计算，D1的结果保留
+        Map<String, Object> before = (Map<String, Object>) excelService.getCacheStatistics().get("formulaResults");
+        writeRequest.setCells(Arrays.asList(cellData("A1", 15, "NUMBER")));
+        excelService.writeExcel(writeRequest);
+        
+        response = excelService.readExcel(readRequest);
+        assertEquals(35.0, response.getData().get(0).getValue());
+        assertEquals(40.0, response.getData().get(1).getValue());
+        
+        Map<String, Object> after = (Map<String, Object>) excelService.getCacheStatistics().get("formulaResults");
+        assertEquals((Long) before.get("hits") + 1, after.get("hits"));
+    }
+    
+    @Test
+    public void testWriteAndReadReusesResidentWorkbook() {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("operation_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(
+                cellData("A1", 2, "NUMBER"),
+                cellData("B1", "A1*A1", "FORMULA")));
+        excelService.writeExcel(writeRequest);
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("operation_test.xlsx");
+        readRequest.setSheetName("Sheet1");
+        readRequest.setCells(Arrays.asList(cellPosition("B1")));
+        assertEquals(4.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+        
+        // 后续的写入+读取不应再解析文件
+        long loads = (Long) excelService.getCacheStatistics().get("loads");
+        for (int i = 3; i <= 5; i++) {
+            writeRequest.setCells(Arrays.asList(cellData("A1", i, "NUMBER")));
+            ExcelResponse response = excelService.writeAndRead(writeRequest, readRequest);
+            assertEquals((double) i * i, response.getData().get(0).getValue());
+        }
+        assertEquals(loads, excelService.getCacheStatistics().get("loads"));
+    }
+    
+    @Test
+    public void testCalculateDoesNotPersistInputs() {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("calculate_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(
+                cellData("A1", 2, "NUMBER"),
+                cellData("B1", "A1*10+C1", "FORMULA")));
+        excelService.writeExcel(writeRequest);
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("calculate_test.xlsx");
+        readRequest.setSheetName("Sheet1");
+        readRequest.setCells(Arrays.asList(cellPosition("B1")));
+        
+        // 覆盖已有单元格
+        ExcelWriteRequest inputs = new ExcelWriteRequest();
+        inputs.setSheetName("Sheet1");
+        inputs.setCells(Arrays.asList(cellData("A1", 7, "NUMBER")));
+        assertEquals(70.0, excelService.calculate(inputs, readRequest).getData().get(0).getValue());
+        
+        // 输入单元格在文件中不存在
+        inputs.setCells(Arrays.asList(cellData("A1", 7, "NUMBER"), cellData("C1", 1, "NUMBER")));
+        assertEquals(71.0, excelService.calculate(inputs, readRequest).getData().get(0).getValue());
+        
+        // 请求中显式传null的类型和读取方式按默认值处理
+        ExcelWriteRequest.CellData untyped = cellData("A1", "8", null);
+        readRequest.setReadFormula(null);
+        inputs.setCells(Arrays.asList(untyped));
+        assertEquals(80.0, excelService.calculate(inputs, readRequest).getData().get(0).getValue());
+        readRequest.setReadFormula(false);
+        
+        // 文件内容不变
+        assertEquals(20.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+    }
+    
+    @Test
+    public void testConcurrentCalculateUsesPooledWorkbooks() throws Exception {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("pool_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(
+                cellData("A1", 1, "NUMBER"),
+                cellData("B1", "A1*A1", "FORMULA")));
+        excelService.writeExcel(writeRequest);
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("pool_test.xlsx");
+        readRequest.setSheetName("Sheet1");
+        readRequest.setCells(Arrays.asList(cellPosition("B1")));
+        
+        // 并发试算互不干扰
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                int input = i;
+                futures.add(executor.submit(() -> {
+                    ExcelWriteRequest inputs = new ExcelWriteRequest();
+                    inputs.setSheetName("Sheet1");
+                    inputs.setCells(Arrays.asList(cellData("A1", input, "NUMBER")));
+                    return excelService.calculate(inputs, readRequest).getData().get(0).getValue();
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals((double) i * i, futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        
+        // 写入后旧副本不再使用
+        writeRequest.setCells(Arrays.asList(cellData("A1", 3, "NUMBER")));
+        excelService.writeExcel(writeRequest);
+        assertEquals(9.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+    }
+    
+    @Test
+    public void testCalculateBatch() {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("batch_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(
+                cellData("A1", 1, "NUMBER"),
+                cellData("A2", 1, "NUMBER"),
+                cellData("B1", "A1*A2", "FORMULA")));
+        excelService.writeExcel(writeRequest);
+        
+        List<ExcelBatchCalculateRequest.Scenario> scenarios = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ExcelBatchCalculateRequest.Scenario scenario = new ExcelBatchCalculateRequest.Scenario();
+            scenario.setId("s" + i);
+            scenario.setInputs(Arrays.asList(cellData("A1", i, "NUMBER"), cellData("A2", 2, "NUMBER")));
+            scenario.setOutputs(Arrays.asList(cellPosition("B1")));
+            scenarios.add(scenario);
+        }
+        // 场景失败不影响其他场景
+        ExcelBatchCalculateRequest.Scenario invalid = new ExcelBatchCalculateRequest.Scenario();
+        invalid.setId("invalid");
+        invalid.setSheetName("NoSuchSheet");
+        invalid.setOutputs(Arrays.asList(cellPosition("B1")));
+        scenarios.add(invalid);
+        
+        ExcelBatchCalculateRequest request = new ExcelBatchCalculateRequest();
+        request.setFileName("batch_test.xlsx");
+        request.setSheetName("Sheet1");
+        request.setScenarios(scenarios);
+        
+        ExcelBatchResponse response = excelService.calculateBatch(request);
+        assertFalse(response.getSuccess());
+        assertEquals(21, response.getResults().size());
+        for (int i = 0; i < 20; i++) {
+            ExcelBatchResponse.ScenarioResult result = response.getResults().get(i);
+            assertEquals("s" + i, result.getId());
+            assertEquals(i * 2.0, result.getData().get(0).getValue());
+        }
+        assertFalse(response.getResults().get(20).getSuccess());
+    }
+    
+    @Test
+    public void testStreamingRead() {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("streaming_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(
+                cellData("A1", "名称", "STRING"),
+                cellData("B2", 42, "NUMBER"),
+                cellData("C3", true, "BOOLEAN"),
+                cellData("D4", "B2*2", "FORMULA"),
+                cellData("A100", "末行", "STRING")));
+        excelService.writeExcel(writeRequest);
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("streaming_test.xlsx");
+        readRequest.setSheetName("Sheet1");
+        readRequest.setStreaming(true);
+        readRequest.setReadFormula(true);
+        readRequest.setCells(Arrays.asList(
+                cellPosition("A1"), cellPosition("B2"), cellPosition("C3"),
+                cellPosition("D4"), cellPosition("E5"), cellPosition("B2")));
+        
+        List<ExcelResponse.CellResult> data = excelService.readExcel(readRequest).getData();
+        assertEquals("名称", data.get(0).getValue());
+        assertEquals(42.0, data.get(1).getValue());
+        assertEquals(true, data.get(2).getValue());
+        assertEquals("=B2*2", data.get(3).getValue());
+        assertEquals("FORMULA", data.get(3).getValueType());
+        assertEquals("BLANK", data.get(4).getValueType());
+        assertEquals(42.0, data.get(5).getValue());
+    }
+    
+    @Test
+    public void testBulkWrite() {
+        String rows = "[\"名称\", 1, true]\n[\"第二行\", 2.5, null, 9]\n";
+        ExcelResponse created = excelService.bulkWrite("bulk_test.xlsx", "Data", false,
+                new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8)));
+        assertTrue(created.getSuccess());
+        
+        // 追加到已有行之后
+        excelService.bulkWrite("bulk_test.xlsx", "Data", true,
+                new ByteArrayInputStream("[\"追加\", 3]".getBytes(StandardCharsets.UTF_8)));
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("bulk_test.xlsx");
+        readRequest.setSheetName("Data");
+        readRequest.setCells(Arrays.asList(
+                cellPosition("A1"), cellPosition("C1"), cellPosition("B2"),
+                cellPosition("C2"), cellPosition("D2"), cellPosition("A3")));
+        
+        List<ExcelResponse.CellResult> data = excelService.readExcel(readRequest).getData();
+        assertEquals("名称", data.get(0).getValue());
+        assertEquals(true, data.get(1).getValue());
+        assertEquals(2.5, data.get(2).getValue());
+        assertEquals("BLANK", data.get(3).getValueType());
+        assertEquals(9.0, data.get(4).getValue());
+        assertEquals("追加", data.get(5).getValue());
+    }
+    
+    @Test
+    public void testReadRange() {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("range_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(
+                cellData("A1", "a", "STRING"),
+                cellData("B1", 1, "NUMBER"),
+                cellData("A2", "b", "STRING"),
+                cellData("B2", "B1*2", "FORMULA"),
+                cellData("A4", "d", "STRING"),
+                cellData("B4", "x", "STRING")));
+        excelService.writeExcel(writeRequest);
+        
+        ExcelRangeReadRequest request = new ExcelRangeReadRequest();
+        request.setFileName("range_test.xlsx");
+        request.setSheetName("Sheet1");
+        request.setRange("A1:C2");
+        
+        ExcelRangeResponse response = excelService.readRange(request);
+        assertEquals(2, response.getRowCount());
+        assertEquals(3, response.getColumnCount());
+        assertEquals(Arrays.asList("STRING", "NUMERIC", "BLANK"), response.getColumnTypes());
+        assertArrayEquals(new Object[]{"b", 2.0, null}, response.getValues().get(1));
+        
+        // 整列截取到有数据的最后一行，中间空行补齐
+        request.setRange("Sheet1!A:B");
+        response = excelService.readRange(request);
+        assertEquals("A1:B4", response.getRange());
+        assertNull(response.getValues().get(2)[0]);
+        assertEquals("MIXED", response.getColumnTypes().get(1));
+        
+        request.setStreaming(true);
+        request.setReadFormula(true);
+        response = excelService.readRange(request);
+        assertEquals(4, response.getRowCount());
+        assertEquals("=B1*2", response.getValues().get(1)[1]);
+    }
+    
+    @Test
+    public void testWriteRange() {
+        ExcelRangeWriteRequest.Column names = new ExcelRangeWriteRequest.Column();
+        names.setValues(Arrays.asList("a", "b", "c"));
+        ExcelRangeWriteRequest.Column amounts = new ExcelRangeWriteRequest.Column();
+        amounts.setValueType("NUMBER");
+        amounts.setValues(Arrays.asList(1, "2", 3));
+        ExcelRangeWriteRequest.Column doubled = new ExcelRangeWriteRequest.Column();
+        doubled.setValueType("FORMULA");
+        doubled.setValues(Arrays.asList("C2*2", "C3*2", "C4*2"));
+        
+        ExcelRangeWriteRequest request = new ExcelRangeWriteRequest();
+        request.setFileName("range_write_test.xlsx");
+        request.setSheetName("Sheet1");
+        request.setAnchor("B2");
+        request.setColumns(Arrays.asList(names, amounts, doubled));
+        excelService.writeRange(request);
+        
+        // 按行写入，覆盖部分单元格，null清空单元格
+        ExcelRangeWriteRequest byRow = new ExcelRangeWriteRequest();
+        byRow.setFileName("range_write_test.xlsx");
+        byRow.setAnchor("Sheet1!B3");
+        byRow.setValues(Arrays.asList(Arrays.asList(null, 10), Arrays.asList("z")));
+        excelService.writeRange(byRow);
+        
+        ExcelRangeReadRequest readRequest = new ExcelRangeReadRequest();
+        readRequest.setFileName("range_write_test.xlsx");
+        readRequest.setSheetName("Sheet1");
+        readRequest.setRange("B2:D4");
+        ExcelRangeResponse response = excelService.readRange(readRequest);
+        
+        assertArrayEquals(new Object[]{"a", 1.0, 2.0}, response.getValues().get(0));
+        assertArrayEquals(new Object[]{null, 10.0, 20.0}, response.getValues().get(1));
+        assertArrayEquals(new Object[]{"z", 3.0, 6.0}, response.getValues().get(2));
+        
+        // 按列写入的null同样清空单元格，较短的列末尾之后保持不变
+        ExcelRangeWriteRequest.Column renamed = new ExcelRangeWriteRequest.Column();
+        renamed.setValues(Arrays.asList("x"));
+        ExcelRangeWriteRequest.Column cleared = new ExcelRangeWriteRequest.Column();
+        cleared.setValueType("NUMBER");
+        cleared.setValues(Arrays.asList(null, 7, null));
+        request.setColumns(Arrays.asList(renamed, cleared));
+        excelService.writeRange(request);
+        
+        response = excelService.readRange(readRequest);
+        assertArrayEquals(new Object[]{"x", null, 0.0}, response.getValues().get(0));
+        assertArrayEquals(new Object[]{null, 7.0, 14.0}, response.getValues().get(1));
+        assertArrayEquals(new Object[]{"z", null, 0.0}, response.getValues().get(2));
+    }
+    
+    @Test
+    public void testWriteBehindFlushesBeforeDiskRead() {
+        excelConfig.getStorage().setWriteBehind(true);
+        try {
+            ExcelWriteRequest create = new ExcelWriteRequest();
+            create.setFileName("write_behind_test.xlsx");
+            create.setSheetName("Sheet1");
+            create.setCells(Arrays.asList(cellData("A1", 1, "NUMBER"), cellData("B1", "A1+1", "FORMULA")));
+            create.setFlush(true);
+            excelService.writeExcel(create);
+            
+            // 延迟保存的修改对常驻读取立即可见
+            ExcelWriteRequest update = new ExcelWriteRequest();
+            update.setFileName("write_behind_test.xlsx");
+            update.setSheetName("Sheet1");
+            update.setCells(Arrays.asList(cellData("A1", 5, "NUMBER")));
+            excelService.writeExcel(update);
+            
+            ExcelReadRequest readRequest = new ExcelReadRequest();
+            readRequest.setFileName("write_behind_test.xlsx");
+            readRequest.setSheetName("Sheet1");
+            readRequest.setCells(Arrays.asList(cellPosition("A1"), cellPosition("B1")));
+            List<ExcelResponse.CellResult> data = excelService.readExcel(readRequest).getData();
+            assertEquals(5.0, data.get(0).getValue());
+            assertEquals(6.0, data.get(1).getValue());
+            
+            // 流式读取解析磁盘文件，读取前先落盘
+            readRequest.setStreaming(true);
+            readRequest.setCells(Arrays.asList(cellPosition("A1")));
+            assertEquals(5.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+            assertFalse(excelService.flush("write_behind_test.xlsx"));
+        } finally {
+            excelConfig.getStorage().setWriteBehind(false);
+            excelService.flushDirtyWorkbooks();
+        }
+    }
+    
+    @Test
+    public void testFailedWriteKeepsDeferredChanges() {
+        excelConfig.getStorage().setWriteBehind(true);
+        try {
+            ExcelWriteRequest create = new ExcelWriteRequest();
+            create.setFileName("write_behind_failure_test.xlsx");
+            create.setSheetName("Sheet1");
+            create.setCells(Arrays.asList(cellData("A1", 1, "NUMBER")));
+            create.setFlush(true);
+            excelService.writeExcel(create);
+            
+            ExcelWriteRequest deferred = new ExcelWriteRequest();
+            deferred.setFileName("write_behind_failure_test.xlsx");
+            deferred.setSheetName("Sheet1");
+            deferred.setCells(Arrays.asList(cellData("A1", 5, "NUMBER")));
+            excelService.writeExcel(deferred);
+            
+            // 第二个值不合法，整个请求都不生效，之前延迟保存的修改保留
+            ExcelWriteRequest failing = new ExcelWriteRequest();
+            failing.setFileName("write_behind_failure_test.xlsx");
+            failing.setSheetName("Sheet1");
+            failing.setCells(Arrays.asList(cellData("A2", 7, "NUMBER"), cellData("A3", "abc", "NUMBER")));
+            assertThrows(RuntimeException.class, () -> excelService.writeExcel(failing));
+            
+            ExcelWriteRequest badFormula = new ExcelWriteRequest();
+            badFormula.setFileName("write_behind_failure_test.xlsx");
+            badFormula.setSheetName("Sheet1");
+            badFormula.setCells(Arrays.asList(cellData("A2", 7, "NUMBER"), cellData("B1", "SUM(A1", "FORMULA")));
+            assertThrows(RuntimeException.class, () -> excelService.writeExcel(badFormula));
+            
+            ExcelReadRequest readRequest = new ExcelReadRequest();
+            readRequest.setFileName("write_behind_failure_test.xlsx");
+            readRequest.setSheetName("Sheet1");
+            readRequest.setCells(Arrays.asList(cellPosition("A1"), cellPosition("A2")));
+            List<ExcelResponse.CellResult> data = excelService.readExcel(readRequest).getData();
+            assertEquals(5.0, data.get(0).getValue());
+            assertNull(data.get(1).getValue());
+            
+            // 仍是未保存状态，落盘后磁盘上也是新值
+            assertTrue(excelService.flush("write_behind_failure_test.xlsx"));
+            readRequest.setStreaming(true);
+            readRequest.setCells(Arrays.asList(cellPosition("A1")));
+            assertEquals(5.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+        } finally {
+            excelConfig.getStorage().setWriteBehind(false);
+            excelService.flushDirtyWorkbooks();
+        }
+    }
+    
+    @Test
+    public void testSaveReplacesFileAtomically() throws Exception {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("atomic_save_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(cellData("A1", "旧版本", "STRING")));
+        excelService.writeExcel(writeRequest);
+        
+        File excelFile = new File(excelConfig.getStorage().getStorageDir(), "atomic_save_test.xlsx");
+        try (FileInputStream oldVersion = new FileInputStream(excelFile)) {
+            writeRequest.setCells(Arrays.asList(cellData("A1", "新版本", "STRING")));
+            excelService.writeExcel(writeRequest);
+            
+            // 保存前已打开的流仍读取到完整的旧版本
+            try (XSSFWorkbook workbook = new XSSFWorkbook(oldVersion)) {
+                assertEquals("旧版本", workbook.getSheet("Sheet1").getRow(0).getCell(0).getStringCellValue());
+            }
+        }
+        
+        String[] leftovers = excelConfig.getStorage().getStorageDir()
+                .list((dir, name) -> name.endsWith(ExcelService.SAVE_TEMP_SUFFIX));
+        assertEquals(0, leftovers.length);
+    }
+    
+    @Test
+    public void testReplaceAndDeleteHoldWriteLock() throws Exception {
+        excelConfig.getStorage().setWriteBehind(true);
+        long waitTime = excelConfig.getLock().getWaitTime();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ExcelWriteRequest create = new ExcelWriteRequest();
+            create.setFileName("replace_test.xlsx");
+            create.setSheetName("Sheet1");
+            create.setCells(Arrays.asList(cellData("A1", 1, "NUMBER")));
+            create.setFlush(true);
+            excelService.writeExcel(create);
+            
+            ExcelWriteRequest deferred = new ExcelWriteRequest();
+            deferred.setFileName("replace_test.xlsx");
+            deferred.setSheetName("Sheet1");
+            deferred.setCells(Arrays.asList(cellData("A1", 5, "NUMBER")));
+            excelService.writeExcel(deferred);
+            
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+                workbook.createSheet("Sheet1").createRow(0).createCell(0).setCellValue(9);
+                workbook.write(bytes);
+            }
+            MockMultipartFile upload = new MockMultipartFile("file", "replace_test.xlsx", null, bytes.toByteArray());
+            File excelFile = new File(excelConfig.getStorage().getStorageDir(), "replace_test.xlsx");
+            
+            // 其他写入者持有写锁时，替换和删除都等待写锁，超时报错且不改动文件
+            excelConfig.getLock().setWaitTime(100L);
+            assertTrue(executor.submit(() -> lockManager.tryAcquireWriteLock("replace_test.xlsx", 1000)).get());
+            try {
+                assertThrows(ExcelOperationException.class,
+                        () -> excelService.replaceFile("replace_test.xlsx", excelFile, upload));
+                assertThrows(ExcelOperationException.class, () -> excelService.deleteFile("replace_test.xlsx"));
+                assertTrue(excelFile.exists());
+            } finally {
+                executor.submit(() -> lockManager.releaseWriteLock("replace_test.xlsx")).get();
+            }
+            
+            // 替换后读到上传的内容，内存中未保存的修改被丢弃，不会再覆盖上传的文件
+            excelService.replaceFile("replace_test.xlsx", excelFile, upload);
+            assertFalse(excelService.flush("replace_test.xlsx"));
+            ExcelReadRequest readRequest = new ExcelReadRequest();
+            readRequest.setFileName("replace_test.xlsx");
+            readRequest.setSheetName("Sheet1");
+            readRequest.setCells(Arrays.asList(cellPosition("A1")));
+            assertEquals(9.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+            
+            assertTrue(excelService.deleteFile("replace_test.xlsx"));
+            assertFalse(excelFile.exists());
+            assertFalse(excelService.deleteFile("replace_test.xlsx"));
+        } finally {
+            excelConfig.getLock().setWaitTime(waitTime);
+            excelConfig.getStorage().setWriteBehind(false);
+            excelService.flushDirtyWorkbooks();
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testVersionsKeptAsLinksWithRetention() throws Exception {
+        File excelFile = new File(excelConfig.getStorage().getStorageDir(), "version_test.xlsx");
+        int maxVersions = excelConfig.getStorage().getMaxVersions();
+        excelConfig.getStorage().setMaxVersions(2);
+        try {
+            for (int i = 1; i <= 4; i++) {
+                ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+                writeRequest.setFileName("version_test.xlsx");
+                writeRequest.setSheetName("Sheet1");
+                writeRequest.setCells(Arrays.asList(cellData("A1", i, "NUMBER")));
+                excelService.writeExcel(writeRequest);
+            }
+            
+            // 每次保存后记录一个版本，只保留最近2个
+            List<FileVersion> versions = versionStore.list(excelFile);
+            assertEquals(2, versions.size());
+            try (FileInputStream fis = new FileInputStream(versions.get(0).getFile());
+                 XSSFWorkbook workbook = new XSSFWorkbook(fis)) {
+                assertEquals(3.0, workbook.getSheet("Sheet1").getRow(0).getCell(0).getNumericCellValue());
+            }
+            try (FileInputStream fis = new FileInputStream(versions.get(1).getFile());
+                 XSSFWorkbook workbook = new XSSFWorkbook(fis)) {
+                assertEquals(4.0, workbook.getSheet("Sheet1").getRow(0).getCell(0).getNumericCellValue());
+            }
+        } finally {
+            excelConfig.getStorage().setMaxVersions(maxVersions);
+        }
+    }
+    
+    @Test
+    public void testPatchVersionsRestoreAndDiff() {
+        excelConfig.getStorage().setVersionMode("patch");
+        try {
+            ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+            writeRequest.setFileName("patch_version_test.xlsx");
+            writeRequest.setSheetName("Sheet1");
+            writeRequest.setCells(Arrays.asList(cellData("A1", 1, "NUMBER"), cellData("B1", "A1*10", "FORMULA")));
+            excelService.writeExcel(writeRequest);
+            writeRequest.setCells(Arrays.asList(cellData("A1", 2, "NUMBER"), cellData("C1", "新增", "STRING")));
+            excelService.writeExcel(writeRequest);
+            writeRequest.setCells(Arrays.asList(cellData("A1", 3, "NUMBER")));
+            excelService.writeExcel(writeRequest);
+            
+            List<ExcelVersionResponse.VersionInfo> versions =
+                    excelService.listVersions("patch_version_test.xlsx").getVersions();
+            assertEquals(3, versions.size());
+            assertEquals("SNAPSHOT", versions.get(0).getType());
+            assertEquals("PATCH", versions.get(1).getType());
+            assertEquals("PATCH", versions.get(2).getType());
+            
+            List<ExcelVersionResponse.CellChange> changes = excelService.diffVersions("patch_version_test.xlsx",
+                    versions.get(0).getVersionId(), versions.get(2).getVersionId()).getChanges();
+            assertEquals(2, changes.size());
+            assertEquals("A1", changes.get(0).getCellAddress());
+            assertEquals(1.0, changes.get(0).getFrom());
+            assertEquals(3.0, changes.get(0).getTo());
+            assertEquals("C1", changes.get(1).getCellAddress());
+            assertNull(changes.get(1).getFrom());
+            assertEquals("新增", changes.get(1).getTo());
+            
+            // 恢复到中间的补丁版本
+            excelService.restoreVersion("patch_version_test.xlsx", versions.get(1).getVersionId());
+            ExcelReadRequest readRequest = new ExcelReadRequest();
+            readRequest.setFileName("patch_version_test.xlsx");
+            readRequest.setSheetName("Sheet1");
+            readRequest.setCells(Arrays.asList(cellPosition("A1"), cellPosition("B1"), cellPosition("C1")));
+            List<ExcelResponse.CellResult> data = excelService.readExcel(readRequest).getData();
+            assertEquals(2.0, data.get(0).getValue());
+            assertEquals(20.0, data.get(1).getValue());
+            assertEquals("新增", data.get(2).getValue());
+        } finally {
+            excelConfig.getStorage().setVersionMode("snapshot");
+        }
+    }
+    
+    @Test
+    public void testJournalReplaysUnsavedWrites() throws Exception {
+        excelConfig.getStorage().setWriteBehind(true);
+        excelConfig.getStorage().setJournal(true);
+        try {
+            ExcelWriteRequest create = new ExcelWriteRequest();
+            create.setFileName("journal_test.xlsx");
+            create.setSheetName("Sheet1");
+            create.setCells(Arrays.asList(cellData("A1", 1, "NUMBER")));
+            create.setFlush(true);
+            excelService.writeExcel(create);
+            
+            ExcelWriteRequest update = new ExcelWriteRequest();
+            update.setFileName("journal_test.xlsx");
+            update.setSheetName("Sheet1");
+            update.setCells(Arrays.asList(cellData("A1", 7, "NUMBER"), cellData("B1", "A1+1", "FORMULA")));
+            excelService.writeExcel(update);
+            
+            // 模拟崩溃后重启：从磁盘读取未保存的补丁
+            Map<String, List<CellPatch>> replayed = replayJournal();
+            assertEquals(1, replayed.get("journal_test.xlsx").size());
+            
+            try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+                replayed.get("journal_test.xlsx").get(0).applyTo(workbook);
+                assertEquals(7.0, workbook.getSheet("Sheet1").getRow(0).getCell(0).getNumericCellValue());
+                assertEquals("A1+1", workbook.getSheet("Sheet1").getRow(0).getCell(1).getCellFormula());
+            }
+            
+            // 失败的写入没有保存任何内容，不能写检查点
+            ExcelWriteRequest failing = new ExcelWriteRequest();
+            failing.setFileName("journal_test.xlsx");
+            failing.setSheetName("Sheet1");
+            failing.setCells(Arrays.asList(cellData("C1", "abc", "NUMBER")));
+            assertThrows(RuntimeException.class, () -> excelService.writeExcel(failing));
+            replayed = replayJournal();
+            assertEquals(1, replayed.get("journal_test.xlsx").size());
+            
+            // 保存后写入检查点，不再重放
+            assertTrue(excelService.flush("journal_test.xlsx"));
+            replayed = replayJournal();
+            assertFalse(replayed.containsKey("journal_test.xlsx"));
+        } finally {
+            excelConfig.getStorage().setJournal(false);
+            excelConfig.getStorage().setWriteBehind(false);
+            excelService.flushDirtyWorkbooks();
+        }
+    }
+    
+    @Test
+    public void testJournalFailureSavesBeforeWriteIsVisible() {
+        WriteAheadJournal failing = new WriteAheadJournal(excelConfig, objectMapper) {
+            @Override
+            public void append(String fileName, CellPatch patch) throws IOException {
+                throw new IOException("磁盘已满");
+            }
+        };
+        Object previous = ReflectionTestUtils.getField(excelService, "journal");
+        excelConfig.getStorage().setWriteBehind(true);
+        excelConfig.getStorage().setJournal(true);
+        try {
+            ExcelWriteRequest create = new ExcelWriteRequest();
+            create.setFileName("journal_failure_test.xlsx");
+            create.setSheetName("Sheet1");
+            create.setCells(Arrays.asList(cellData("A1", 1, "NUMBER")));
+            create.setFlush(true);
+            excelService.writeExcel(create);
+            
+            // 日志写入失败时改为立即保存，返回时修改已在磁盘上
+            ReflectionTestUtils.setField(excelService, "journal", failing);
+            ExcelWriteRequest update = new ExcelWriteRequest();
+            update.setFileName("journal_failure_test.xlsx");
+            update.setSheetName("Sheet1");
+            update.setCells(Arrays.asList(cellData("A1", 7, "NUMBER")));
+            excelService.writeExcel(update);
+            assertFalse(excelService.flush("journal_failure_test.xlsx"));
+            
+            ExcelReadRequest readRequest = new ExcelReadRequest();
+            readRequest.setFileName("journal_failure_test.xlsx");
+            readRequest.setSheetName("Sheet1");
+            readRequest.setCells(Arrays.asList(cellPosition("A1")));
+            readRequest.setStreaming(true);
+            assertEquals(7.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+        } finally {
+            ReflectionTestUtils.setField(excelService, "journal", previous);
+            excelConfig.getStorage().setJournal(false);
+            excelConfig.getStorage().setWriteBehind(false);
+            excelService.flushDirtyWorkbooks();
+        }
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOptimisticReadFallsBackAfterWrite() {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("optimistic_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(cellData("A1", 1, "NUMBER")));
+        excelService.writeExcel(writeRequest);
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("optimistic_test.xlsx");
+        readRequest.setSheetName("Sheet1");
+        readRequest.setCells(Arrays.asList(cellPosition("A1")));
+        
+        // 首次读取加载工作簿，之后的读取不加锁
+        assertEquals(1.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+        Map<String, Object> before = (Map<String, Object>) excelService.getCacheStatistics().get("optimisticReads");
+        assertEquals(1.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+        writeRequest.setCells(Arrays.asList(cellData("A1", 2, "NUMBER")));
+        excelService.writeExcel(writeRequest);
+        assertEquals(2.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+        
+        Map<String, Object> after = (Map<String, Object>) excelService.getCacheStatistics().get("optimisticReads");
+        assertEquals((Long) before.get("hits") + 2, after.get("hits"));
+    }
+    
+    @Test
+    public void testOptimisticReadCachesResultsByLeasedVersion() throws Exception {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("optimistic_formula_test.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(cellData("A1", 0, "NUMBER"), cellData("B1", "A1+1", "FORMULA")));
+        excelService.writeExcel(writeRequest);
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("optimistic_formula_test.xlsx");
+        readRequest.setSheetName("Sheet1");
+        readRequest.setCells(Arrays.asList(cellPosition("A1"), cellPosition("B1")));
+        assertEquals(1.0, excelService.readExcel(readRequest).getData().get(1).getValue());
+        
+        // 主实例被占用时借出副本；写者提交新版本后，副本的借出版本不变
+        CachedWorkbook cached = workbookCache.peek("optimistic_formula_test.xlsx");
+        long version = cached.getVersion();
+        WorkbookLease clone;
+        ExecutorService borrower = Executors.newSingleThreadExecutor();
+        try {
+            Future<WorkbookLease> borrowed;
+            try (WorkbookLease primary = workbookPool.acquire(cached)) {
+                int clones = (Integer) workbookPool.getStatistics().get("clones");
+                borrowed = borrower.submit(() -> workbookPool.acquire(cached));
+                // 等另一线程占到副本名额后再归还主实例，副本从主实例序列化
+                long deadline = System.currentTimeMillis() + 10000;
+                while ((Integer) workbookPool.getStatistics().get("clones") == clones
+                        && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(5);
+                }
+            }
+            clone = borrowed.get(30, TimeUnit.SECONDS);
+        } finally {
+            borrower.shutdown();
+        }
+        try {
+            assertTrue(clone.isPooled());
+            writeRequest.setCells(Arrays.asList(cellData("A1", 5, "NUMBER")));
+            excelService.writeExcel(writeRequest);
+            assertEquals(version, clone.getVersion());
+            assertTrue(cached.getVersion() > version);
+        } finally {
+            clone.close();
+        }
+        
+        // 写者与乐观读者交错：每次读到的结果都自洽，结束后公式结果不是旧版本的值
+        int writes = 200;
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(readers.submit(() -> {
+                    while (!done.get()) {
+                        List<ExcelResponse.CellResult> data = excelService.readExcel(readRequest).getData();
+                        assertEquals((Double) data.get(0).getValue() + 1, data.get(1).getValue());
+                    }
+                    return null;
+                }));
+            }
+            for (int i = 1; i <= writes; i++) {
+                writeRequest.setCells(Arrays.asList(cellData("A1", i, "NUMBER")));
+                excelService.writeExcel(writeRequest);
+            }
+            done.set(true);
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            done.set(true);
+            readers.shutdownNow();
+        }
+        assertEquals(writes + 1.0, excelService.readExcel(readRequest).getData().get(1).getValue());
+    }
+    
+    @Test
+    public void testCopyAndWriteIncludesUnsavedTemplateChanges() {
+        // 模板中未保存的修改也被复制
+        ExcelWriteRequest templateRequest = new ExcelWriteRequest();
+        templateRequest.setFileName("multi_lock_template.xlsx");
+        templateRequest.setSheetName("Sheet1");
+        templateRequest.setCells(Arrays.asList(cellData("A1", 1, "NUMBER")));
+        templateRequest.setFlush(true);
+        excelService.writeExcel(templateRequest);
+        templateRequest.setCells(Arrays.asList(cellData("A1", 2, "NUMBER")));
+        templateRequest.setFlush(false);
+        excelService.writeExcel(templateRequest);
+        
+        ExcelWriteRequest outputRequest = new ExcelWriteRequest();
+        outputRequest.setFileName("multi_lock_output.xlsx");
+        outputRequest.setSheetName("Sheet1");
+        outputRequest.setCells(Arrays.asList(cellData("B1", 3, "NUMBER")));
+        excelService.copyAndWrite("multi_lock_template.xlsx", outputRequest);
+        
+        ExcelReadRequest readRequest = new ExcelReadRequest();
+        readRequest.setFileName("multi_lock_output.xlsx");
+        readRequest.setSheetName("Sheet1");
+        readRequest.setCells(Arrays.asList(cellPosition("A1"), cellPosition("B1")));
+        ExcelResponse response = excelService.readExcel(readRequest);
+        assertEquals(2.0, response.getData().get(0).getValue());
+        assertEquals(3.0, response.getData().get(1).getValue());
+    }
+    
+    @Test
+    public void testPublishRejectsWriterWhoseLockWasTakenOver() {
+        ExcelWriteRequest writeRequest = new ExcelWriteRequest();
+        writeRequest.setFileName("fenced_publish.xlsx");
+        writeRequest.setSheetName("Sheet1");
+        writeRequest.setCells(Arrays.asList(cellData("A1", 1, "NUMBER")));
+        excelService.writeExcel(writeRequest);
+        
+        InMemoryLockServer server = new InMemoryLockServer();
+        HybridExcelLockManager locks = new HybridExcelLockManager(server.node(), excelConfig);
+        Object previous = ReflectionTestUtils.getField(excelService, "lockManager");
+        ReflectionTestUtils.setField(excelService, "lockManager", locks);
+        try {
+            ExcelReadRequest readRequest = new ExcelReadRequest();
+            readRequest.setFileName("fenced_publish.xlsx");
+            readRequest.setSheetName("Sheet1");
+            readRequest.setCells(Arrays.asList(cellPosition("A1")));
+            readRequest.setStreaming(true);
+            
+            // 替换前已被接管：放弃保存，文件不变
+            server.takeOverBeforeFenceRead("fenced_publish.xlsx", 1);
+            writeRequest.setCells(Arrays.asList(cellData("A1", 2, "NUMBER")));
+            assertThrows(ExcelOperationException.class, () -> excelService.writeExcel(writeRequest));
+            assertEquals(1.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+            
+            // 校验与替换之间被接管：文件已被替换，替换后的校验发现并报错，不当作保存成功
+            server.takeOverBeforeFenceRead("fenced_publish.xlsx", 2);
+            writeRequest.setCells(Arrays.asList(cellData("A1", 3, "NUMBER")));
+            ExcelOperationException e = assertThrows(ExcelOperationException.class,
+                    () -> excelService.writeExcel(writeRequest));
+            assertTrue(e.getMessage().contains("替换文件期间写锁已失效"));
+            assertEquals(3.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+            assertEquals(2L, locks.getStatistics().get("fencingRejections"));
+            
+            // 没有被接管时正常保存
+            writeRequest.setCells(Arrays.asList(cellData("A1", 4, "NUMBER")));
+            excelService.writeExcel(writeRequest);
+            assertEquals(4.0, excelService.readExcel(readRequest).getData().get(0).getValue());
+        } finally {
+            ReflectionTestUtils.setField(excelService, "lockManager", previous);
+        }
+    }
+    
+    private ExcelWriteRequest.CellData cellData(String address, Object value, String valueType) {
+        ExcelWriteRequest.CellData cellData = new ExcelWriteRequest.CellData();
+        cellData.setCellAddress(address);
+        cellData.setValue(value);
+        cellData.setValueType(valueType);
+        return cellData;
+    }
+    
+    private ExcelReadRequest.CellPosition cellPosition(String address) {
+        ExcelReadRequest.CellPosition position = new ExcelReadRequest.CellPosition();
+        position.setCellAddress(address);
+        return position;
+    }
+    
+    /**
+     * 模拟重启：新的日志实例从磁盘加载并收集待重放的补丁
+     */
+    private Map<String, List<CellPatch>> replayJournal() throws IOException {
+        Map<String, List<CellPatch>> replayed = new HashMap<>();
+        WriteAheadJournal restarted = new WriteAheadJournal(excelConfig, objectMapper);
+        restarted.load();
+        restarted.recover(replayed::put);
+        return replayed;
+    }
 }
-
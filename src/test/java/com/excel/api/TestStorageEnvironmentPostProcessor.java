@@ -0,0 +1,36 @@
+package com.excel.api;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * 测试存储目录
+ * 每次启动测试上下文时在 target/test-storage 下新建一个空目录，作为 excel.test.storage-dir，
+ * 文件、数据库和日志都放在其中（见 application-test.yml），测试之间不受上次运行遗留数据的影响
+ */
+public class TestStorageEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String PROPERTY = "excel.test.storage-dir";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        try {
+            Path root = Paths.get("target", "test-storage");
+            Files.createDirectories(root);
+            Path dir = Files.createTempDirectory(root, "run-");
+            environment.getPropertySources().addLast(new MapPropertySource("testStorage",
+                    Map.of(PROPERTY, dir.toAbsolutePath().toString())));
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建测试存储目录失败", e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.excel.api.cache;
+
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 公式依赖图测试
+ */
+public class FormulaDependencyGraphTest {
+
+    @Test
+    public void testCellKeyRoundTrip() {
+        long key = FormulaDependencyGraph.cellKey(3, 1_048_575, 16_383);
+        assertEquals(3, FormulaDependencyGraph.sheetOf(key));
+        assertEquals(1_048_575, FormulaDependencyGraph.rowOf(key));
+        assertEquals(16_383, FormulaDependencyGraph.colOf(key));
+        assertNotEquals(FormulaDependencyGraph.cellKey(0, 0, 1), FormulaDependencyGraph.cellKey(0, 1, 0));
+    }
+
+    @Test
+    public void testDependentsThroughRefsAreasNamesAndSheets() throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet sheet1 = workbook.createSheet("Sheet1");
+            Sheet sheet2 = workbook.createSheet("Sheet2");
+            Name rate = workbook.createName();
+            rate.setNameName("Rate");
+            rate.setRefersToFormula("Sheet1!$A$2");
+
+            Row row = sheet1.createRow(0);
+            row.createCell(0).setCellValue(1);
+            row.createCell(1).setCellFormula("A1*2");
+            row.createCell(2).setCellFormula("B1+1");
+            row.createCell(3).setCellFormula("SUM(A1:A3)");
+            row.createCell(7).setCellFormula("Rate*2");
+            sheet2.createRow(0).createCell(0).setCellFormula("Sheet1!A1+1");
+
+            FormulaDependencyGraph graph = FormulaDependencyGraph.build(workbook);
+            assertEquals(5, graph.getFormulaCount());
+
+            // A1 -> B1 -> C1 传递，A1 在 SUM 区域内，另一个sheet也引用了A1
+            assertEquals(Set.of(key(0, "A1"), key(0, "B1"), key(0, "C1"), key(0, "D1"), key(1, "A1")),
+                    graph.dependentsOf(List.of(key(0, "A1"))));
+            // A2 只被区域和名称引用
+            assertEquals(Set.of(key(0, "A2"), key(0, "D1"), key(0, "H1")),
+                    graph.dependentsOf(List.of(key(0, "A2"))));
+            // 区域外和其他sheet的同一位置不受影响
+            assertEquals(Set.of(key(0, "A5")), graph.dependentsOf(List.of(key(0, "A5"))));
+            assertEquals(Set.of(key(1, "A2")), graph.dependentsOf(List.of(key(1, "A2"))));
+        }
+    }
+
+    @Test
+    public void testVolatileFormulasAndTheirDependentsNotCacheable() throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("Sheet1");
+            Row row = sheet.createRow(0);
+            row.createCell(0).setCellValue(1);
+            row.createCell(1).setCellFormula("A1*2");
+            row.createCell(2).setCellFormula("NOW()");
+            row.createCell(3).setCellFormula("C1+1");
+            row.createCell(4).setCellFormula("INDIRECT(\"A1\")");
+            row.createCell(5).setCellFormula("Missing!A1");
+
+            FormulaDependencyGraph graph = FormulaDependencyGraph.build(workbook);
+            assertTrue(graph.isCacheable(key(0, "B1")));
+            assertFalse(graph.isCacheable(key(0, "C1")));
+            assertFalse(graph.isCacheable(key(0, "D1")));
+            assertFalse(graph.isCacheable(key(0, "E1")));
+            // 引用不存在的sheet，新建该sheet后结果会变化
+            assertFalse(graph.isCacheable(key(0, "F1")));
+            // 不是公式的单元格不受影响
+            assertTrue(graph.isCacheable(key(0, "A1")));
+        }
+    }
+
+    @Test
+    public void testEmptyWorkbook() throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            workbook.createSheet("Sheet1");
+            FormulaDependencyGraph graph = FormulaDependencyGraph.build(workbook);
+            assertEquals(0, graph.getFormulaCount());
+            assertTrue(graph.dependentsOf(List.of()).isEmpty());
+        }
+    }
+
+    private static long key(int sheet, String address) {
+        CellReference reference = new CellReference(address);
+        return FormulaDependencyGraph.cellKey(sheet, reference.getRow(), reference.getCol());
+    }
+}
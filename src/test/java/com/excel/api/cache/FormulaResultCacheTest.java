@@ -0,0 +1,70 @@
+package com.excel.api.cache;
+
+import com.excel.api.config.ExcelConfig;
+import com.excel.api.metrics.RequestMetrics;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 公式结果缓存测试
+ */
+public class FormulaResultCacheTest {
+
+    private FormulaResultCache newCache() {
+        ExcelConfig config = new ExcelConfig();
+        return new FormulaResultCache(config, new WorkbookCache(config, new RequestMetrics(config)));
+    }
+
+    @Test
+    public void testWriteKeepsUnaffectedResults() {
+        FormulaResultCache cache = newCache();
+        cache.put("a.xlsx", 1, 1L, new CellValue(1));
+        cache.put("a.xlsx", 1, 2L, new CellValue(2));
+
+        cache.onWrite("a.xlsx", 2, Set.of(1L));
+        assertNull(cache.get("a.xlsx", 2, 1L));
+        assertEquals(2.0, cache.get("a.xlsx", 2, 2L).getNumberValue());
+        assertNull(cache.get("a.xlsx", 1, 2L));
+
+        // 旧版本算出的结果不再缓存
+        cache.put("a.xlsx", 1, 1L, new CellValue(1));
+        assertNull(cache.get("a.xlsx", 2, 1L));
+
+        cache.onWrite("a.xlsx", 3, null);
+        assertNull(cache.get("a.xlsx", 3, 2L));
+    }
+
+    @Test
+    public void testConcurrentPutNeverCachesStaleResult() throws Exception {
+        FormulaResultCache cache = newCache();
+        AtomicLong version = new AtomicLong(1);
+        AtomicBoolean stop = new AtomicBoolean(false);
+        cache.put("a.xlsx", 1, 1L, new CellValue(1));
+
+        // 读线程按读取时的版本缓存以版本号为值的结果，写线程不断推进版本并清除该单元格
+        Thread reader = new Thread(() -> {
+            while (!stop.get()) {
+                long v = version.get();
+                cache.put("a.xlsx", v, 1L, new CellValue(v));
+            }
+        });
+        reader.start();
+        try {
+            for (int i = 0; i < 20000; i++) {
+                long v = version.incrementAndGet();
+                cache.onWrite("a.xlsx", v, Set.of(1L));
+                CellValue cached = cache.get("a.xlsx", v, 1L);
+                assertTrue(cached == null || cached.getNumberValue() == v, "版本" + v + "下缓存了旧结果");
+            }
+        } finally {
+            stop.set(true);
+            reader.join();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.excel.api.filter;
+
+import com.excel.api.metrics.RequestMetrics;
+import com.excel.api.model.ExcelReadRequest;
+import com.excel.api.model.ExcelWriteRequest;
+import com.excel.api.model.RequestLog;
+import com.excel.api.service.ExcelService;
+import com.excel.api.service.RequestLogService;
+import com.excel.api.service.TokenService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Token认证过滤器测试
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class TokenAuthenticationFilterTest {
+
+    @Autowired
+    private TokenAuthenticationFilter tokenAuthenticationFilter;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private RequestLogService requestLogService;
+
+    @Autowired
+    private RequestMetrics requestMetrics;
+
+    @Autowired
+    private ExcelService excelService;
+
+    @Test
+    public void testFilterStreamsBinaryBodyAndLogsTextPrefix() throws Exception {
+        String token = tokenService.createToken("filter-test", null, "test", 1).getToken();
+
+        // 下载：二进制内容完整写出，日志不记录
+        byte[] file = new byte[200_000];
+        new Random(7).nextBytes(file);
+        MockHttpServletRequest download = new MockHttpServletRequest("GET", "/api/excel/download/filter.xlsx");
+        download.addHeader("X-API-Token", token);
+        MockHttpServletResponse downloadResponse = new MockHttpServletResponse();
+        tokenAuthenticationFilter.doFilter(download, downloadResponse, (req, res) -> {
+            res.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            res.getOutputStream().write(file);
+        });
+        assertArrayEquals(file, downloadResponse.getContentAsByteArray());
+
+        // JSON：控制器读到完整请求体，日志只保留前缀
+        String body = "{\"value\":\"" + "x".repeat(5000) + "\"}";
+        MockHttpServletRequest write = new MockHttpServletRequest("POST", "/api/excel/write");
+        write.addHeader("X-API-Token", token);
+        write.setContentType("application/json");
+        write.setContent(body.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+        tokenAuthenticationFilter.doFilter(write, writeResponse, (req, res) -> {
+            assertEquals(body, new String(req.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            res.setContentType("application/json;charset=UTF-8");
+            res.getWriter().write("{\"success\":true}");
+        });
+        assertEquals("{\"success\":true}", writeResponse.getContentAsString());
+
+        assertTrue(requestLogService.flush(5000));
+        List<RequestLog> logs = requestLogService.getLogsByToken(token);
+        assertEquals(2, logs.size());
+        RequestLog downloadLog = logs.stream().filter(l -> "GET".equals(l.getMethod())).findFirst().orElseThrow();
+        assertNull(downloadLog.getResponseBody());
+        RequestLog writeLog = logs.stream().filter(l -> "POST".equals(l.getMethod())).findFirst().orElseThrow();
+        assertEquals(1003, writeLog.getRequestBody().length());
+        assertTrue(writeLog.getRequestBody().endsWith("..."));
+        assertEquals("{\"success\":true}", writeLog.getResponseBody());
+    }
+
+    @Test
+    public void testErrorResponseDiscardsUnflushedWriterOutput() throws Exception {
+        String token = tokenService.createToken("filter-error-test", null, "test", 1).getToken();
+
+        String failure = "filter-failure-" + System.nanoTime();
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/excel/write");
+        request.addHeader("X-API-Token", token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        tokenAuthenticationFilter.doFilter(request, response, (req, res) -> {
+            res.setContentType("application/json;charset=UTF-8");
+            // 写入字符输出但未刷新，随后出错
+            res.getWriter().write("{\"partial\":");
+            throw new IllegalStateException(failure);
+        });
+
+        String error = "{\"success\":false,\"message\":\"服务器内部错误\"}";
+        assertEquals(500, response.getStatus());
+        assertEquals(error, response.getContentAsString(StandardCharsets.UTF_8));
+
+        assertTrue(requestLogService.flush(5000));
+        RequestLog errorLog = requestLogService.getRecentLogs(100).stream()
+                .filter(l -> failure.equals(l.getErrorMessage())).findFirst().orElseThrow();
+        assertEquals(500, errorLog.getStatusCode());
+        assertEquals(error, errorLog.getResponseBody());
+    }
+
+    @Test
+    public void testRejectsMissingAndInvalidToken() throws Exception {
+        MockHttpServletRequest missing = new MockHttpServletRequest("GET", "/api/excel/files");
+        MockHttpServletResponse missingResponse = new MockHttpServletResponse();
+        tokenAuthenticationFilter.doFilter(missing, missingResponse, (req, res) -> fail("不应继续处理"));
+        assertEquals(401, missingResponse.getStatus());
+
+        MockHttpServletRequest invalid = new MockHttpServletRequest("GET", "/api/excel/files");
+        invalid.addHeader("Authorization", "Bearer tk_invalid");
+        MockHttpServletResponse invalidResponse = new MockHttpServletResponse();
+        tokenAuthenticationFilter.doFilter(invalid, invalidResponse, (req, res) -> fail("不应继续处理"));
+        assertEquals(403, invalidResponse.getStatus());
+        assertTrue(invalidResponse.getContentAsString(StandardCharsets.UTF_8).contains("无效或已过期的Token"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecordsRequestMetricsWithExcelPhases() throws Exception {
+        String token = tokenService.createToken("metrics-test", null, "test", 1).getToken();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/excel/write");
+        request.addHeader("X-API-Token", token);
+        tokenAuthenticationFilter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/excel/write");
+            ExcelWriteRequest write = new ExcelWriteRequest();
+            write.setFileName("metrics_test.xlsx");
+            write.setSheetName("Sheet1");
+            write.setCells(List.of(cellData("A1", 2, "NUMBER"), cellData("A2", "=A1*3", "FORMULA")));
+            excelService.writeExcel(write);
+        });
+
+        Map<String, Object> stats = requestMetrics.getStatistics();
+        Map<String, Map<String, Object>> endpoints = (Map<String, Map<String, Object>>) stats.get("endpoints");
+        assertEquals(1L, endpoints.get("/api/excel/write").get("count"));
+        assertTrue(((Map<String, Object>) stats.get("files")).containsKey("metrics_test.xlsx"));
+        assertTrue(((Map<String, Object>) stats.get("tokens")).containsKey("metrics-test"));
+
+        // 写入请求的阶段：锁等待、写出，版本控制开启时还有版本记录
+        Map<String, Map<String, Object>> phases =
+                ((Map<String, Map<String, Map<String, Object>>>) stats.get("phases")).get("/api/excel/write");
+        assertTrue(phases.containsKey("lockWait"));
+        assertTrue(phases.containsKey("serialization"));
+        assertTrue(phases.containsKey("backup"));
+
+        // 不经过过滤器的调用不计入阶段耗时
+        ExcelReadRequest.CellPosition position = new ExcelReadRequest.CellPosition();
+        position.setCellAddress("A2");
+        ExcelReadRequest read = new ExcelReadRequest();
+        read.setFileName("metrics_test.xlsx");
+        read.setSheetName("Sheet1");
+        read.setCells(List.of(position));
+        assertEquals(6.0, ((Number) excelService.readExcel(read).getData().get(0).getValue()).doubleValue());
+        assertFalse(((Map<String, Object>) requestMetrics.getStatistics().get("phases")).containsKey(RequestMetrics.UNKNOWN));
+    }
+
+    private ExcelWriteRequest.CellData cellData(String address, Object value, String valueType) {
+        ExcelWriteRequest.CellData cellData = new ExcelWriteRequest.CellData();
+        cellData.setCellAddress(address);
+        cellData.setValue(value);
+        cellData.setValueType(valueType);
+        return cellData;
+    }
+}
@@ -0,0 +1,95 @@
+package com.excel.api.journal;
+
+import com.excel.api.config.ExcelConfig;
+import com.excel.api.version.CellPatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预写日志加载与恢复测试
+ */
+public class WriteAheadJournalTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path storageDir;
+
+    @Test
+    public void testCorruptRecordSkippedAndLaterRecordsReplayed() throws Exception {
+        Path dir = Files.createDirectories(storageDir.resolve(WriteAheadJournal.JOURNAL_DIR));
+        Files.write(dir.resolve("wal-00000000000000000001.log"), List.of(
+                record(1, "a.xlsx", "A1", 1),
+                "{\"seq\":2,\"type\":\"PATCH\",\"fileName\":\"a.x",
+                record(3, "a.xlsx", "A2", 3),
+                record(4, "b.xlsx", "A1", 4),
+                "{\"seq\":5,\"ty"), StandardCharsets.UTF_8);
+
+        WriteAheadJournal journal = new WriteAheadJournal(config(), objectMapper);
+        journal.load();
+        Map<String, List<CellPatch>> replayed = new HashMap<>();
+        journal.recover(replayed::put);
+
+        // 中间损坏的记录之后的补丁仍然重放
+        assertEquals(2, replayed.get("a.xlsx").size());
+        assertEquals("A2", replayed.get("a.xlsx").get(1).getCells().get(0).getCellAddress());
+        assertEquals(1, replayed.get("b.xlsx").size());
+        assertEquals(5L, journal.getStatistics().get("nextSeq"));
+        journal.close();
+    }
+
+    @Test
+    public void testAppendAfterLoadStartsNewSegment() throws Exception {
+        Path dir = Files.createDirectories(storageDir.resolve(WriteAheadJournal.JOURNAL_DIR));
+        Files.write(dir.resolve("wal-00000000000000000001.log"), List.of(record(1, "a.xlsx", "A1", 1)), StandardCharsets.UTF_8);
+        // 创建后崩溃、没有一条完整记录的段，序号不能再被使用
+        Files.write(dir.resolve("wal-00000000000000000002.log"), List.of("{\"seq\":2"), StandardCharsets.UTF_8);
+
+        WriteAheadJournal journal = new WriteAheadJournal(config(), objectMapper);
+        journal.load();
+        journal.append("a.xlsx", patch("A2", 2));
+        journal.close();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            List<String> names = files.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+            assertEquals(3, names.size());
+            assertEquals(List.of("wal-00000000000000000001.log", "wal-00000000000000000002.log"), names.subList(0, 2));
+        }
+        assertEquals(List.of("{\"seq\":2"), Files.readAllLines(dir.resolve("wal-00000000000000000002.log")));
+
+        WriteAheadJournal restarted = new WriteAheadJournal(config(), objectMapper);
+        restarted.load();
+        Map<String, List<CellPatch>> replayed = new HashMap<>();
+        restarted.recover(replayed::put);
+        assertEquals(2, replayed.get("a.xlsx").size());
+        assertEquals("A2", replayed.get("a.xlsx").get(1).getCells().get(0).getCellAddress());
+        restarted.close();
+    }
+
+    private ExcelConfig config() {
+        ExcelConfig config = new ExcelConfig();
+        config.getStorage().setPath(storageDir.toString());
+        config.getStorage().setJournal(true);
+        return config;
+    }
+
+    private String record(long seq, String fileName, String address, double value) throws Exception {
+        return objectMapper.writeValueAsString(new JournalRecord(seq, JournalRecord.PATCH, fileName, patch(address, value)));
+    }
+
+    private static CellPatch patch(String address, double value) {
+        return new CellPatch(List.of(new CellPatch.Entry("Sheet1", address, "NUMBER", value)));
+    }
+}
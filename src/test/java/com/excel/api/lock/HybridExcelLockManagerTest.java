@@ -0,0 +1,94 @@
+package com.excel.api.lock;
+
+import com.excel.api.config.ExcelConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 混合锁测试，集群一侧由 {@link InMemoryLockServer} 模拟
+ */
+public class HybridExcelLockManagerTest {
+
+    @Test
+    public void testReadsShareNodeLease() throws Exception {
+        InMemoryLockServer server = new InMemoryLockServer();
+        HybridExcelLockManager nodeA = new HybridExcelLockManager(server.node(), new ExcelConfig());
+        HybridExcelLockManager nodeB = new HybridExcelLockManager(server.node(), new ExcelConfig());
+
+        // 节点内的连续读取共用一个租约，只访问一次集群
+        for (int i = 0; i < 100; i++) {
+            assertTrue(nodeA.tryAcquireReadLock("hybrid.xlsx", 100));
+            nodeA.releaseReadLock("hybrid.xlsx");
+        }
+        assertEquals(1, server.getCalls());
+        assertEquals(99L, nodeA.getStatistics().get("leaseJoins"));
+
+        // 另一节点写入时广播写意图，闲置的租约立即释放
+        assertTrue(nodeB.tryAcquireWriteLock("hybrid.xlsx", 1000));
+        assertEquals(1L, nodeA.getStatistics().get("sharedReleases"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertFalse(executor.submit(() -> nodeA.tryAcquireReadLock("hybrid.xlsx", 50)).get());
+            nodeB.releaseWriteLock("hybrid.xlsx");
+            assertTrue(executor.submit(() -> nodeA.tryAcquireReadLock("hybrid.xlsx", 100)).get());
+            executor.submit(() -> nodeA.releaseReadLock("hybrid.xlsx")).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWriteLockTimesOutWhileOtherNodeWrites() throws Exception {
+        InMemoryLockServer server = new InMemoryLockServer();
+        HybridExcelLockManager nodeA = new HybridExcelLockManager(server.node(), new ExcelConfig());
+        HybridExcelLockManager nodeB = new HybridExcelLockManager(server.node(), new ExcelConfig());
+
+        assertTrue(nodeA.tryAcquireWriteLock("contended.xlsx", 100));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // 超时的一方不持有令牌，之后仍可正常加锁
+            assertFalse(executor.submit(() -> nodeB.tryAcquireWriteLock("contended.xlsx", 50)).get());
+            assertEquals(0L, executor.submit(() -> nodeB.getFencingToken("contended.xlsx")).get());
+            nodeA.releaseWriteLock("contended.xlsx");
+            assertTrue(executor.submit(() -> nodeB.tryAcquireWriteLock("contended.xlsx", 100)).get());
+            executor.submit(() -> nodeB.releaseWriteLock("contended.xlsx")).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFencingTokenRejectsExpiredWriter() throws Exception {
+        InMemoryLockServer server = new InMemoryLockServer();
+        HybridExcelLockManager nodeA = new HybridExcelLockManager(server.node(), new ExcelConfig());
+        HybridExcelLockManager nodeB = new HybridExcelLockManager(server.node(), new ExcelConfig());
+
+        assertTrue(nodeA.tryAcquireWriteLock("fenced.xlsx", 100));
+        long tokenA = nodeA.getFencingToken("fenced.xlsx");
+        assertTrue(tokenA > 0);
+        assertTrue(nodeA.validateFencingToken("fenced.xlsx", tokenA));
+
+        // A的租约过期，B接管写锁后A的令牌失效
+        server.expire("fenced.xlsx");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            long tokenB = executor.submit(() -> {
+                assertTrue(nodeB.tryAcquireWriteLock("fenced.xlsx", 100));
+                return nodeB.getFencingToken("fenced.xlsx");
+            }).get();
+            assertTrue(tokenB > tokenA);
+            assertFalse(nodeA.validateFencingToken("fenced.xlsx", tokenA));
+            assertTrue(executor.submit(() -> nodeB.validateFencingToken("fenced.xlsx", tokenB)).get());
+            executor.submit(() -> nodeB.releaseWriteLock("fenced.xlsx")).get();
+        } finally {
+            executor.shutdown();
+        }
+        nodeA.releaseWriteLock("fenced.xlsx");
+        assertEquals(0L, nodeA.getFencingToken("fenced.xlsx"));
+        assertEquals(1L, nodeA.getStatistics().get("fencingRejections"));
+    }
+}
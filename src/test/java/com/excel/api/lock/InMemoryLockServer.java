@@ -0,0 +1,129 @@
+package com.excel.api.lock;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * 测试用的内存版集群锁，各节点共用其状态；发布的写意图同步投递给所有节点
+ */
+public class InMemoryLockServer {
+    private final Map<String, Set<Object>> shared = new HashMap<>();
+    private final Map<String, Thread> exclusive = new HashMap<>();
+    private final Map<String, Long> fences = new HashMap<>();
+    private final List<Consumer<String>> subscribers = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> takeOvers = new HashMap<>();
+    private int calls;
+
+    /**
+     * 模拟写锁租约过期
+     */
+    public synchronized void expire(String fileName) {
+        exclusive.remove(fileName);
+        notifyAll();
+    }
+
+    /**
+     * 模拟第n次读取防护令牌之前租约过期并被其他节点接管
+     */
+    public synchronized void takeOverBeforeFenceRead(String fileName, int n) {
+        takeOvers.put(fileName, n);
+    }
+
+    /**
+     * 访问集群的次数
+     */
+    public synchronized int getCalls() {
+        return calls;
+    }
+
+    public DistributedLockBackend node() {
+        Object nodeId = new Object();
+        return new DistributedLockBackend() {
+            @Override
+            public boolean tryAcquireShared(String fileName, long timeout) throws InterruptedException {
+                return await(timeout, () -> !exclusive.containsKey(fileName),
+                        () -> shared.computeIfAbsent(fileName, k -> new HashSet<>()).add(nodeId));
+            }
+
+            @Override
+            public void releaseShared(String fileName) {
+                synchronized (InMemoryLockServer.this) {
+                    calls++;
+                    shared.getOrDefault(fileName, new HashSet<>()).remove(nodeId);
+                    InMemoryLockServer.this.notifyAll();
+                }
+            }
+
+            @Override
+            public boolean tryAcquireExclusive(String fileName, long timeout) throws InterruptedException {
+                return await(timeout,
+                        () -> !exclusive.containsKey(fileName) && shared.getOrDefault(fileName, Set.of()).isEmpty(),
+                        () -> exclusive.put(fileName, Thread.currentThread()));
+            }
+
+            @Override
+            public void releaseExclusive(String fileName) {
+                synchronized (InMemoryLockServer.this) {
+                    calls++;
+                    exclusive.remove(fileName);
+                    InMemoryLockServer.this.notifyAll();
+                }
+            }
+
+            @Override
+            public long nextFencingToken(String fileName) {
+                synchronized (InMemoryLockServer.this) {
+                    calls++;
+                    return fences.merge(fileName, 1L, Long::sum);
+                }
+            }
+
+            @Override
+            public long currentFencingToken(String fileName) {
+                synchronized (InMemoryLockServer.this) {
+                    calls++;
+                    Integer remaining = takeOvers.computeIfPresent(fileName, (k, n) -> n - 1);
+                    if (remaining != null && remaining == 0) {
+                        takeOvers.remove(fileName);
+                        fences.merge(fileName, 1L, Long::sum);
+                    }
+                    return fences.getOrDefault(fileName, 0L);
+                }
+            }
+
+            @Override
+            public void publishWriteIntent(String fileName) {
+                synchronized (InMemoryLockServer.this) {
+                    calls++;
+                }
+                subscribers.forEach(subscriber -> subscriber.accept(fileName));
+            }
+
+            @Override
+            public void subscribeWriteIntents(Consumer<String> listener) {
+                subscribers.add(listener);
+            }
+        };
+    }
+
+    private synchronized boolean await(long timeout, BooleanSupplier ready, Runnable grant)
+            throws InterruptedException {
+        calls++;
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!ready.getAsBoolean()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        grant.run();
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package com.excel.api.lock;
+
+import com.excel.api.config.ExcelConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 本地锁测试
+ */
+public class LocalExcelLockManagerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLockTableIsReclaimed() throws Exception {
+        LocalExcelLockManager locks = new LocalExcelLockManager(new ExcelConfig());
+        for (int i = 0; i < 100; i++) {
+            String fileName = "export_" + i + ".xlsx";
+            assertTrue(locks.tryAcquireReadLock(fileName, 100));
+            assertTrue(locks.tryAcquireReadLock(fileName, 100));
+            locks.releaseReadLock(fileName);
+            locks.releaseReadLock(fileName);
+        }
+
+        // 写锁被占用时，等待超时的一方也要释放引用
+        assertTrue(locks.tryAcquireWriteLock("busy.xlsx", 100));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertFalse(executor.submit(() -> locks.tryAcquireReadLock("busy.xlsx", 10)).get());
+        } finally {
+            executor.shutdown();
+        }
+        locks.releaseWriteLock("busy.xlsx");
+
+        Map<String, Object> stats = locks.getStatistics();
+        assertEquals(0, stats.get("entries"));
+        assertEquals(1L, stats.get("timeouts"));
+        assertEquals(200L, ((Map<String, Object>) stats.get("readHold")).get("count"));
+        assertEquals(1L, ((Map<String, Object>) stats.get("writeHold")).get("count"));
+    }
+
+    @Test
+    public void testOptimisticReadInvalidatedByWriter() {
+        LocalExcelLockManager locks = new LocalExcelLockManager(new ExcelConfig());
+        long stamp = locks.tryOptimisticRead("stamp.xlsx");
+        assertTrue(stamp != 0L);
+        assertTrue(locks.validate("stamp.xlsx", stamp));
+
+        // 写者持有锁时不能开始乐观读，写入后旧戳失效
+        assertTrue(locks.tryAcquireWriteLock("stamp.xlsx", 100));
+        assertEquals(0L, locks.tryOptimisticRead("stamp.xlsx"));
+        locks.releaseWriteLock("stamp.xlsx");
+        assertFalse(locks.validate("stamp.xlsx", stamp));
+        assertTrue(locks.validate("stamp.xlsx", locks.tryOptimisticRead("stamp.xlsx")));
+    }
+
+    @Test
+    public void testMultiFileLocksDoNotDeadlock() throws Exception {
+        // 只有一段时所有文件共用一把锁，读写混合也不能阻塞自己
+        ExcelConfig striped = new ExcelConfig();
+        striped.getLock().setStripes(1);
+        LocalExcelLockManager stripedLocks = new LocalExcelLockManager(striped);
+        assertTrue(stripedLocks.tryAcquireLocks(List.of("a.xlsx"), List.of("b.xlsx"), 100));
+        stripedLocks.releaseLocks(List.of("a.xlsx"), List.of("b.xlsx"));
+
+        // 相反顺序传入的两组文件并发加锁不会死锁
+        LocalExcelLockManager locks = new LocalExcelLockManager(new ExcelConfig());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (List<String> files : List.of(List.of("x.xlsx", "y.xlsx"), List.of("y.xlsx", "x.xlsx"))) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        if (!locks.tryAcquireLocks(List.of(), files, 5000)) {
+                            return false;
+                        }
+                        locks.releaseLocks(List.of(), files);
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, locks.getStatistics().get("entries"));
+    }
+
+    @Test
+    public void testMultiFileLockTimeoutReleasesAcquiredLocks() throws Exception {
+        LocalExcelLockManager locks = new LocalExcelLockManager(new ExcelConfig());
+        assertTrue(locks.tryAcquireWriteLock("b.xlsx", 100));
+
+        // a.xlsx 先加上读锁，等 b.xlsx 超时后要一并释放
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertFalse(executor.submit(
+                    () -> locks.tryAcquireLocks(List.of("a.xlsx"), List.of("b.xlsx"), 50)).get());
+            assertTrue(executor.submit(() -> {
+                boolean acquired = locks.tryAcquireWriteLock("a.xlsx", 100);
+                if (acquired) {
+                    locks.releaseWriteLock("a.xlsx");
+                }
+                return acquired;
+            }).get());
+        } finally {
+            executor.shutdown();
+        }
+        locks.releaseWriteLock("b.xlsx");
+        assertEquals(0, locks.getStatistics().get("entries"));
+    }
+
+    @Test
+    public void testLocalLocksHaveNoFencingToken() {
+        // 本地锁不会被接管，没有令牌
+        LocalExcelLockManager locks = new LocalExcelLockManager(new ExcelConfig());
+        assertTrue(locks.tryAcquireWriteLock("fenced.xlsx", 100));
+        assertEquals(0L, locks.getFencingToken("fenced.xlsx"));
+        locks.releaseWriteLock("fenced.xlsx");
+    }
+}
@@ -0,0 +1,58 @@
+package com.excel.api.lock;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 乐观读戳测试
+ */
+public class OptimisticReadStampsTest {
+
+    @Test
+    public void testStampValidUntilWriterEnters() {
+        OptimisticReadStamps stamps = new OptimisticReadStamps();
+        long stamp = stamps.tryOptimisticRead("a.xlsx");
+        assertTrue(stamp != 0L);
+        assertTrue(stamps.validate("a.xlsx", stamp));
+        assertEquals(stamp, stamps.tryOptimisticRead("a.xlsx"));
+
+        // 写者进入后旧戳失效，写者在内时取不到戳
+        stamps.writerEntered("a.xlsx");
+        assertFalse(stamps.validate("a.xlsx", stamp));
+        assertEquals(0L, stamps.tryOptimisticRead("a.xlsx"));
+
+        // 写者离开后旧戳仍无效，新戳有效
+        stamps.writerExited("a.xlsx");
+        assertFalse(stamps.validate("a.xlsx", stamp));
+        long next = stamps.tryOptimisticRead("a.xlsx");
+        assertTrue(next != 0L && next != stamp);
+        assertTrue(stamps.validate("a.xlsx", next));
+    }
+
+    @Test
+    public void testZeroStampNeverValidates() {
+        OptimisticReadStamps stamps = new OptimisticReadStamps();
+        assertFalse(stamps.validate("a.xlsx", 0L));
+
+        // 写者在内时拿到的0不能当作有效戳
+        stamps.writerEntered("a.xlsx");
+        long stamp = stamps.tryOptimisticRead("a.xlsx");
+        assertFalse(stamps.validate("a.xlsx", stamp));
+        stamps.writerExited("a.xlsx");
+        assertFalse(stamps.validate("a.xlsx", stamp));
+    }
+
+    @Test
+    public void testWritersCountedPerSlot() {
+        OptimisticReadStamps stamps = new OptimisticReadStamps();
+
+        // 同一槽位两个写者都离开前不能开始乐观读
+        stamps.writerEntered("a.xlsx");
+        stamps.writerEntered("a.xlsx");
+        stamps.writerExited("a.xlsx");
+        assertEquals(0L, stamps.tryOptimisticRead("a.xlsx"));
+        stamps.writerExited("a.xlsx");
+        assertTrue(stamps.validate("a.xlsx", stamps.tryOptimisticRead("a.xlsx")));
+    }
+}
@@ -0,0 +1,46 @@
+package com.excel.api.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按键直方图测试
+ */
+public class KeyedHistogramsTest {
+
+    @Test
+    public void testEntriesSortedByKey() {
+        KeyedHistograms histograms = new KeyedHistograms(10);
+        histograms.record("b.xlsx", 1_000_000);
+        histograms.record("a.xlsx", 2_000_000);
+        histograms.record("b.xlsx", 3_000_000);
+
+        Map<String, LatencyHistogram> entries = histograms.entries();
+        assertEquals(List.of("a.xlsx", "b.xlsx"), List.copyOf(entries.keySet()));
+        assertEquals(1L, entries.get("a.xlsx").getCount());
+        assertEquals(2L, entries.get("b.xlsx").getCount());
+        assertEquals(2L, entries.get("b.xlsx").snapshot().get("count"));
+        assertFalse(entries.containsKey(KeyedHistograms.OTHER));
+    }
+
+    @Test
+    public void testKeysBeyondLimitCountedAsOther() {
+        KeyedHistograms histograms = new KeyedHistograms(2);
+        histograms.record("a.xlsx", 1_000);
+        histograms.record("b.xlsx", 1_000);
+        histograms.record("c.xlsx", 1_000);
+        histograms.record("d.xlsx", 1_000);
+
+        // 已有的键超出上限后仍单独计数
+        histograms.record("a.xlsx", 1_000);
+
+        Map<String, LatencyHistogram> entries = histograms.entries();
+        assertEquals(List.of("a.xlsx", "b.xlsx", KeyedHistograms.OTHER), List.copyOf(entries.keySet()));
+        assertEquals(2L, entries.get("a.xlsx").getCount());
+        assertEquals(2L, entries.get(KeyedHistograms.OTHER).getCount());
+    }
+}
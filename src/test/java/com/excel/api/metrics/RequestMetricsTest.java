@@ -0,0 +1,90 @@
+package com.excel.api.metrics;
+
+import com.excel.api.config.ExcelConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 请求耗时统计测试
+ */
+public class RequestMetricsTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecordsByEndpointFileTokenAndPhase() {
+        RequestMetrics metrics = new RequestMetrics(new ExcelConfig());
+        metrics.begin();
+        metrics.addPhase(Phase.LOCK_WAIT, 1_000_000);
+        metrics.addPhase(Phase.LOCK_WAIT, 2_000_000);
+        metrics.addPhase(Phase.SERIALIZATION, 5_000_000);
+        // 涉及多个文件时取第一个，不用路径中的文件名
+        metrics.setFileName("first.xlsx");
+        metrics.setFileName("second.xlsx");
+        metrics.end("/api/excel/write", "path.xlsx", "metrics-token", 10_000_000);
+
+        Map<String, Object> stats = metrics.getStatistics();
+        Map<String, Map<String, Object>> endpoints = (Map<String, Map<String, Object>>) stats.get("endpoints");
+        assertEquals(1L, endpoints.get("/api/excel/write").get("count"));
+        assertEquals(Map.of("first.xlsx", 1L), countsOf((Map<String, Map<String, Object>>) stats.get("files")));
+        assertTrue(((Map<String, Object>) stats.get("tokens")).containsKey("metrics-token"));
+
+        Map<String, Map<String, Object>> phases =
+                ((Map<String, Map<String, Map<String, Object>>>) stats.get("phases")).get("/api/excel/write");
+        assertEquals(2, phases.size());
+        assertEquals(1L, phases.get("lockWait").get("count"));
+        assertEquals(1L, phases.get("serialization").get("count"));
+
+        String prometheus = metrics.toPrometheus();
+        assertTrue(prometheus.contains("# TYPE excel_request_duration_seconds histogram"));
+        assertTrue(prometheus.contains("excel_request_duration_seconds_count{endpoint=\"/api/excel/write\"} 1"));
+        assertTrue(prometheus.contains("excel_request_duration_seconds_bucket{endpoint=\"/api/excel/write\",le=\"+Inf\"} 1"));
+        assertTrue(prometheus.contains("excel_request_phase_duration_seconds_count{endpoint=\"/api/excel/write\",phase=\"lockWait\"} 1"));
+        assertFalse(prometheus.contains("phase=\"backup\""));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPhasesOutsideRequestIgnored() {
+        RequestMetrics metrics = new RequestMetrics(new ExcelConfig());
+
+        // 不在请求中的阶段耗时和文件名都不记录，也不会带到下一个请求
+        metrics.addPhase(Phase.EVALUATION, 1_000_000);
+        metrics.setFileName("background.xlsx");
+        metrics.begin();
+        metrics.end(null, "path.xlsx", null, 1_000_000);
+
+        Map<String, Object> stats = metrics.getStatistics();
+        assertEquals(Map.of(RequestMetrics.UNKNOWN, 1L), countsOf((Map<String, Map<String, Object>>) stats.get("endpoints")));
+        assertEquals(Map.of("path.xlsx", 1L), countsOf((Map<String, Map<String, Object>>) stats.get("files")));
+        assertEquals(Map.of(RequestMetrics.UNKNOWN, 1L), countsOf((Map<String, Map<String, Object>>) stats.get("tokens")));
+        assertTrue(((Map<String, Object>) stats.get("phases")).isEmpty());
+
+        // 请求结束后的阶段耗时同样忽略
+        metrics.addPhase(Phase.EVALUATION, 1_000_000);
+        metrics.end("/api/excel/read", null, null, 1_000_000);
+        assertTrue(((Map<String, Object>) metrics.getStatistics().get("phases")).isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testKeysBeyondLimitCountedAsOther() {
+        ExcelConfig config = new ExcelConfig();
+        config.getMetrics().setMaxKeys(1);
+        RequestMetrics metrics = new RequestMetrics(config);
+        metrics.end("/api/excel/read", "a.xlsx", "t", 1_000_000);
+        metrics.end("/api/excel/read", "b.xlsx", "t", 1_000_000);
+
+        Map<String, Object> stats = metrics.getStatistics();
+        assertEquals(Map.of("a.xlsx", 1L, "other", 1L), countsOf((Map<String, Map<String, Object>>) stats.get("files")));
+    }
+
+    private static Map<String, Long> countsOf(Map<String, Map<String, Object>> snapshot) {
+        Map<String, Long> counts = new TreeMap<>();
+        snapshot.forEach((key, stats) -> counts.put(key, (Long) stats.get("count")));
+        return counts;
+    }
+}
@@ -0,0 +1,79 @@
+package com.excel.api.service;
+
+import com.excel.api.model.RequestLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 请求日志测试
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class RequestLogServiceTest {
+
+    @Autowired
+    private RequestLogService requestLogService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRequestLogsWrittenInBatches() {
+        String token = "tk_batch_" + System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            requestLogService.logRequest(RequestLog.builder()
+                    .method("POST")
+                    .path("/api/excel/read")
+                    .token(token)
+                    .statusCode(200)
+                    .duration(i)
+                    .build());
+        }
+
+        assertTrue(requestLogService.flush(5000));
+        List<RequestLog> logs = requestLogService.getLogsByToken(token);
+        assertEquals(50, logs.size());
+        assertEquals(50, logs.stream().map(RequestLog::getId).distinct().count());
+        assertTrue(logs.stream().allMatch(log -> log.getTimestamp() != null));
+
+        Map<String, Object> pipeline = (Map<String, Object>) requestLogService.getStatistics().get("pipeline");
+        assertEquals(0L, pipeline.get("dropped"));
+        assertEquals(0, pipeline.get("buffered"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedBatchCountedAndWriterKeepsRunning() {
+        assertTrue(requestLogService.flush(5000));
+        Map<String, Object> before = (Map<String, Object>) requestLogService.getStatistics().get("pipeline");
+
+        // 超出列长度的日志写入失败，计入failed，不影响之后的日志
+        String token = "tk_failed_" + System.nanoTime();
+        requestLogService.logRequest(RequestLog.builder()
+                .method("X".repeat(50))
+                .path("/api/excel/read")
+                .token(token)
+                .statusCode(200)
+                .build());
+        assertTrue(requestLogService.flush(5000));
+        assertTrue(requestLogService.getLogsByToken(token).isEmpty());
+
+        Map<String, Object> after = (Map<String, Object>) requestLogService.getStatistics().get("pipeline");
+        assertEquals((Long) before.get("failed") + 1, after.get("failed"));
+        assertEquals(before.get("written"), after.get("written"));
+
+        requestLogService.logRequest(RequestLog.builder()
+                .method("GET")
+                .path("/api/excel/read")
+                .token(token)
+                .statusCode(200)
+                .build());
+        assertTrue(requestLogService.flush(5000));
+        assertEquals(1, requestLogService.getLogsByToken(token).size());
+    }
+}
@@ -0,0 +1,107 @@
+package com.excel.api.service;
+
+import com.excel.api.model.RequestLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 请求统计测试
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class RequestStatsServiceTest {
+
+    @Autowired
+    private RequestLogService requestLogService;
+
+    @Autowired
+    private RequestStatsService requestStatsService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRequestStatisticsFromRollups() {
+        String path = "/api/excel/read/stats_test.xlsx";
+        long totalBefore = (Long) requestStatsService.getTotals().get("totalRequests");
+        for (int i = 0; i < 30; i++) {
+            requestLogService.logRequest(RequestLog.builder()
+                    .method("GET")
+                    .path(path)
+                    .token("stats-secret")
+                    .tokenName("stats-token")
+                    .statusCode(i % 10 == 0 ? 500 : 200)
+                    .duration(i)
+                    .build());
+        }
+
+        // 滑动窗口直接由内存计算，按Token名称统计，不出现Token原文
+        Map<String, Object> window = requestStatsService.getWindow(1);
+        assertEquals(30L, ((Map<String, Long>) window.get("pathStats")).get(path));
+        assertEquals(30L, ((Map<String, Long>) window.get("tokenStats")).get("stats-token"));
+        assertFalse(((Map<String, Long>) window.get("tokenStats")).containsKey("stats-secret"));
+
+        // 写入汇总表前后总数一致，不重复计算
+        Map<String, Object> beforeFlush = requestStatsService.getTotals();
+        requestStatsService.flushRollups();
+        Map<String, Object> totals = requestStatsService.getTotals();
+        assertEquals(beforeFlush.get("totalRequests"), totals.get("totalRequests"));
+        assertEquals(totalBefore + 30, (Long) totals.get("totalRequests"));
+        assertEquals(30L, ((Map<String, Long>) totals.get("pathStats")).get(path));
+        assertEquals(30L, ((Map<String, Long>) totals.get("tokenStats")).get("stats-token"));
+        assertFalse(((Map<String, Long>) totals.get("tokenStats")).containsKey("stats-secret"));
+
+        // 再次写入只写增量
+        requestLogService.logRequest(RequestLog.builder().method("GET").path(path).statusCode(200).build());
+        requestStatsService.flushRollups();
+        Map<String, Object> range = requestStatsService.getRange(LocalDateTime.now().minusHours(1), LocalDateTime.now().plusMinutes(1));
+        assertEquals(31L, ((Map<String, Long>) range.get("pathStats")).get(path));
+        assertEquals(0L, ((Map<String, Long>) requestStatsService.getRange(null, LocalDateTime.now().minusHours(1))
+                .get("pathStats")).getOrDefault(path, 0L));
+        assertEquals(3L, ((Map<String, Long>) range.get("statusStats")).get("500"));
+
+        Map<String, Object> logStats = requestLogService.getStatistics();
+        assertEquals(totals.get("totalRequests"), (Long) logStats.get("totalRequests") - 1);
+        assertTrue(((Map<String, Object>) logStats.get("windows")).containsKey("60m"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOverwrittenMinuteKeepsUnflushedCounts() {
+        String path = "/api/excel/read/stats_rollover.xlsx";
+        int windowMinutes = (Integer) requestStatsService.getRollupStatistics().get("windowMinutes");
+        // 落在同一个槽位的两分钟，与当前分钟的槽位错开
+        LocalDateTime first = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES)
+                .plusMinutes((long) windowMinutes * 24 + windowMinutes / 2);
+        LocalDateTime second = first.plusMinutes(windowMinutes);
+
+        requestStatsService.record(millisOf(first), path, 200, "rollover", 5);
+        requestStatsService.record(millisOf(first), path, 200, "rollover", 5);
+        // 还未写入汇总表就被新的一分钟覆盖
+        requestStatsService.record(millisOf(second), path, 200, "rollover", 7);
+
+        Map<String, Object> beforeFlush = requestStatsService.getRange(first, first.plusMinutes(1));
+        assertEquals(2L, ((Map<String, Long>) beforeFlush.get("pathStats")).get(path));
+
+        // 写入汇总表后不丢、不重复；被覆盖的分钟写完后丢弃
+        requestStatsService.flushRollups();
+        requestStatsService.flushRollups();
+        requestStatsService.flushRollups();
+        Map<String, Object> firstMinute = requestStatsService.getRange(first, first.plusMinutes(1));
+        assertEquals(2L, ((Map<String, Long>) firstMinute.get("pathStats")).get(path));
+        assertEquals(10.0 / 2, firstMinute.get("avgMillis"));
+        Map<String, Object> both = requestStatsService.getRange(first, second.plusMinutes(1));
+        assertEquals(3L, ((Map<String, Long>) both.get("pathStats")).get(path));
+        assertEquals(3L, ((Map<String, Long>) both.get("tokenStats")).get("rollover"));
+    }
+
+    private static long millisOf(LocalDateTime time) {
+        return java.sql.Timestamp.valueOf(time).getTime();
+    }
+}
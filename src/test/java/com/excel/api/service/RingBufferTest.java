@@ -0,0 +1,111 @@
+package com.excel.api.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 环形队列测试
+ */
+public class RingBufferTest {
+
+    @Test
+    public void testCapacityRoundedUpToPowerOfTwo() {
+        assertEquals(2, new RingBuffer<Integer>(0).capacity());
+        assertEquals(2, new RingBuffer<Integer>(1).capacity());
+        assertEquals(2, new RingBuffer<Integer>(2).capacity());
+        assertEquals(4, new RingBuffer<Integer>(3).capacity());
+        assertEquals(8, new RingBuffer<Integer>(8).capacity());
+        assertEquals(16, new RingBuffer<Integer>(9).capacity());
+    }
+
+    @Test
+    public void testOfferFailsWhenFull() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+
+        // 取走一个后腾出一个位置
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, buffer.drainTo(drained, 1));
+        assertTrue(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+    }
+
+    @Test
+    public void testDrainInOrderUpToMax() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(8);
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(0, buffer.drainTo(drained, 10));
+
+        // 多轮写入和取出越过数组末尾，顺序不变
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(buffer.offer(next++));
+            }
+            drained.clear();
+            assertEquals(3, buffer.drainTo(drained, 3));
+            assertEquals(2, buffer.drainTo(drained, 10));
+            for (Integer value : drained) {
+                assertEquals(expected++, value);
+            }
+            assertEquals(0, buffer.size());
+        }
+    }
+
+    @Test
+    public void testConcurrentProducersLoseNothing() throws Exception {
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        int producers = 4;
+        int perProducer = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int base = p * perProducer;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!buffer.offer(base + i)) {
+                            Thread.yield();
+                        }
+                    }
+                }));
+            }
+
+            // 单消费者边写边取
+            Set<Integer> seen = new HashSet<>();
+            List<Integer> batch = new ArrayList<>();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (seen.size() < producers * perProducer && System.nanoTime() < deadline) {
+                batch.clear();
+                if (buffer.drainTo(batch, 64) == 0) {
+                    Thread.yield();
+                }
+                for (Integer value : batch) {
+                    assertTrue(seen.add(value), "重复取出: " + value);
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(producers * perProducer, seen.size());
+            assertEquals(0, buffer.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.excel.api.service;
+
+import com.excel.api.model.ApiToken;
+import com.excel.api.repository.ApiTokenRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Token服务测试
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class TokenServiceTest {
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private ApiTokenRepository tokenRepository;
+
+    @Test
+    public void testTokenValidationUsesCacheAndFlushesUsage() {
+        ApiToken created = tokenService.createToken("cache-test", null, "test", 1);
+        String token = created.getToken();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(tokenService.validateToken(token));
+        }
+        assertEquals("cache-test", tokenService.getTokenName(token));
+        // 使用次数先累加在内存
+        assertEquals(0, tokenService.getToken(token).getUsageCount());
+
+        tokenService.flushUsage();
+        ApiToken stored = tokenService.getToken(token);
+        assertEquals(3, stored.getUsageCount());
+        assertNotNull(stored.getLastUsedAt());
+
+        // 只写入上次之后的增量
+        assertTrue(tokenService.validateToken(token));
+        tokenService.flushUsage();
+        tokenService.flushUsage();
+        assertEquals(4, tokenService.getToken(token).getUsageCount());
+
+        tokenService.disableToken(token);
+        assertFalse(tokenService.validateToken(token));
+        tokenService.enableToken(token);
+        assertTrue(tokenService.validateToken(token));
+
+        tokenService.deleteToken(token);
+        assertFalse(tokenService.validateToken(token));
+        tokenService.refreshTokens();
+        assertFalse(tokenService.validateToken(token));
+        assertNull(tokenService.getTokenName(token));
+    }
+
+    @Test
+    public void testRejectsMissingUnknownAndExpiredTokens() {
+        assertFalse(tokenService.validateToken(null));
+        assertFalse(tokenService.validateToken(""));
+        assertFalse(tokenService.validateToken("tk_unknown"));
+        assertNull(tokenService.getTokenName("tk_unknown"));
+
+        ApiToken expired = tokenService.createToken("expired-test", null, "test", -1);
+        assertFalse(tokenService.validateToken(expired.getToken()));
+        // 被拒绝的请求不计入使用次数
+        tokenService.flushUsage();
+        assertEquals(0, tokenService.getToken(expired.getToken()).getUsageCount());
+        tokenService.deleteToken(expired.getToken());
+    }
+
+    @Test
+    public void testChangesFromOtherNodesAppearAfterRefresh() {
+        // 其他节点直接写入数据库的Token，写入使用统计时不重新加载
+        ApiToken other = ApiToken.builder()
+                .id(UUID.randomUUID().toString())
+                .token("tk_other_" + System.nanoTime())
+                .name("other-node")
+                .createdBy("test")
+                .createdAt(LocalDateTime.now())
+                .expiresAt(LocalDateTime.now().plusDays(1))
+                .active(true)
+                .build();
+        tokenRepository.save(other);
+        tokenService.flushUsage();
+        assertFalse(tokenService.validateToken(other.getToken()));
+
+        tokenService.refreshTokens();
+        assertTrue(tokenService.validateToken(other.getToken()));
+        assertEquals("other-node", tokenService.getTokenName(other.getToken()));
+
+        // 其他节点删除后，重新加载时移除，未写入的使用统计不再写入
+        tokenRepository.deleteById(other.getId());
+        assertTrue(tokenService.validateToken(other.getToken()));
+        tokenService.refreshTokens();
+        assertFalse(tokenService.validateToken(other.getToken()));
+        tokenService.flushUsage();
+    }
+}